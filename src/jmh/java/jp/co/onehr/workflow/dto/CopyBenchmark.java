@@ -0,0 +1,70 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.github.thunderz99.cosmos.util.JsonUtil;
+import jp.co.onehr.workflow.constant.Action;
+import jp.co.onehr.workflow.constant.Status;
+import jp.co.onehr.workflow.contract.context.TestOperatorLogContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Structural copy of Instance compared with the JSON round-trip of SimpleData.copy()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+
+    /**
+     * Number of the operate logs of the instance
+     */
+    @Param({"10", "500"})
+    int logCount;
+
+    Instance instance;
+
+    @Setup
+    public void setup() {
+        instance = InstanceTest.generateInstance();
+        for (var i = 0; i < logCount; i++) {
+            var logContext = new TestOperatorLogContext();
+            logContext.operator = Map.of("name", "operator-name-" + i);
+
+            var operateLog = new OperateLog();
+            operateLog.nodeId = "node-" + i;
+            operateLog.nodeName = "node-name-" + i;
+            operateLog.statusBefore = Status.PROCESSING;
+            operateLog.statusAfter = Status.PROCESSING;
+            operateLog.operatorId = "operator-" + i;
+            operateLog.action = Action.NEXT.name();
+            operateLog.comment = "comment-" + i;
+            operateLog.logContext = logContext;
+            instance.operateLogList.add(operateLog);
+        }
+    }
+
+    @Benchmark
+    public Instance copy() {
+        return instance.copy();
+    }
+
+    @Benchmark
+    public Instance copyByJson() {
+        return JsonUtil.fromJson(JsonUtil.toJson(instance), Instance.class);
+    }
+}
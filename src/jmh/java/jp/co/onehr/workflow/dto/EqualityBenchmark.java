@@ -0,0 +1,113 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.co.onehr.workflow.constant.Action;
+import jp.co.onehr.workflow.constant.Status;
+import jp.co.onehr.workflow.dto.node.EndNode;
+import jp.co.onehr.workflow.dto.node.SingleNode;
+import jp.co.onehr.workflow.dto.node.StartNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Field-based equals/hashCode of Instance and Definition compared with the JSON comparison of SimpleData
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EqualityBenchmark {
+
+    /**
+     * Number of the operate logs of the instance and of the nodes of the definition
+     */
+    @Param({"10", "200"})
+    int size;
+
+    Instance instance;
+
+    Instance otherInstance;
+
+    Definition definition;
+
+    Definition otherDefinition;
+
+    @Setup
+    public void setup() {
+        instance = InstanceTest.generateInstance();
+        for (var i = 0; i < size; i++) {
+            var operateLog = new OperateLog();
+            operateLog.nodeId = "node-" + i;
+            operateLog.nodeName = "node-name-" + i;
+            operateLog.statusBefore = Status.PROCESSING;
+            operateLog.statusAfter = Status.PROCESSING;
+            operateLog.operatorId = "operator-" + i;
+            operateLog.action = Action.NEXT.name();
+            operateLog.comment = "comment-" + i;
+            instance.operateLogList.add(operateLog);
+        }
+        otherInstance = instance.copy();
+
+        definition = new Definition("definition-1", "workflow-1");
+        definition.nodes.add(new StartNode("start"));
+        for (var i = 0; i < size; i++) {
+            var node = new SingleNode("node-name-" + i);
+            node.operatorId = "operator-" + i;
+            definition.nodes.add(node);
+        }
+        definition.nodes.add(new EndNode("end"));
+        otherDefinition = definition.copy();
+    }
+
+    @Benchmark
+    public boolean instanceEquals() {
+        return instance.equals(otherInstance);
+    }
+
+    @Benchmark
+    public boolean instanceEqualsByJson() {
+        return instance.toString().equals(otherInstance.toString());
+    }
+
+    @Benchmark
+    public int instanceHashCode() {
+        return instance.hashCode();
+    }
+
+    @Benchmark
+    public int instanceHashCodeByJson() {
+        return instance.toString().hashCode();
+    }
+
+    @Benchmark
+    public boolean definitionEquals() {
+        return definition.equals(otherDefinition);
+    }
+
+    @Benchmark
+    public boolean definitionEqualsByJson() {
+        return definition.toString().equals(otherDefinition.toString());
+    }
+
+    @Benchmark
+    public int definitionHashCode() {
+        return definition.hashCode();
+    }
+
+    @Benchmark
+    public int definitionHashCodeByJson() {
+        return definition.toString().hashCode();
+    }
+}
@@ -0,0 +1,166 @@
+package jp.co.onehr.workflow;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import io.github.thunderz99.cosmos.condition.Condition;
+import jp.co.onehr.workflow.constant.Action;
+import jp.co.onehr.workflow.constant.OperationMode;
+import jp.co.onehr.workflow.dto.ActionResult;
+import jp.co.onehr.workflow.dto.BulkRebindingSummary;
+import jp.co.onehr.workflow.dto.Instance;
+import jp.co.onehr.workflow.dto.InstanceCount;
+import jp.co.onehr.workflow.dto.InstanceSummary;
+import jp.co.onehr.workflow.dto.OperateLog;
+import jp.co.onehr.workflow.dto.RebindingJob;
+import jp.co.onehr.workflow.dto.ResolveAllResult;
+import jp.co.onehr.workflow.dto.Task;
+import jp.co.onehr.workflow.dto.base.CursorPage;
+import jp.co.onehr.workflow.dto.param.*;
+
+/**
+ * Asynchronous process engine, each operation of {@link ProcessEngine} runs on the executor of the configuration
+ * <p>
+ * The returned futures complete with the result of the operation,
+ * or exceptionally with a {@link CompletionException} whose cause is the exception thrown by the operation.
+ * The engine can only be constructed through {@link ProcessConfiguration#buildAsyncProcessEngine()}
+ */
+public class AsyncProcessEngine {
+
+    private final ProcessEngine engine;
+
+    private final Executor executor;
+
+    protected AsyncProcessEngine(ProcessEngine engine, Executor executor) {
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    // === Instance ===
+    public CompletableFuture<Instance> startInstance(String host, ApplicationParam param) {
+        return supply(() -> engine.startInstance(host, param));
+    }
+
+    public CompletableFuture<Instance> getInstance(String host, String instanceId) {
+        return supply(() -> engine.getInstance(host, instanceId));
+    }
+
+    public CompletableFuture<Instance> getInstanceWithOps(String host, String instanceId, String operatorId) {
+        return supply(() -> engine.getInstanceWithOps(host, instanceId, operatorId));
+    }
+
+    public CompletableFuture<Instance> getInstanceWithOps(String host, String instanceId, String operatorId, OperationMode operationMode) {
+        return supply(() -> engine.getInstanceWithOps(host, instanceId, operatorId, operationMode));
+    }
+
+    public CompletableFuture<Instance> getInstanceWithOps(String host, String instanceId, String operatorId, OperationMode operationMode, ApplicantActionContext applicantActionContext) {
+        return supply(() -> engine.getInstanceWithOps(host, instanceId, operatorId, operationMode, applicantActionContext));
+    }
+
+    public CompletableFuture<ActionResult> resolve(String host, String instanceId, Action action, String operatorId) {
+        return supply(() -> engine.resolve(host, instanceId, action, operatorId));
+    }
+
+    public CompletableFuture<ActionResult> resolve(String host, String instanceId, Action action, String operatorId, ActionExtendParam extendParam) {
+        return supply(() -> engine.resolve(host, instanceId, action, operatorId, extendParam));
+    }
+
+    public CompletableFuture<ActionResult> resolve(String host, String instanceId, Action action, String operatorId, ActionExtendParam extendParam, ApplicantActionContext applicantActionContext) {
+        return supply(() -> engine.resolve(host, instanceId, action, operatorId, extendParam, applicantActionContext));
+    }
+
+    public CompletableFuture<ResolveAllResult> resolveAll(String host, List<ResolveRequest> requests) {
+        return supply(() -> engine.resolveAll(host, requests));
+    }
+
+    public CompletableFuture<Instance> rebinding(String host, String instanceId, String operatorId, RebindingParam rebindingParam) {
+        return supply(() -> engine.rebinding(host, instanceId, operatorId, rebindingParam));
+    }
+
+    public CompletableFuture<BulkRebindingSummary> bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) {
+        return supply(() -> engine.bulkRebinding(host, workflowId, operatorId, bulkRebindingParam));
+    }
+
+    public CompletableFuture<RebindingJob> startBulkRebindingJob(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) {
+        return supply(() -> engine.startBulkRebindingJob(host, workflowId, operatorId, bulkRebindingParam));
+    }
+
+    public CompletableFuture<RebindingJob> resumeBulkRebindingJob(String host, String workflowId) {
+        return supply(() -> engine.resumeBulkRebindingJob(host, workflowId));
+    }
+
+    public CompletableFuture<RebindingJob> getBulkRebindingJob(String host, String workflowId) {
+        return supply(() -> engine.getBulkRebindingJob(host, workflowId));
+    }
+
+    public CompletableFuture<Instance> relocate(String host, String definitionId, String operatorId, RelocateParam relocateParam) {
+        return supply(() -> engine.relocate(host, definitionId, operatorId, relocateParam));
+    }
+
+    public CompletableFuture<List<Instance>> findInstances(String host, Condition cond) {
+        return supply(() -> engine.findInstances(host, cond));
+    }
+
+    public CompletableFuture<List<InstanceCount>> countInstances(String host, String workflowId, List<String> groupBy) {
+        return supply(() -> engine.countInstances(host, workflowId, groupBy));
+    }
+
+    public CompletableFuture<List<InstanceCount>> countInstances(String host, Condition cond, List<String> groupBy) {
+        return supply(() -> engine.countInstances(host, cond, groupBy));
+    }
+
+    public CompletableFuture<List<InstanceSummary>> findInstanceSummaries(String host, Condition cond) {
+        return supply(() -> engine.findInstanceSummaries(host, cond));
+    }
+
+    public CompletableFuture<CursorPage<Instance>> findInstances(String host, Condition cond, String cursor, int limit) {
+        return supply(() -> engine.findInstances(host, cond, cursor, limit));
+    }
+
+    public CompletableFuture<CursorPage<Instance>> findPendingTasks(String host, String operatorId, String cursor, int limit) {
+        return supply(() -> engine.findPendingTasks(host, operatorId, cursor, limit));
+    }
+
+    public CompletableFuture<CursorPage<Task>> findTasks(String host, String operatorId, String cursor, int limit) {
+        return supply(() -> engine.findTasks(host, operatorId, cursor, limit));
+    }
+
+    public CompletableFuture<Void> rebuildTasks(String host, String instanceId) {
+        return supply(() -> {
+            engine.rebuildTasks(host, instanceId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<CursorPage<OperateLog>> getOperateLogs(String host, String instanceId, String cursor, int limit) {
+        return supply(() -> engine.getOperateLogs(host, instanceId, cursor, limit));
+    }
+
+    public CompletableFuture<Instance> migrationInstance(String host, Instance instance) {
+        return supply(() -> engine.migrationInstance(host, instance));
+    }
+
+    /**
+     * The blocking engine the operations are delegated to
+     *
+     * @return
+     */
+    public ProcessEngine getEngine() {
+        return engine;
+    }
+
+    private <T> CompletableFuture<T> supply(Callable<T> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return operation.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
@@ -1,14 +1,26 @@
 package jp.co.onehr.workflow;
 
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.Maps;
 import io.github.thunderz99.cosmos.CosmosDatabase;
 import jp.co.onehr.workflow.constant.Action;
+import jp.co.onehr.workflow.constant.WorkflowErrors;
 import jp.co.onehr.workflow.contract.context.ContextParamService;
 import jp.co.onehr.workflow.contract.context.InstanceContext;
 import jp.co.onehr.workflow.contract.log.OperateLogService;
@@ -23,6 +35,15 @@ import jp.co.onehr.workflow.contract.validation.Validations;
 import jp.co.onehr.workflow.dto.*;
 import jp.co.onehr.workflow.dto.param.ApplicantActionContext;
 import jp.co.onehr.workflow.dto.param.ContextParam;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.service.DefinitionService;
+import jp.co.onehr.workflow.service.InstanceService;
+import jp.co.onehr.workflow.service.OperateLogEntryService;
+import jp.co.onehr.workflow.service.RebindingJobService;
+import jp.co.onehr.workflow.service.TaskService;
+import jp.co.onehr.workflow.service.WorkflowService;
+import jp.co.onehr.workflow.service.base.BaseNoSqlService;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +59,16 @@ public class ProcessConfiguration {
 
     private static final ProcessConfiguration singleton = new ProcessConfiguration();
 
+    /**
+     * Number of threads of the asynchronous engine when virtual threads are not available
+     */
+    public static final int DEFAULT_ASYNC_POOL_SIZE = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+    /**
+     * Number of threads of the default executor for the schema warm-up and the background index builds
+     */
+    public static final int DEFAULT_SCHEMA_POOL_SIZE = 4;
+
     /**
      * host -> database
      */
@@ -53,6 +84,78 @@ public class ProcessConfiguration {
      */
     private String partitionSuffix;
 
+    /**
+     * Maximum number of definitions cached per host, 0 disables the cache
+     */
+    private long definitionCacheMaximumSize = 1_000;
+
+    /**
+     * How long a cached definition is kept after it is loaded
+     * <p>
+     * In-place upserts in other processes become visible after this duration at the latest
+     */
+    private Duration definitionCacheExpireAfterWrite = Duration.ofMinutes(10);
+
+    /**
+     * Whether operate logs are stored as their own documents instead of only in the instance
+     */
+    private boolean operateLogExternalized = false;
+
+    /**
+     * Number of the latest operate logs kept in the instance when operate logs are externalized
+     */
+    private int operateLogRetainedSize = 10;
+
+    /**
+     * Whether the pending tasks of operators are maintained in the "Tasks" partition
+     */
+    private boolean taskProjectionEnabled = false;
+
+    /**
+     * Number of instances rebound concurrently by a bulk rebinding
+     */
+    private int bulkRebindingParallelism = 8;
+
+    /**
+     * Number of instances read and written together by a bulk rebinding
+     */
+    private int bulkRebindingChunkSize = 100;
+
+    /**
+     * Time after its last checkpoint during which a running bulk rebinding job is considered alive
+     */
+    private Duration bulkRebindingLease = Duration.ofMinutes(10);
+
+    /**
+     * Number of chunks soft deleted concurrently by a bulk deletion
+     */
+    private int bulkDeleteParallelism = 4;
+
+    /**
+     * Number of documents moved to the recycle bin together by a bulk deletion
+     */
+    private int bulkDeleteChunkSize = 100;
+
+    /**
+     * Estimated number of rows from which postgres custom indexes are built concurrently in the background
+     */
+    private long concurrentIndexRowThreshold = 100_000;
+
+    /**
+     * Executor of the asynchronous process engine, created on first use if not registered
+     */
+    private volatile Executor asyncExecutor;
+
+    /**
+     * Executor of the schema warm-up and the background index builds, created on first use if not registered
+     */
+    private volatile Executor schemaExecutor;
+
+    /**
+     * Pool running the concurrent parts of bulk rebinding and bulk deletion, created on first use
+     */
+    private volatile ThreadPoolExecutor bulkExecutor;
+
     /**
      * User-defined handling of operator IDs in the instance.
      */
@@ -118,6 +221,108 @@ public class ProcessConfiguration {
         return new ProcessEngine(this);
     }
 
+    /**
+     * build asynchronous workflow engine, the operations run on the executor registered by {@link #registerAsyncExecutor(Executor)}
+     * <p>
+     * By default, each operation runs on its own virtual thread where the runtime supports virtual threads (Java 21+),
+     * otherwise on a pool of {@link #DEFAULT_ASYNC_POOL_SIZE} daemon threads, where the operations beyond it wait in a queue.
+     *
+     * @return
+     */
+    public AsyncProcessEngine buildAsyncProcessEngine() {
+        return new AsyncProcessEngine(buildProcessEngine(), getAsyncExecutor());
+    }
+
+    // === Configuration for the asynchronous engine ===
+
+    /**
+     * Register the executor for the asynchronous process engine
+     * <p>
+     * Engines built before the registration keep using the previous executor.
+     *
+     * @param executor
+     */
+    public void registerAsyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+    }
+
+    public Executor getAsyncExecutor() {
+        var executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (asyncExecutor == null) {
+                    asyncExecutor = createDefaultAsyncExecutor();
+                }
+                executor = asyncExecutor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Virtual-thread-per-task executor if available, the library is compiled for Java 17 so it is looked up by reflection
+     *
+     * @return
+     */
+    static ExecutorService createDefaultAsyncExecutor() {
+        try {
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available, the asynchronous process engine uses a pool of {} threads.", DEFAULT_ASYNC_POOL_SIZE);
+            return createDaemonPool("workflow-async-", DEFAULT_ASYNC_POOL_SIZE);
+        }
+    }
+
+    /**
+     * Pool of named daemon threads, the tasks beyond the size wait in a queue and idle threads are released after a minute
+     *
+     * @param threadNamePrefix
+     * @param size
+     * @return
+     */
+    static ThreadPoolExecutor createDaemonPool(String threadNamePrefix, int size) {
+        var count = new AtomicInteger();
+        var pool = new ThreadPoolExecutor(size, size, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            var thread = new Thread(runnable, threadNamePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Register the executor for the schema warm-up and the background index builds of postgres
+     * <p>
+     * Kept apart from the asynchronous engine, so that index builds waiting for other nodes do not hold the threads of the operations.
+     *
+     * @param executor
+     */
+    public void registerSchemaExecutor(Executor executor) {
+        this.schemaExecutor = executor;
+    }
+
+    /**
+     * The executor for the schema warm-up and the background index builds of postgres
+     * <p>
+     * By default, a pool of {@link #DEFAULT_SCHEMA_POOL_SIZE} daemon threads, where the tasks beyond it wait in a queue.
+     *
+     * @return
+     */
+    public Executor getSchemaExecutor() {
+        var executor = schemaExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (schemaExecutor == null) {
+                    schemaExecutor = createDaemonPool("workflow-schema-", DEFAULT_SCHEMA_POOL_SIZE);
+                }
+                executor = schemaExecutor;
+            }
+        }
+        return executor;
+    }
+
     // === Configuration and registration for Cosmos DB ===
 
     public void registerDB(String host, CosmosDatabase db, String collectionName) {
@@ -141,6 +346,273 @@ public class ProcessConfiguration {
         return this.partitionSuffix;
     }
 
+    // === Schema warm-up ===
+
+    /**
+     * Create the tables and indexes of all partitions and recycle partitions for the host, before the first request
+     * <p>
+     * The partitions are initialized in parallel on {@link #getSchemaExecutor()}.
+     * Requests arriving during the warm-up wait for it instead of creating the schema again.
+     * Call it after {@link #registerDB(String, CosmosDatabase, String)}, e.g. at startup or on tenant onboarding.
+     *
+     * @param host
+     * @throws Exception
+     */
+    public void warmUp(String host) throws Exception {
+        if (StringUtils.isEmpty(getCollectionName(host))) {
+            throw new WorkflowException(WorkflowErrors.WORKFLOW_ENGINE_REGISTER_INVALID, "Failed to retrieve the name of the collection.", host);
+        }
+
+        var services = List.<BaseNoSqlService<?>>of(
+                WorkflowService.singleton,
+                DefinitionService.singleton,
+                InstanceService.singleton,
+                OperateLogEntryService.singleton,
+                TaskService.singleton,
+                RebindingJobService.singleton
+        );
+
+        var executor = getSchemaExecutor();
+        var futures = services.stream().map(service -> service.initSchema(host, executor)).toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        log.info("host:{}, Database schema warmed up for {} services.", host, services.size());
+    }
+
+    // === Configuration for the definition cache ===
+
+    /**
+     * Configure the in-memory definition cache
+     * <p>
+     * The definitions of a workflow with enableVersion=false are overwritten in place.
+     * The process that upserts such a definition drops it from its own cache,
+     * but other processes keep serving the previous definition until it expires (10 minutes by default).
+     * Use a shorter expireAfterWrite, or disable the cache, if such a change must be visible to all processes at once.
+     * Versioned definitions are never modified, so they are not affected.
+     *
+     * @param maximumSize      maximum number of definitions cached per host, 0 disables the cache
+     * @param expireAfterWrite how long a cached definition is kept after it is loaded
+     */
+    public void configureDefinitionCache(long maximumSize, Duration expireAfterWrite) {
+        this.definitionCacheMaximumSize = maximumSize;
+        this.definitionCacheExpireAfterWrite = expireAfterWrite;
+        DefinitionService.singleton.clearCache();
+    }
+
+    public long getDefinitionCacheMaximumSize() {
+        return definitionCacheMaximumSize;
+    }
+
+    public Duration getDefinitionCacheExpireAfterWrite() {
+        return definitionCacheExpireAfterWrite;
+    }
+
+    // === Configuration for operate log storage ===
+
+    /**
+     * Store each operate log as its own document in the "OperateLogs" partition,
+     * and keep only the latest logs in the instance
+     * <p>
+     * The instance document no longer grows with the number of actions.
+     * Use {@link ProcessEngine#getOperateLogs(String, String, String, int)} to read all logs of an instance.
+     * An instance keeps externalizing its logs once it has externalized logs, even if this is disabled later.
+     *
+     * @param retainedSize number of the latest operate logs kept in the instance, at least 1
+     */
+    public void externalizeOperateLogs(int retainedSize) {
+        if (retainedSize < 1) {
+            throw new IllegalArgumentException("retainedSize should be at least 1");
+        }
+        this.operateLogExternalized = true;
+        this.operateLogRetainedSize = retainedSize;
+    }
+
+    /**
+     * Store operate logs only in the instance, this is the default
+     */
+    public void disableOperateLogExternalization() {
+        this.operateLogExternalized = false;
+    }
+
+    public boolean isOperateLogExternalized() {
+        return operateLogExternalized;
+    }
+
+    public int getOperateLogRetainedSize() {
+        return operateLogRetainedSize;
+    }
+
+    // === Configuration for the task projection ===
+
+    /**
+     * Maintain one document per current operator and processing instance in the "Tasks" partition
+     * <p>
+     * The tasks are written after each write of an instance, so an operator's inbox can be read
+     * with {@link ProcessEngine#findTasks(String, String, String, int)} by a query on the operator only.
+     * The tasks of instances written before this is enabled are created on their next write.
+     */
+    public void enableTaskProjection() {
+        this.taskProjectionEnabled = true;
+    }
+
+    /**
+     * Do not maintain the tasks, this is the default
+     */
+    public void disableTaskProjection() {
+        this.taskProjectionEnabled = false;
+    }
+
+    public boolean isTaskProjectionEnabled() {
+        return taskProjectionEnabled;
+    }
+
+    // === Configuration for bulk rebinding ===
+
+    /**
+     * Configure how bulk rebinding processes the instances
+     * <p>
+     * The instances are read and written in chunks, and the instances of a chunk are rebound concurrently on {@link #getBulkExecutor()}.
+     * The operator service and the context param service are called concurrently during a bulk rebinding.
+     *
+     * @param parallelism number of instances rebound concurrently, at least 1
+     * @param chunkSize   number of instances read and written together, at least 1
+     */
+    public void configureBulkRebinding(int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunkSize should be at least 1");
+        }
+        this.bulkRebindingParallelism = parallelism;
+        this.bulkRebindingChunkSize = chunkSize;
+        resizeBulkExecutor();
+    }
+
+    public int getBulkRebindingParallelism() {
+        return bulkRebindingParallelism;
+    }
+
+    public int getBulkRebindingChunkSize() {
+        return bulkRebindingChunkSize;
+    }
+
+    /**
+     * Configure how long a running bulk rebinding job is considered alive after its last checkpoint
+     * <p>
+     * A running job is checkpointed after each chunk. When the process running it stops, the job stays running,
+     * and can be started or resumed again by another process once the lease expired.
+     * The lease should be longer than the time to process one chunk.
+     *
+     * @param lease
+     */
+    public void configureBulkRebindingLease(Duration lease) {
+        if (lease == null || lease.isNegative() || lease.isZero()) {
+            throw new IllegalArgumentException("lease should be positive");
+        }
+        this.bulkRebindingLease = lease;
+    }
+
+    public Duration getBulkRebindingLease() {
+        return bulkRebindingLease;
+    }
+
+    // === Configuration for bulk deletion ===
+
+    /**
+     * Configure how the definitions and instances of a deleted workflow are moved to the recycle bin
+     * <p>
+     * The ids are read page by page and split into chunks. Each chunk is read, copied to the recycle bin
+     * and deleted with bulk operations, and the chunks are processed concurrently on {@link #getBulkExecutor()}.
+     *
+     * @param parallelism number of chunks processed concurrently, at least 1
+     * @param chunkSize   number of documents moved together, at least 1
+     */
+    public void configureBulkDelete(int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunkSize should be at least 1");
+        }
+        this.bulkDeleteParallelism = parallelism;
+        this.bulkDeleteChunkSize = chunkSize;
+        resizeBulkExecutor();
+    }
+
+    public int getBulkDeleteParallelism() {
+        return bulkDeleteParallelism;
+    }
+
+    public int getBulkDeleteChunkSize() {
+        return bulkDeleteChunkSize;
+    }
+
+    // === Executor for bulk operations ===
+
+    /**
+     * The pool shared by all bulk rebindings and bulk deletions of the JVM
+     * <p>
+     * It has as many threads as the larger of the two parallelisms, idle threads are released after a minute.
+     * Each operation submits at most its parallelism of tasks at a time, so concurrent operations wait for the threads instead of adding more.
+     *
+     * @return
+     */
+    public Executor getBulkExecutor() {
+        var executor = bulkExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (bulkExecutor == null) {
+                    bulkExecutor = createDaemonPool("workflow-bulk-", getBulkExecutorSize());
+                }
+                executor = bulkExecutor;
+            }
+        }
+        return executor;
+    }
+
+    private int getBulkExecutorSize() {
+        return Math.max(bulkRebindingParallelism, bulkDeleteParallelism);
+    }
+
+    private synchronized void resizeBulkExecutor() {
+        var pool = bulkExecutor;
+        if (pool == null) {
+            return;
+        }
+        // the core size may not exceed the maximum size
+        var size = getBulkExecutorSize();
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    // === Configuration for index builds ===
+
+    /**
+     * Configure when postgres builds custom indexes without blocking writes
+     * <p>
+     * A missing index on a table with at least this many rows (as estimated by the planner statistics) is built by
+     * {@code CREATE INDEX CONCURRENTLY} on {@link #getSchemaExecutor()}, instead of inside the first request.
+     *
+     * @param rowThreshold estimated number of rows, Long.MAX_VALUE to always build indexes in the first request
+     */
+    public void configureConcurrentIndexBuild(long rowThreshold) {
+        if (rowThreshold < 0) {
+            throw new IllegalArgumentException("rowThreshold should not be negative");
+        }
+        this.concurrentIndexRowThreshold = rowThreshold;
+    }
+
+    public long getConcurrentIndexRowThreshold() {
+        return concurrentIndexRowThreshold;
+    }
+
     // === Handling of custom node operators  ===
 
     public void registerOperatorService(OperatorService service) {
@@ -254,10 +726,11 @@ public class ProcessConfiguration {
         this.applicantActionPermissionProvider = provider;
     }
 
+    // the definitions passed to the registered services are copies, the one read by the engine may be shared by the definition cache
     public Set<Action> generateCustomRemovalActionsByOperator(Definition definition, Instance instance, String operatorId) {
         var actions = new HashSet<Action>();
         if (actionRestriction != null) {
-            actions.addAll(actionRestriction.generateCustomRemovalActionsByOperator(definition, instance, operatorId));
+            actions.addAll(actionRestriction.generateCustomRemovalActionsByOperator(definition.copy(), instance, operatorId));
         }
         return actions;
     }
@@ -265,7 +738,7 @@ public class ProcessConfiguration {
     public Set<Action> generateCustomRemovalActionsByAdmin(Definition definition, Instance instance, String operatorId) {
         var actions = new HashSet<Action>();
         if (adminActionRestriction != null) {
-            actions.addAll(adminActionRestriction.generateCustomRemovalActionsByAdmin(definition, instance, operatorId));
+            actions.addAll(adminActionRestriction.generateCustomRemovalActionsByAdmin(definition.copy(), instance, operatorId));
         }
         return actions;
     }
@@ -282,7 +755,7 @@ public class ProcessConfiguration {
      */
     public boolean canPerformApplicantAction(Definition definition, Instance instance, String operatorId, Action action, ApplicantActionContext context) {
         if (applicantActionPermissionProvider != null) {
-            return applicantActionPermissionProvider.canPerformApplicantAction(definition, instance, operatorId, action, context);
+            return applicantActionPermissionProvider.canPerformApplicantAction(definition.copy(), instance, operatorId, action, context);
         }
         return false;
     }
@@ -306,7 +779,8 @@ public class ProcessConfiguration {
 
     public void generateContextParam4Bulk(ContextParam contextParam, Definition definition, Instance instance, String operatorId) {
         if (contextParamService != null) {
-            contextParamService.generateContextParam4Bulk(contextParam, definition, instance, operatorId);
+            // a copy, the definition may be shared by the definition cache
+            contextParamService.generateContextParam4Bulk(contextParam, definition.copy(), instance, operatorId);
         }
     }
 
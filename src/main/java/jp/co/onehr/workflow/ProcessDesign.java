@@ -1,10 +1,15 @@
 package jp.co.onehr.workflow;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import com.google.common.cache.CacheStats;
 import io.github.thunderz99.cosmos.condition.Condition;
 import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Workflow;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.base.DeletedObject;
 import jp.co.onehr.workflow.dto.base.SimpleData;
 import jp.co.onehr.workflow.dto.param.DefinitionParam;
@@ -46,6 +51,19 @@ public class ProcessDesign extends SimpleData {
         return processDesignService.deleteWorkflow(host, workflowId);
     }
 
+    /**
+     * Delete the workflow, reporting the progress of moving its definitions and instances to the recycle bin
+     *
+     * @param host
+     * @param workflowId
+     * @param progressListener called with the number of definitions and instances processed after each chunk
+     * @return
+     * @throws Exception
+     */
+    public DeletedObject deleteWorkflow(String host, String workflowId, Consumer<BulkDeleteSummary> progressListener) throws Exception {
+        return processDesignService.deleteWorkflow(host, workflowId, progressListener);
+    }
+
     public List<Workflow> findWorkflows(String host, Condition cond) throws Exception {
         return processDesignService.findWorkflows(host, cond);
     }
@@ -59,6 +77,16 @@ public class ProcessDesign extends SimpleData {
         return processDesignService.getDefinition(host, definitionId);
     }
 
+    /**
+     * Get the hit/miss statistics of the definition cache for the host
+     *
+     * @param host
+     * @return
+     */
+    public CacheStats getDefinitionCacheStats(String host) {
+        return processDesignService.getDefinitionCacheStats(host);
+    }
+
     public Definition getCurrentDefinition(String host, String workflowId, int version) throws Exception {
         return processDesignService.getCurrentDefinition(host, workflowId, version);
     }
@@ -66,4 +94,12 @@ public class ProcessDesign extends SimpleData {
     public List<Definition> findDefinitions(String host, Condition cond) throws Exception {
         return processDesignService.findDefinitions(host, cond);
     }
+
+    public CursorPage<Definition> findDefinitions(String host, Condition cond, String cursor, int limit) throws Exception {
+        return processDesignService.findDefinitions(host, cond, cursor, limit);
+    }
+
+    public Stream<Definition> streamDefinitions(String host, Condition cond) {
+        return processDesignService.streamDefinitions(host, cond);
+    }
 }
@@ -1,12 +1,21 @@
 package jp.co.onehr.workflow;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import io.github.thunderz99.cosmos.condition.Condition;
 import jp.co.onehr.workflow.constant.Action;
 import jp.co.onehr.workflow.constant.OperationMode;
 import jp.co.onehr.workflow.dto.ActionResult;
+import jp.co.onehr.workflow.dto.BulkRebindingSummary;
 import jp.co.onehr.workflow.dto.Instance;
+import jp.co.onehr.workflow.dto.InstanceCount;
+import jp.co.onehr.workflow.dto.InstanceSummary;
+import jp.co.onehr.workflow.dto.OperateLog;
+import jp.co.onehr.workflow.dto.RebindingJob;
+import jp.co.onehr.workflow.dto.ResolveAllResult;
+import jp.co.onehr.workflow.dto.Task;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.base.SimpleData;
 import jp.co.onehr.workflow.dto.param.*;
 import jp.co.onehr.workflow.service.ProcessEngineService;
@@ -63,14 +72,30 @@ public class ProcessEngine extends SimpleData {
         return service.resolve(host, instanceId, action, operatorId, extendParam, applicantActionContext);
     }
 
+    public ResolveAllResult resolveAll(String host, List<ResolveRequest> requests) throws Exception {
+        return service.resolveAll(host, requests);
+    }
+
     public Instance rebinding(String host, String instanceId, String operatorId, RebindingParam rebindingParam) throws Exception {
         return service.rebinding(host, instanceId, operatorId, rebindingParam);
     }
 
-    public List<Instance> bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
+    public BulkRebindingSummary bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
         return service.bulkRebinding(host, workflowId, operatorId, bulkRebindingParam);
     }
 
+    public RebindingJob startBulkRebindingJob(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
+        return service.startBulkRebindingJob(host, workflowId, operatorId, bulkRebindingParam);
+    }
+
+    public RebindingJob resumeBulkRebindingJob(String host, String workflowId) throws Exception {
+        return service.resumeBulkRebindingJob(host, workflowId);
+    }
+
+    public RebindingJob getBulkRebindingJob(String host, String workflowId) throws Exception {
+        return service.getBulkRebindingJob(host, workflowId);
+    }
+
     public Instance relocate(String host, String definitionId, String operatorId, RelocateParam relocateParam) throws Exception {
         return service.relocate(host, definitionId, operatorId, relocateParam);
     }
@@ -79,6 +104,42 @@ public class ProcessEngine extends SimpleData {
         return service.findInstances(host, cond);
     }
 
+    public List<InstanceCount> countInstances(String host, String workflowId, List<String> groupBy) throws Exception {
+        return service.countInstances(host, workflowId, groupBy);
+    }
+
+    public List<InstanceCount> countInstances(String host, Condition cond, List<String> groupBy) throws Exception {
+        return service.countInstances(host, cond, groupBy);
+    }
+
+    public List<InstanceSummary> findInstanceSummaries(String host, Condition cond) throws Exception {
+        return service.findInstanceSummaries(host, cond);
+    }
+
+    public CursorPage<Instance> findInstances(String host, Condition cond, String cursor, int limit) throws Exception {
+        return service.findInstances(host, cond, cursor, limit);
+    }
+
+    public Stream<Instance> streamInstances(String host, Condition cond) {
+        return service.streamInstances(host, cond);
+    }
+
+    public CursorPage<Instance> findPendingTasks(String host, String operatorId, String cursor, int limit) throws Exception {
+        return service.findPendingTasks(host, operatorId, cursor, limit);
+    }
+
+    public CursorPage<Task> findTasks(String host, String operatorId, String cursor, int limit) throws Exception {
+        return service.findTasks(host, operatorId, cursor, limit);
+    }
+
+    public void rebuildTasks(String host, String instanceId) throws Exception {
+        service.rebuildTasks(host, instanceId);
+    }
+
+    public CursorPage<OperateLog> getOperateLogs(String host, String instanceId, String cursor, int limit) throws Exception {
+        return service.getOperateLogs(host, instanceId, cursor, limit);
+    }
+
     public Instance migrationInstance(String host, Instance instance) throws Exception {
         return service.migrationInstance(host, instance);
     }
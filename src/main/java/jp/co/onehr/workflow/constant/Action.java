@@ -90,11 +90,13 @@ public enum Action {
      */
     public ActionResult execute(Definition definition, Status currentStatus, Instance instance, String operatorId, ActionExtendParam extendParam) {
 
-        var beforeNode = NodeService.getNodeByNodeId(definition, instance.nodeId);
+        var compiled = definition.getCompiledDefinition();
+
+        var beforeNode = compiled.getNode(instance.nodeId);
 
         var actionResult = strategy.execute(definition, instance, operatorId, extendParam);
 
-        var afterNode = NodeService.getNodeByNodeId(definition, instance.nodeId);
+        var afterNode = compiled.getNode(instance.nodeId);
 
         if (actionResult.resetOperator) {
             instance.preNodeId = "";
@@ -6,6 +6,18 @@ public enum DatabaseErrors implements ErrorInterface {
     ID_CONFLICT(409), //
 
     UNIQUE_KEY_CONFLICT(409),
+    /**
+     * The document was modified by another request after it was read
+     */
+    VERSION_CONFLICT(412),
+    /**
+     * Some documents could not be moved to the recycle bin by a bulk deletion, deleting again resumes it
+     */
+    BULK_DELETE_INCOMPLETE(500),
+    /**
+     * Some documents could not be written by a bulk write, writing them again resumes it
+     */
+    BULK_WRITE_INCOMPLETE(500),
     /**
      * json from db process error, can't be deserialized
      */
@@ -0,0 +1,22 @@
+package jp.co.onehr.workflow.constant;
+
+/**
+ * Status of a long-running job, such as a bulk rebinding
+ */
+public enum JobStatus {
+
+    /**
+     * The job is running, or the process running it stopped before the job finished
+     */
+    RUNNING,
+
+    /**
+     * The job stopped with an error, it can be resumed from the last checkpoint
+     */
+    FAILED,
+
+    /**
+     * All items of the job were processed
+     */
+    COMPLETED
+}
@@ -105,7 +105,15 @@ public enum WorkflowErrors implements ErrorInterface {
     /**
      * The instance and definition ID for relocation do not match
      */
-    RELOCATE_DEFINITION_MISMATCH(400);
+    RELOCATE_DEFINITION_MISMATCH(400),
+    /**
+     * A bulk rebinding job of the workflow is already running
+     */
+    REBINDING_JOB_RUNNING(409),
+    /**
+     * The bulk rebinding job does not exist in the database
+     */
+    REBINDING_JOB_NOT_EXIST(404);
 
     private final int httpStatus;
 
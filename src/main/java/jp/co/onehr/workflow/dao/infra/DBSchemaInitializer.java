@@ -1,6 +1,7 @@
 package jp.co.onehr.workflow.dao.infra;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
 
@@ -47,8 +48,8 @@ public interface DBSchemaInitializer {
     /**
      * Create custom indexes for the specified partitionName (e.g., "Definitions").
      * If the indexes already exist, no action is taken.
-     * Currently supported only for postgres.
-     * For CosmosDB or MongoDB, this operation is skipped.
+     * Supported for postgres and mongodb.
+     * For CosmosDB, this operation is skipped.
      *
      * @param host
      * @param partitionName
@@ -64,5 +65,17 @@ public interface DBSchemaInitializer {
     default public List<String> createCustomIndexIfNotExist(String host, String partitionName, IndexCustomizable dto) throws Exception {
         return List.of();
     }
-}
 
+
+    /**
+     * Wait for the index builds of the partition that are still running in the background.
+     * Only applicable for Postgres, where indexes on large tables are built concurrently.
+     *
+     * @param host
+     * @param partitionName
+     * @return completed when all background index builds of the partition have finished, exceptionally if any has failed
+     */
+    default public CompletableFuture<Void> awaitIndexBuilds(String host, String partitionName) {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -1,18 +1,26 @@
 package jp.co.onehr.workflow.dao.infra.impl;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.IndexOptions;
 import io.github.thunderz99.cosmos.impl.mongo.MongoImpl;
 import io.github.thunderz99.cosmos.util.Checker;
 import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.dao.CosmosDB;
 import jp.co.onehr.workflow.dao.infra.DBSchemaInitializer;
+import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
+import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
+import jp.co.onehr.workflow.dto.base.index.IndexFieldType;
+import jp.co.onehr.workflow.util.CheckUtil;
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -56,9 +64,133 @@ public class MongoSchemaDAO implements DBSchemaInitializer {
     }
 
 
+    @Override
+    public List<String> createCustomIndexIfNotExist(String host, String partitionName, IndexCustomizable dto) throws Exception {
+        if (dto == null || StringUtils.isEmpty(partitionName)) {
+            return List.of();
+        }
+
+        var indexDefinitions = dto.getCustomIndexDefinitions();
+        if (CollectionUtils.isEmpty(indexDefinitions)) {
+            return List.of();
+        }
+
+        // list the existing indexes once, and create the missing ones in one batch
+        var existingIndexes = listIndexes(host, partitionName);
+
+        var ret = new ArrayList<String>();
+        var indexModels = new ArrayList<IndexModel>();
+
+        for (var indexDef : indexDefinitions) {
+            var indexModel = toIndexModel(indexDef);
+            var indexName = indexModel.getOptions().getName();
+
+            var existingIndex = existingIndexes.get(indexName);
+            if (existingIndex != null) {
+                CheckUtil.check(existingIndex.getBoolean("unique", false) == indexDef.unique,
+                        "Existing index uniqueness mismatch. manual migration required: " + partitionName + "." + indexName);
+                CheckUtil.check(matchesPartialFilter(existingIndex, indexDef),
+                        "Existing index predicate mismatch. manual migration required: " + partitionName + "." + indexName);
+                continue;
+            }
+
+            indexModels.add(indexModel);
+            var joinedFieldNames = indexDef.fields.stream().map(field -> field.fieldName).collect(Collectors.joining("_"));
+            if (indexDef.hasIncludedFields()) {
+                joinedFieldNames += "_include_" + indexDef.includedFields.stream().map(field -> field.fieldName).collect(Collectors.joining("_"));
+            }
+            joinedFieldNames += indexDef.getPartialFilterSuffix();
+            ret.add(partitionName + "." + joinedFieldNames);
+        }
+
+        _createIndexes(host, partitionName, indexModels);
+        return ret;
+    }
+
+    /**
+     * Convert the index definition of a dto class to a mongodb index
+     *
+     * <p>
+     * The fields are keys of an ascending index, compound when there are several fields.
+     * JSONB fields hold arrays or objects, which mongodb indexes as a multikey index (the counterpart of a GIN index in postgres).
+     * Mongodb allows at most one array field in a compound index, so at most one JSONB field is accepted.
+     * The type of the other fields does not change the index, since mongodb indexes the values as they are stored.
+     * A partial index is created with the partialFilterExpression of the equality conditions.
+     * The included fields of a covering index follow the key fields, so queries projecting only these fields are covered by the index.
+     * </p>
+     *
+     * @param indexDef
+     * @return index model named by the default naming rule of mongodb
+     */
+    static IndexModel toIndexModel(IndexDefinition indexDef) {
+
+        var keys = getIndexKeys(indexDef);
+
+        var arrayFieldCount = Stream.concat(indexDef.fields.stream(), indexDef.includedFields.stream())
+                .filter(field -> field.type == IndexFieldType.JSONB).count();
+        CheckUtil.check(keys.size() == 1 || arrayFieldCount <= 1,
+                "Mongodb compound index supports at most one JSONB(array) field: " + keys.toJson());
+
+        var indexOptions = new IndexOptions().unique(indexDef.unique);
+        if (indexDef.isPartial()) {
+            // named after the conditions as well, so it can be created next to the full index or another partial index of the same keys
+            indexOptions.name(getIndexName(keys) + indexDef.getPartialFilterSuffix())
+                    .partialFilterExpression(new Document(indexDef.partialFilter));
+        } else {
+            indexOptions.name(getIndexName(keys));
+        }
+        return new IndexModel(keys, indexOptions);
+    }
+
+    /**
+     * Whether the partialFilterExpression of the existing index matches the partial filter of the index definition
+     *
+     * @param existingIndex index information returned by listIndexes
+     * @param indexDef
+     * @return
+     */
+    static boolean matchesPartialFilter(Document existingIndex, IndexDefinition indexDef) {
+        var existingFilter = existingIndex.get("partialFilterExpression", Document.class);
+        if (!indexDef.isPartial()) {
+            return existingFilter == null;
+        }
+        return existingFilter != null && existingFilter.toJson().equals(new Document(indexDef.partialFilter).toJson());
+    }
+
+    /**
+     * The keys of the mongodb index for the index definition followed by the included fields, 1 for ascending order
+     *
+     * @param indexDef
+     * @return
+     */
+    static Document getIndexKeys(IndexDefinition indexDef) {
+        var keys = new Document();
+        for (var field : indexDef.fields) {
+            keys.append(field.fieldName, 1);
+        }
+        for (var field : indexDef.includedFields) {
+            keys.append(field.fieldName, 1);
+        }
+        return keys;
+    }
+
+    /**
+     * Default mongodb naming rule of an index. {name: 1} -> name_1, {workflowId: 1, status: 1} -> workflowId_1_status_1
+     *
+     * @param keys
+     * @return
+     */
+    static String getIndexName(Document keys) {
+        return keys.entrySet().stream().map(entry -> entry.getKey() + "_" + entry.getValue()).collect(Collectors.joining("_"));
+    }
+
     /**
      * create specific indexes for dto classes
      *
+     * <p>
+     * The existing indexes are listed once, and the missing indexes are created by one createIndexes command.
+     * </p>
+     *
      * @param host
      * @param partitionName
      * @param options
@@ -70,49 +202,70 @@ public class MongoSchemaDAO implements DBSchemaInitializer {
             return List.of();
         }
 
+        var existingIndexes = listIndexes(host, partitionName);
+
         var ret = new ArrayList<String>();
+        var indexModels = new ArrayList<IndexModel>();
 
         for (var option : options) {
-            ret.add(_createIndexIfNotExistByFieldName(host, partitionName, option.getLeft(), option.getRight()));
+            var fieldName = option.getLeft();
+
+            // Define the index key. 1 for ascending order
+            var keys = new Document(fieldName, 1);
+            var indexName = getIndexName(keys);
+
+            if (existingIndexes.containsKey(indexName)) {
+                continue;
+            }
+
+            var indexOptions = new IndexOptions().unique(option.getRight().unique).name(indexName);
+            if (option.getRight().expireAfter != null) {
+                indexOptions.expireAfter(option.getRight().expireAfter, TimeUnit.SECONDS);
+            }
+
+            indexModels.add(new IndexModel(keys, indexOptions));
+            ret.add(partitionName + "." + fieldName);
         }
 
-        return ret.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        _createIndexes(host, partitionName, indexModels);
+        return ret;
     }
 
     /**
-     * Create needed unique indexes for specific partition for mongodb
+     * Create the indexes for specific partition by one round trip
      *
      * @param host
      * @param partition
-     * @param fieldName
-     * @param options
-     * @return "partition.fieldName" if index created. Otherwise, null
+     * @param indexModels
      * @throws Exception
      */
-    String _createIndexIfNotExistByFieldName(String host, String partition, String fieldName, Options options) throws Exception {
-
-        if (indexExist(host, partition, fieldName)) {
-            return null;
+    void _createIndexes(String host, String partition, List<IndexModel> indexModels) throws Exception {
+        if (indexModels.isEmpty()) {
+            return;
         }
 
-        // Define the index key. 1 for ascending order
-        var index = new Document(fieldName, 1);
-
         var database = getMongoDatabase(host);
+        var created = database.getCollection(partition).createIndexes(indexModels);
+        log.info("indexes created: partition:{}, indexes:{}", partition, created);
+    }
 
-        // Create the unique indexes needed by core
-
-        var indexOptions = new IndexOptions().unique(options.unique);
+    /**
+     * List the indexes for specific partition by one round trip
+     *
+     * @param host
+     * @param partition
+     * @return index information returned by listIndexes, keyed by index name. empty if the partition does not exist
+     * @throws Exception
+     */
+    Map<String, Document> listIndexes(String host, String partition) throws Exception {
+        var database = getMongoDatabase(host);
 
-        if (options.expireAfter != null) {
-            indexOptions.expireAfter(options.expireAfter, TimeUnit.SECONDS);
+        var ret = new LinkedHashMap<String, Document>();
+        for (var index : database.getCollection(partition).listIndexes()) {
+            log.debug("index exists: partition:{}, index:{}", partition, index.toJson());
+            ret.put(index.get("name").toString(), index);
         }
-
-        database.getCollection(partition).createIndex(index, indexOptions);
-        log.info("index created: partition:{}, field:{}, index:{}", partition, fieldName, index.toJson());
-
-        return partition + "." + fieldName;
-
+        return ret;
     }
 
     /**
@@ -135,21 +288,20 @@ public class MongoSchemaDAO implements DBSchemaInitializer {
             indexName = indexName + "_1";
         }
 
-        var database = getMongoDatabase(host);
-
-        var iter = database.getCollection(partition).listIndexes().iterator();
-
-        while (iter.hasNext()) {
-            var index = iter.next();
-            log.debug("index exists: partition:{}, field:{}, index:{}", partition, fieldName, index.toJson());
-
-            if (StringUtils.equals(indexName, index.get("name").toString())) {
-                // already exist
-                return true;
-            }
-        }
+        return findIndex(host, partition, indexName) != null;
+    }
 
-        return false;
+    /**
+     * Find the index with the name for specific partition
+     *
+     * @param host
+     * @param partition
+     * @param indexName e.g. workflowId_1_status_1
+     * @return the index information returned by listIndexes, null if not exist
+     * @throws Exception
+     */
+    Document findIndex(String host, String partition, String indexName) throws Exception {
+        return listIndexes(host, partition).get(indexName);
     }
 
     public void deleteIndex(String host, String partition, String fieldName) throws Exception {
@@ -175,7 +327,7 @@ public class MongoSchemaDAO implements DBSchemaInitializer {
      * @return native mongo database instance
      * @throws Exception
      */
-    static MongoDatabase getMongoDatabase(String host) throws Exception {
+    public static MongoDatabase getMongoDatabase(String host) throws Exception {
         var db = ProcessConfiguration.getConfiguration().getDatabase(host);
 
         if (ObjectUtils.isEmpty(db) && judgeEnableDefaultWorkflowDB()) {
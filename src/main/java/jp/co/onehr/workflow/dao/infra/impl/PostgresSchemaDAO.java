@@ -1,7 +1,12 @@
 package jp.co.onehr.workflow.dao.infra.impl;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
@@ -51,6 +56,19 @@ public class PostgresSchemaDAO implements DBSchemaInitializer {
      */
     static final String CRON_EXPRESSION_FOR_RECYCLE = "0 21 * * *";
 
+    /**
+     * Number of attempts to build an index concurrently before giving up
+     */
+    static final int CONCURRENT_INDEX_BUILD_ATTEMPTS = 3;
+
+    static final Duration CONCURRENT_INDEX_BUILD_RETRY_INTERVAL = Duration.ofSeconds(10);
+
+    /**
+     * key: host:schema:partition:indexName
+     * value: the index build running in the background, or the last failed one
+     */
+    static final ConcurrentHashMap<String, IndexBuild> indexBuildMap = new ConcurrentHashMap<>();
+
 
     @Override
     public String createTableIfNotExist(String host, String partitionName) throws Exception {
@@ -143,26 +161,54 @@ public class PostgresSchemaDAO implements DBSchemaInitializer {
             var partition = partitionName;
             // Create the index only if the table exists
             if (TableUtil.tableExist(conn, schemaName, partition)) {
+                // building an index on a large table blocks writes for minutes, so it is built concurrently in the background
+                var concurrent = estimateRowCount(conn, schemaName, partition) >= ProcessConfiguration.getConfiguration().getConcurrentIndexRowThreshold();
+
                 for (var indexDef : indexDefinitions) {
-                    var indexFields = indexDef.fields.stream().map(f -> PGIndexField.of(f.fieldName, PGFieldType.valueOf(f.type.name()))).collect(Collectors.toList());
-                    var indexOption = IndexOption.unique(indexDef.unique);
-                    if (indexDef.method == IndexMethod.GIN) {
-                        indexOption = indexOption.gin();
+                    if (indexDef.hasIncludedFields()) {
+                        // the whole JSONB data column is read by the queries, an index cannot cover them. only the key fields are indexed
+                        log.warn("host:{}, included fields are ignored on postgres. partition:{}, index:{}, includedFields:{}", host, partition, getJoinedFieldNames(indexDef),
+                                indexDef.includedFields.stream().map(field -> field.fieldName).collect(Collectors.joining(",")));
                     }
 
-                    var joinedFieldNames = indexDef.fields.stream().map(field -> field.fieldName).collect(Collectors.joining("_"));
+                    var joinedFieldNames = getJoinedFieldNames(indexDef);
                     var normalizedPartition = TableUtil.checkAndNormalizeValidEntityName(partition);
                     var expectedIndexName = TableUtil.removeQuotes(TableUtil.getIndexName(normalizedPartition, joinedFieldNames));
-                    var existingIndexDefinition = findExistingIndexDefinition(conn, schemaName, partition, expectedIndexName);
-                    if (StringUtils.isNotEmpty(existingIndexDefinition)) {
+                    var existingIndex = findExistingIndex(conn, schemaName, partition, expectedIndexName);
+                    if (existingIndex != null && !existingIndex.valid) {
+                        // a concurrent build in progress on another node, or the leftover of a failed one, which is not used by queries but slows down writes.
+                        // the build waits for the other node, and builds it again if it is a leftover
+                        log.warn("host:{}, invalid index found, rebuilding it unless it is being built. index:{}", host, expectedIndexName);
+                        scheduleConcurrentIndexBuild(host, schemaName, partition, indexDef, expectedIndexName);
+                        continue;
+                    }
+                    if (existingIndex != null) {
                         var expectedIndexMethod = "USING " + indexDef.method.name();
                         CheckUtil.check(
-                                StringUtils.containsIgnoreCase(existingIndexDefinition, expectedIndexMethod),
+                                StringUtils.containsIgnoreCase(existingIndex.definition, expectedIndexMethod),
                                 "Existing index method mismatch. manual migration required: " + expectedIndexName);
+                        CheckUtil.check(
+                                matchesPartialFilter(conn, existingIndex, indexDef),
+                                "Existing index predicate mismatch. manual migration required: " + expectedIndexName);
+                        continue;
+                    }
+
+                    if (concurrent) {
+                        scheduleConcurrentIndexBuild(host, schemaName, partition, indexDef, expectedIndexName);
+                        continue;
+                    }
+
+                    if (indexDef.isPartial()) {
+                        // TableUtil does not support a WHERE clause
+                        try (var stmt = conn.createStatement()) {
+                            stmt.execute(buildCreateIndexSql(schemaName, partition, indexDef, expectedIndexName, false));
+                        }
+                        log.info("host:{}, index created. partition:{}, index:{}", host, partition, expectedIndexName);
+                        ret.add(expectedIndexName);
                         continue;
                     }
 
-                    ret.add(TableUtil.createIndexIfNotExist4MultiFields(conn, schemaName, partition, indexFields, indexOption));
+                    ret.add(TableUtil.createIndexIfNotExist4MultiFields(conn, schemaName, partition, toPGIndexFields(indexDef), toIndexOption(indexDef)));
                 }
             }
 
@@ -187,20 +233,369 @@ public class PostgresSchemaDAO implements DBSchemaInitializer {
      * @throws Exception If the metadata query fails.
      */
     String findExistingIndexDefinition(java.sql.Connection conn, String schemaName, String tableName, String indexName) throws Exception {
-        var query = "SELECT indexdef FROM pg_indexes WHERE schemaname = ? AND tablename = ? AND indexname = ?";
+        var existingIndex = findExistingIndex(conn, schemaName, tableName, indexName);
+        return existingIndex == null ? null : existingIndex.definition;
+    }
+
+    /**
+     * Returns the PostgreSQL definition and the validity of an existing index.
+     *
+     * <p>A failed {@code CREATE INDEX CONCURRENTLY} leaves an invalid index behind,
+     * which is not used by queries but is still maintained on writes. Such an index
+     * has to be dropped and built again.</p>
+     *
+     * @param conn Active PostgreSQL connection.
+     * @param schemaName Schema containing the table.
+     * @param tableName Table containing the index.
+     * @param indexName Expected index name.
+     * @return The existing index, or {@code null} when the index does not exist.
+     * @throws Exception If the metadata query fails.
+     */
+    ExistingIndex findExistingIndex(java.sql.Connection conn, String schemaName, String tableName, String indexName) throws Exception {
+        var query = """
+                SELECT pg_get_indexdef(i.indexrelid) AS indexdef, pg_get_expr(i.indpred, i.indrelid) AS predicate, i.indisvalid
+                FROM pg_index i
+                JOIN pg_class ic ON ic.oid = i.indexrelid
+                JOIN pg_class tc ON tc.oid = i.indrelid
+                JOIN pg_namespace n ON n.oid = tc.relnamespace
+                WHERE n.nspname = ? AND tc.relname = ? AND ic.relname = ?
+                """;
         try (var pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, TableUtil.removeQuotes(TableUtil.checkAndNormalizeValidEntityName(schemaName)));
             pstmt.setString(2, TableUtil.removeQuotes(TableUtil.checkAndNormalizeValidEntityName(tableName)));
             pstmt.setString(3, indexName);
             try (var rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getString("indexdef");
+                    return new ExistingIndex(rs.getString("indexdef"), rs.getString("predicate"), rs.getBoolean("indisvalid"));
                 }
             }
         }
         return null;
     }
 
+    /**
+     * Estimated number of rows of the table from the planner statistics, without scanning the table
+     *
+     * @param conn
+     * @param schemaName
+     * @param tableName
+     * @return 0 if the table has never been analyzed
+     * @throws Exception
+     */
+    long estimateRowCount(java.sql.Connection conn, String schemaName, String tableName) throws Exception {
+        var query = """
+                SELECT c.reltuples::bigint AS estimate
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE n.nspname = ? AND c.relname = ?
+                """;
+        try (var pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, TableUtil.removeQuotes(TableUtil.checkAndNormalizeValidEntityName(schemaName)));
+            pstmt.setString(2, TableUtil.removeQuotes(TableUtil.checkAndNormalizeValidEntityName(tableName)));
+            try (var rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return Math.max(rs.getLong("estimate"), 0L);
+                }
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Build the index by {@code CREATE INDEX CONCURRENTLY} on the schema executor, see {@link ProcessConfiguration#getSchemaExecutor()}
+     *
+     * <p>A build of the same index that is already running is not started again.
+     * Use {@link #awaitIndexBuilds(String, String)} to wait for the builds of a partition.</p>
+     *
+     * @param host
+     * @param schemaName
+     * @param partition
+     * @param indexDef
+     * @param indexName
+     */
+    void scheduleConcurrentIndexBuild(String host, String schemaName, String partition, IndexDefinition indexDef, String indexName) {
+        var key = String.join(":", host, schemaName, partition, indexName);
+        var build = new IndexBuild(host, partition);
+
+        // a failed build is kept until it is scheduled again, so that awaitIndexBuilds reports the failure
+        var current = indexBuildMap.compute(key, (k, existing) -> existing != null && !existing.future.isCompletedExceptionally() ? existing : build);
+        if (current != build) {
+            return;
+        }
+
+        log.info("host:{}, index build scheduled concurrently. partition:{}, index:{}", host, partition, indexName);
+        ProcessConfiguration.getConfiguration().getSchemaExecutor().execute(() -> {
+            try {
+                _createIndexConcurrently(host, schemaName, partition, indexDef, indexName);
+                indexBuildMap.remove(key, build);
+                build.future.complete(null);
+            } catch (Exception e) {
+                log.error("host:{}, index build failed. partition:{}, index:{}", host, partition, indexName, e);
+                build.future.completeExceptionally(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> awaitIndexBuilds(String host, String partitionName) {
+        var futures = indexBuildMap.values().stream()
+                .filter(build -> StringUtils.equals(build.host, host) && StringUtils.equals(build.partition, partitionName))
+                .map(build -> build.future)
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Create the index without blocking writes, retrying when the build leaves an invalid index
+     *
+     * <p>An index being built concurrently is invalid until the build completes, so an invalid index may be
+     * the build of another node. The builds of an index are serialized by a session advisory lock on its name,
+     * and an invalid index is dropped only by the holder of the lock.</p>
+     *
+     * @param host
+     * @param schemaName
+     * @param partition
+     * @param indexDef
+     * @param indexName
+     * @throws Exception if the index is still invalid after all attempts
+     */
+    void _createIndexConcurrently(String host, String schemaName, String partition, IndexDefinition indexDef, String indexName) throws Exception {
+        var lockKey = TableUtil.removeQuotes(TableUtil.checkAndNormalizeValidEntityName(schemaName)) + "." + indexName;
+
+        // the lock is held by a connection outside of any transaction, CREATE INDEX CONCURRENTLY does not wait for it
+        try (var lockConn = getDataSource(host).getConnection()) {
+            lockConn.setAutoCommit(true);
+            acquireIndexBuildLock(host, lockConn, lockKey);
+            try {
+                _createIndexConcurrentlyLocked(host, schemaName, partition, indexDef, indexName);
+            } finally {
+                try (var pstmt = lockConn.prepareStatement("SELECT pg_advisory_unlock(hashtext(?))")) {
+                    pstmt.setString(1, lockKey);
+                    pstmt.execute();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until no other node builds the index
+     * <p>
+     * The lock is polled instead of waited for: a session blocked on the lock would hold a snapshot,
+     * and the concurrent build of the holder would wait for it.
+     * The lock of a node that stopped is released with its session.
+     *
+     * @param host
+     * @param conn
+     * @param lockKey schema.indexName
+     * @throws Exception
+     */
+    void acquireIndexBuildLock(String host, java.sql.Connection conn, String lockKey) throws Exception {
+        try (var pstmt = conn.prepareStatement("SELECT pg_try_advisory_lock(hashtext(?))")) {
+            pstmt.setString(1, lockKey);
+            while (true) {
+                try (var rs = pstmt.executeQuery()) {
+                    if (rs.next() && rs.getBoolean(1)) {
+                        return;
+                    }
+                }
+                log.info("host:{}, index is being built by another node, waiting. index:{}", host, lockKey);
+                Thread.sleep(CONCURRENT_INDEX_BUILD_RETRY_INTERVAL.toMillis());
+            }
+        }
+    }
+
+    void _createIndexConcurrentlyLocked(String host, String schemaName, String partition, IndexDefinition indexDef, String indexName) throws Exception {
+        var createSql = buildCreateIndexSql(schemaName, partition, indexDef, indexName, true);
+        var dropSql = "DROP INDEX CONCURRENTLY IF EXISTS " + TableUtil.checkAndNormalizeValidEntityName(schemaName) + ".\"" + indexName + "\"";
+
+        Exception lastError = null;
+        for (var attempt = 1; attempt <= CONCURRENT_INDEX_BUILD_ATTEMPTS; attempt++) {
+            // CONCURRENTLY cannot run inside a transaction block
+            try (var conn = getDataSource(host).getConnection(); var stmt = conn.createStatement()) {
+                conn.setAutoCommit(true);
+
+                // another node may have built it while this one waited for the lock
+                var existingIndex = findExistingIndex(conn, schemaName, partition, indexName);
+                if (existingIndex != null && existingIndex.valid) {
+                    return;
+                }
+                if (existingIndex != null) {
+                    // no build holds the lock, so the invalid index is the leftover of a failed build. IF NOT EXISTS would keep it
+                    stmt.execute(dropSql);
+                }
+
+                stmt.execute(createSql);
+
+                var createdIndex = findExistingIndex(conn, schemaName, partition, indexName);
+                if (createdIndex != null && createdIndex.valid) {
+                    log.info("host:{}, index created concurrently. partition:{}, index:{}", host, partition, indexName);
+                    return;
+                }
+                lastError = new IllegalStateException("Index is invalid after being created concurrently: " + indexName);
+            } catch (SQLException e) {
+                lastError = e;
+            }
+            log.warn("host:{}, index build attempt {} failed. partition:{}, index:{}, error:{}", host, attempt, partition, indexName, lastError.getMessage());
+
+            if (attempt < CONCURRENT_INDEX_BUILD_ATTEMPTS) {
+                Thread.sleep(CONCURRENT_INDEX_BUILD_RETRY_INTERVAL.toMillis() * attempt);
+            }
+        }
+
+        // do not leave an invalid index maintained on every write
+        try (var conn = getDataSource(host).getConnection(); var stmt = conn.createStatement()) {
+            conn.setAutoCommit(true);
+            stmt.execute(dropSql);
+        }
+        throw lastError;
+    }
+
+    /**
+     * The fields of the index for TableUtil
+     *
+     * @param indexDef
+     * @return
+     */
+    static List<PGIndexField> toPGIndexFields(IndexDefinition indexDef) {
+        return indexDef.fields.stream().map(f -> PGIndexField.of(f.fieldName, PGFieldType.valueOf(f.type.name()))).collect(Collectors.toList());
+    }
+
+    /**
+     * The options of the index for TableUtil
+     *
+     * @param indexDef
+     * @return
+     */
+    static IndexOption toIndexOption(IndexDefinition indexDef) {
+        var indexOption = IndexOption.unique(indexDef.unique);
+        if (indexDef.method == IndexMethod.GIN) {
+            indexOption = indexOption.gin();
+        }
+        return indexOption;
+    }
+
+    /**
+     * The DDL of the index, used where TableUtil does not support the index (concurrent builds and partial indexes)
+     * <p>
+     * Without the partial filter and CONCURRENTLY, the index is the same as the one TableUtil creates for {@link #toPGIndexFields} and {@link #toIndexOption},
+     * which the tests check, so the indexes built by either are used by the same queries.
+     *
+     * @param schemaName
+     * @param partition
+     * @param indexDef
+     * @param indexName
+     * @param concurrently whether to build the index without blocking writes
+     * @return
+     */
+    static String buildCreateIndexSql(String schemaName, String partition, IndexDefinition indexDef, String indexName, boolean concurrently) {
+        var table = TableUtil.checkAndNormalizeValidEntityName(schemaName) + "." + TableUtil.checkAndNormalizeValidEntityName(partition);
+        var expressions = indexDef.fields.stream().map(PostgresSchemaDAO::toIndexExpression).collect(Collectors.joining(", "));
+
+        var sql = "CREATE %sINDEX %sIF NOT EXISTS \"%s\" ON %s USING %s (%s)".formatted(
+                indexDef.unique ? "UNIQUE " : "", concurrently ? "CONCURRENTLY " : "", indexName, table, indexDef.method.name(), expressions);
+        if (indexDef.isPartial()) {
+            sql += " WHERE " + toPredicate(indexDef.partialFilter);
+        }
+        return sql;
+    }
+
+    /**
+     * The field names part of the index name. A partial index is named after its conditions as well,
+     * so it can be created next to the full index or another partial index of the same fields. e.g. expandOperatorIdSet_where_status_3f1c9a2b.
+     *
+     * @param indexDef
+     * @return
+     */
+    static String getJoinedFieldNames(IndexDefinition indexDef) {
+        var joinedFieldNames = indexDef.fields.stream().map(field -> field.fieldName).collect(Collectors.joining("_"));
+        return joinedFieldNames + indexDef.getPartialFilterSuffix();
+    }
+
+    /**
+     * The WHERE clause of a partial index. e.g. (data->>'status') = 'PROCESSING' AND ((data->>'active')::boolean) = true
+     *
+     * @param partialFilter
+     * @return
+     */
+    static String toPredicate(Map<String, Object> partialFilter) {
+        return partialFilter.entrySet().stream().map(entry -> {
+            var value = entry.getValue();
+            if (value instanceof Boolean) {
+                return toIndexExpression(IndexField.of(entry.getKey(), IndexFieldType.BOOLEAN)) + " = " + value;
+            }
+            if (value instanceof Number) {
+                return toIndexExpression(IndexField.of(entry.getKey(), IndexFieldType.NUMERIC)) + " = " + value;
+            }
+            return toIndexExpression(IndexField.of(entry.getKey(), IndexFieldType.TEXT)) + " = '" + value.toString().replace("'", "''") + "'";
+        }).collect(Collectors.joining(" AND "));
+    }
+
+    /**
+     * Whether the predicate of the existing index matches the partial filter of the index definition
+     * <p>
+     * The predicate of the partial filter is printed by postgres, see {@link #deparsePredicate}, and compared as a whole with the predicate of the existing index.
+     *
+     * @param conn
+     * @param existingIndex
+     * @param indexDef
+     * @return
+     * @throws SQLException
+     */
+    boolean matchesPartialFilter(java.sql.Connection conn, ExistingIndex existingIndex, IndexDefinition indexDef) throws SQLException {
+        if (!indexDef.isPartial()) {
+            return existingIndex.predicate == null;
+        }
+        return existingIndex.predicate != null && existingIndex.predicate.equals(deparsePredicate(conn, indexDef.partialFilter));
+    }
+
+    /**
+     * The predicate of the partial filter as postgres prints the predicate of an index. e.g. ((data ->> 'status'::text) = 'PROCESSING'::text)
+     * <p>
+     * The index is created on a temporary table in a transaction that is rolled back,
+     * so the predicate is printed by the same server in the same format as the existing indexes.
+     *
+     * @param conn
+     * @param partialFilter
+     * @return
+     * @throws SQLException
+     */
+    String deparsePredicate(java.sql.Connection conn, Map<String, Object> partialFilter) throws SQLException {
+        var autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (var stmt = conn.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE workflow_index_predicate (data jsonb)");
+            stmt.execute("CREATE INDEX ON workflow_index_predicate (data) WHERE " + toPredicate(partialFilter));
+            try (var rs = stmt.executeQuery("SELECT pg_get_expr(i.indpred, i.indrelid) FROM pg_index i WHERE i.indrelid = 'pg_temp.workflow_index_predicate'::regclass")) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } finally {
+            conn.rollback();
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * The expression of the index field, the same as the expressions used in queries.
+     * e.g. (data->>'name'), ((data->>'age')::numeric), (data->'tags'), (data->'mail'->>'address')
+     *
+     * @param field
+     * @return
+     */
+    static String toIndexExpression(IndexField field) {
+        var path = field.fieldName.split("\\.");
+        var expression = new StringBuilder("data");
+        for (var i = 0; i < path.length; i++) {
+            var isLast = i == path.length - 1;
+            var operator = isLast && field.type != IndexFieldType.JSONB ? "->>" : "->";
+            expression.append(operator).append("'").append(path[i].replace("'", "''")).append("'");
+        }
+
+        if (field.type == IndexFieldType.TEXT || field.type == IndexFieldType.JSONB) {
+            return "(" + expression + ")";
+        }
+        return "((" + expression + ")::" + field.type.sqlString + ")";
+    }
+
     /**
      * Get the native postgres data source to do operations for postgres
      *
@@ -208,7 +603,7 @@ public class PostgresSchemaDAO implements DBSchemaInitializer {
      * @return data source from connection pool
      * @throws Exception
      */
-    static DataSource getDataSource(String host) throws Exception {
+    public static DataSource getDataSource(String host) throws Exception {
         var db = ProcessConfiguration.getConfiguration().getDatabase(host);
 
         if (ObjectUtils.isEmpty(db) && judgeEnableDefaultWorkflowDB()) {
@@ -219,4 +614,36 @@ public class PostgresSchemaDAO implements DBSchemaInitializer {
         return ((PostgresImpl) db.getCosmosAccount()).getDataSource();
     }
 
+    /**
+     * An existing index, its predicate and whether it is valid
+     */
+    static class ExistingIndex {
+        final String definition;
+        /**
+         * The WHERE clause of a partial index as printed by postgres, null for a full index
+         */
+        final String predicate;
+        final boolean valid;
+
+        ExistingIndex(String definition, String predicate, boolean valid) {
+            this.definition = definition;
+            this.predicate = predicate;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * An index build running in the background
+     */
+    static class IndexBuild {
+        final String host;
+        final String partition;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        IndexBuild(String host, String partition) {
+            this.host = host;
+            this.partition = partition;
+        }
+    }
+
 }
@@ -0,0 +1,32 @@
+package jp.co.onehr.workflow.dao.write;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of the conditional patches of a bulk request, each attributed to the id of its document
+ */
+public class VersionedBulkResult {
+
+    /**
+     * id -> written document
+     */
+    public Map<String, Map<String, Object>> successMap = new LinkedHashMap<>();
+
+    /**
+     * Documents that do not exist or are not at the expected version
+     */
+    public List<String> conflictIds = new ArrayList<>();
+
+    /**
+     * Documents whose patches exhausted the automatic retries of the database client, e.g. throttled requests
+     */
+    public List<String> retryIds = new ArrayList<>();
+
+    /**
+     * id -> non-retryable error of the patch
+     */
+    public Map<String, Exception> errorMap = new LinkedHashMap<>();
+}
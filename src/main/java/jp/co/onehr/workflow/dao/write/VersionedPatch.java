@@ -0,0 +1,31 @@
+package jp.co.onehr.workflow.dao.write;
+
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+
+/**
+ * Patch operations of one document, applied only if the document is at the expected version
+ */
+public class VersionedPatch {
+
+    public final String id;
+
+    /**
+     * The patch operations, the one setting the new version is added when the patch is submitted
+     */
+    public final PatchOperations operations;
+
+    /**
+     * The version of the document when it was read
+     */
+    public final long expectedVersion;
+
+    private VersionedPatch(String id, PatchOperations operations, long expectedVersion) {
+        this.id = id;
+        this.operations = operations;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public static VersionedPatch of(String id, PatchOperations operations, long expectedVersion) {
+        return new VersionedPatch(id, operations, expectedVersion);
+    }
+}
@@ -0,0 +1,80 @@
+package jp.co.onehr.workflow.dao.write;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Interface used to write documents only if their version was not changed since they were read
+ *
+ * <p>
+ * The version check is part of the write itself, so two concurrent writers of the same version cannot both succeed.
+ *     <ul>
+ *       <li>cosmosdb: a filter predicate on _version, for a replace it guards the replace in a transactional batch</li>
+ *       <li>mongodb: a filter on {_id, _version}</li>
+ *       <li>postgres: UPDATE ... WHERE data->>'_version' = ?, checking the affected row</li>
+ *     </ul>
+ * A document written before versioning was introduced has no _version, it is treated as version 0.
+ * java-cosmos has no conditional write, so the implementations write the documents in its storage format.
+ * A written document must be the one java-cosmos writes for the same patch or update, the tests compare them for every patch operation.
+ * </p>
+ */
+public interface VersionedWriter {
+
+    /**
+     * Replace the whole document if its version is expectedVersion
+     *
+     * @param host
+     * @param coll
+     * @param partition
+     * @param map             the document to write, including its id and its new version
+     * @param expectedVersion the version of the document when it was read
+     * @return the written document, null if the document does not exist or its version is not expectedVersion
+     * @throws Exception
+     */
+    Map<String, Object> replaceIfVersion(String host, String coll, String partition, Map<String, Object> map, long expectedVersion) throws Exception;
+
+    /**
+     * Patch the document if its version is expectedVersion
+     *
+     * @param host
+     * @param coll
+     * @param partition
+     * @param id
+     * @param operations      the patch operations, including the one setting the new version
+     * @param expectedVersion the version of the document when it was read
+     * @return the written document, null if the document does not exist or its version is not expectedVersion
+     * @throws Exception
+     */
+    Map<String, Object> patchIfVersion(String host, String coll, String partition, String id, PatchOperations operations, long expectedVersion) throws Exception;
+
+    /**
+     * Patch each document if its version is the expected one
+     * <p>
+     * Non-transactional: the patches applied remain when another one fails.
+     *
+     * @param host
+     * @param coll
+     * @param partition
+     * @param patches
+     * @return the result of each patch, by document id
+     * @throws Exception if the patches cannot be submitted to the database
+     */
+    VersionedBulkResult bulkPatchIfVersion(String host, String coll, String partition, List<VersionedPatch> patches) throws Exception;
+
+    /**
+     * Split a JSON pointer of a patch operation into its unescaped segments. e.g. "/operateLogList/3" -> [operateLogList, 3]
+     *
+     * @param path
+     * @return
+     */
+    static List<String> toSegments(String path) {
+        return Arrays.stream(StringUtils.removeStart(path, "/").split("/"))
+                .map(segment -> segment.replace("~1", "/").replace("~0", "~"))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,51 @@
+package jp.co.onehr.workflow.dao.write;
+
+import io.github.thunderz99.cosmos.util.Checker;
+import jp.co.onehr.workflow.dao.write.impl.CosmosVersionedWriter;
+import jp.co.onehr.workflow.dao.write.impl.MongoVersionedWriter;
+import jp.co.onehr.workflow.dao.write.impl.PostgresVersionedWriter;
+import org.apache.commons.lang3.StringUtils;
+
+import static io.github.thunderz99.cosmos.CosmosBuilder.*;
+
+/**
+ * Builder class used to build the VersionedWriter of a database type
+ */
+public class VersionedWriterBuilder {
+
+    String dbType = COSMOSDB;
+
+    /**
+     * Specify the dbType( "cosmosdb" or "mongodb" or "postgres")
+     *
+     * @param dbType
+     * @return builder
+     */
+    public VersionedWriterBuilder withDatabaseType(String dbType) {
+        this.dbType = dbType;
+        return this;
+    }
+
+    /**
+     * Build the VersionedWriter of the database type
+     *
+     * @return VersionedWriter instance
+     */
+    public VersionedWriter build() {
+        Checker.checkNotBlank(dbType, "dbType");
+
+        if (StringUtils.equals(dbType, COSMOSDB)) {
+            return new CosmosVersionedWriter();
+        }
+
+        if (StringUtils.equals(dbType, MONGODB)) {
+            return new MongoVersionedWriter();
+        }
+
+        if (StringUtils.equals(dbType, POSTGRES)) {
+            return new PostgresVersionedWriter();
+        }
+
+        throw new IllegalArgumentException("Not supported dbType: " + dbType);
+    }
+}
@@ -0,0 +1,164 @@
+package jp.co.onehr.workflow.dao.write.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.models.CosmosBatch;
+import com.azure.cosmos.models.CosmosBatchPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosBulkPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import io.github.thunderz99.cosmos.Cosmos;
+import io.github.thunderz99.cosmos.CosmosException;
+import io.github.thunderz99.cosmos.impl.cosmosdb.CosmosDatabaseImpl;
+import io.github.thunderz99.cosmos.impl.cosmosdb.CosmosImpl;
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.dao.CosmosDB;
+import jp.co.onehr.workflow.dao.write.VersionedBulkResult;
+import jp.co.onehr.workflow.dao.write.VersionedPatch;
+import jp.co.onehr.workflow.dao.write.VersionedWriter;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import org.apache.commons.lang3.ObjectUtils;
+
+import static jp.co.onehr.workflow.service.base.BaseNoSqlService.judgeEnableDefaultWorkflowDB;
+
+/**
+ * Implementation of VersionedWriter interface for CosmosDB.
+ *
+ * <p>
+ * Patches carry a filter predicate on _version, the database rejects them with 412 when it does not match.
+ * A replace cannot carry a predicate, so it is executed in a transactional batch after a patch of the version with the predicate,
+ * and is rolled back with it.
+ * </p>
+ */
+public class CosmosVersionedWriter implements VersionedWriter {
+
+    static final int PRECONDITION_FAILED = 412;
+
+    static final int NOT_FOUND = 404;
+
+    static final int TOO_MANY_REQUESTS = 429;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> replaceIfVersion(String host, String coll, String partition, Map<String, Object> map, long expectedVersion) throws Exception {
+        var id = String.valueOf(map.get("id"));
+        var item = new LinkedHashMap<>(map);
+        item.put(Cosmos.getDefaultPartitionKey(), partition);
+
+        var batch = CosmosBatch.createCosmosBatch(new PartitionKey(partition));
+        batch.patchItemOperation(id, CosmosPatchOperations.create().set("/" + BaseData.VERSION, expectedVersion + 1),
+                new CosmosBatchPatchItemRequestOptions().setFilterPredicate(getVersionPredicate(expectedVersion)));
+        batch.replaceItemOperation(id, item);
+
+        var response = getContainer(host, coll).executeCosmosBatch(batch);
+        if (response.isSuccessStatusCode()) {
+            return response.getResults().get(1).getItem(Map.class);
+        }
+        for (var result : response.getResults()) {
+            if (isConflict(result.getStatusCode())) {
+                return null;
+            }
+        }
+        throw new CosmosException(response.getStatusCode(), String.valueOf(response.getStatusCode()), response.getErrorMessage());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> patchIfVersion(String host, String coll, String partition, String id, PatchOperations operations, long expectedVersion) throws Exception {
+        var options = new CosmosPatchItemRequestOptions().setFilterPredicate(getVersionPredicate(expectedVersion));
+        try {
+            return getContainer(host, coll).patchItem(id, new PartitionKey(partition), operations.getCosmosPatchOperations(), options, Map.class).getItem();
+        } catch (com.azure.cosmos.CosmosException e) {
+            if (isConflict(e.getStatusCode())) {
+                return null;
+            }
+            throw new CosmosException(e.getStatusCode(), String.valueOf(e.getStatusCode()), e.getMessage());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public VersionedBulkResult bulkPatchIfVersion(String host, String coll, String partition, List<VersionedPatch> patches) throws Exception {
+        var result = new VersionedBulkResult();
+        var operations = new ArrayList<CosmosItemOperation>(patches.size());
+        for (var patch : patches) {
+            var options = new CosmosBulkPatchItemRequestOptions().setFilterPredicate(getVersionPredicate(patch.expectedVersion));
+            operations.add(CosmosBulkOperations.getPatchItemOperation(patch.id, new PartitionKey(partition), patch.operations.getCosmosPatchOperations(), options));
+        }
+
+        var respondedIds = new ArrayList<String>();
+        for (var operationResponse : getContainer(host, coll).executeBulkOperations(operations)) {
+            var id = operationResponse.getOperation().getId();
+            respondedIds.add(id);
+
+            var response = operationResponse.getResponse();
+            if (response != null && response.isSuccessStatusCode()) {
+                result.successMap.put(id, response.getItem(Map.class));
+                continue;
+            }
+
+            var statusCode = response != null ? response.getStatusCode()
+                    : operationResponse.getException() instanceof com.azure.cosmos.CosmosException e ? e.getStatusCode() : 0;
+            if (isConflict(statusCode)) {
+                result.conflictIds.add(id);
+            } else if (statusCode == TOO_MANY_REQUESTS) {
+                result.retryIds.add(id);
+            } else {
+                var message = operationResponse.getException() != null ? operationResponse.getException().getMessage() : "status code: " + statusCode;
+                result.errorMap.put(id, new CosmosException(statusCode, String.valueOf(statusCode), message));
+            }
+        }
+
+        // an operation without a response was not executed
+        for (var patch : patches) {
+            if (!respondedIds.contains(patch.id)) {
+                result.retryIds.add(patch.id);
+            }
+        }
+        return result;
+    }
+
+    static boolean isConflict(int statusCode) {
+        return statusCode == PRECONDITION_FAILED || statusCode == NOT_FOUND;
+    }
+
+    /**
+     * The filter predicate matching the document only at the expected version
+     *
+     * @param expectedVersion
+     * @return
+     */
+    static String getVersionPredicate(long expectedVersion) {
+        if (expectedVersion == 0) {
+            return "FROM c WHERE NOT IS_DEFINED(c.%s) OR c.%s = 0".formatted(BaseData.VERSION, BaseData.VERSION);
+        }
+        return "FROM c WHERE c.%s = %d".formatted(BaseData.VERSION, expectedVersion);
+    }
+
+    /**
+     * Get the native cosmos container of the collection
+     *
+     * @param host
+     * @param coll
+     * @return
+     */
+    static CosmosContainer getContainer(String host, String coll) {
+        var db = ProcessConfiguration.getConfiguration().getDatabase(host);
+
+        if (ObjectUtils.isEmpty(db) && judgeEnableDefaultWorkflowDB()) {
+            db = CosmosDB.registerDefaultWorkflowDB(host);
+        }
+
+        // get the native cosmos client to use the conditional request options
+        var client = ((CosmosImpl) db.getCosmosAccount()).getClient();
+        return client.getDatabase(((CosmosDatabaseImpl) db).getDatabaseName()).getContainer(coll);
+    }
+}
@@ -0,0 +1,137 @@
+package jp.co.onehr.workflow.dao.write.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import io.github.thunderz99.cosmos.Cosmos;
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.dao.infra.impl.MongoSchemaDAO;
+import jp.co.onehr.workflow.dao.write.VersionedBulkResult;
+import jp.co.onehr.workflow.dao.write.VersionedPatch;
+import jp.co.onehr.workflow.dao.write.VersionedWriter;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Implementation of VersionedWriter interface for MongoDB.
+ *
+ * <p>
+ * The writes filter on {_id, _version}, a document that does not match is left unchanged.
+ * partition(=mongo collection)
+ * </p>
+ */
+public class MongoVersionedWriter implements VersionedWriter {
+
+    static final String TIMESTAMP = "_ts";
+
+    @Override
+    public Map<String, Object> replaceIfVersion(String host, String coll, String partition, Map<String, Object> map, long expectedVersion) throws Exception {
+        var id = String.valueOf(map.get("id"));
+        var document = new Document(map);
+        document.put("_id", id);
+        document.put(Cosmos.getDefaultPartitionKey(), partition);
+        document.put(TIMESTAMP, Instant.now().getEpochSecond());
+
+        var collection = MongoSchemaDAO.getMongoDatabase(host).getCollection(partition);
+        var ret = collection.findOneAndReplace(getVersionFilter(id, expectedVersion), document,
+                new FindOneAndReplaceOptions().returnDocument(ReturnDocument.AFTER));
+        return toMap(ret);
+    }
+
+    @Override
+    public Map<String, Object> patchIfVersion(String host, String coll, String partition, String id, PatchOperations operations, long expectedVersion) throws Exception {
+        var collection = MongoSchemaDAO.getMongoDatabase(host).getCollection(partition);
+        var ret = collection.findOneAndUpdate(getVersionFilter(id, expectedVersion), toUpdates(operations),
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+        return toMap(ret);
+    }
+
+    /**
+     * A bulk write of mongodb reports only the number of matched documents, not which ones matched,
+     * so the conditional patches are written one by one.
+     */
+    @Override
+    public VersionedBulkResult bulkPatchIfVersion(String host, String coll, String partition, List<VersionedPatch> patches) throws Exception {
+        var result = new VersionedBulkResult();
+        for (var patch : patches) {
+            try {
+                var document = patchIfVersion(host, coll, partition, patch.id, patch.operations, patch.expectedVersion);
+                if (document == null) {
+                    result.conflictIds.add(patch.id);
+                } else {
+                    result.successMap.put(patch.id, document);
+                }
+            } catch (MongoException e) {
+                result.errorMap.put(patch.id, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The filter matching the document only at the expected version
+     *
+     * @param id
+     * @param expectedVersion
+     * @return
+     */
+    static Bson getVersionFilter(String id, long expectedVersion) {
+        if (expectedVersion == 0) {
+            return Filters.and(Filters.eq("_id", id),
+                    Filters.or(Filters.exists(BaseData.VERSION, false), Filters.eq(BaseData.VERSION, 0)));
+        }
+        return Filters.and(Filters.eq("_id", id), Filters.eq(BaseData.VERSION, expectedVersion));
+    }
+
+    /**
+     * Convert the patch operations to mongo update operators
+     * <p>
+     * An "add" to an array index is written as a set of that index, which appends when the index is the length of the array.
+     * Mongo rejects a push and a set of an index of the same array in one update.
+     *
+     * @param operations
+     * @return
+     */
+    static Bson toUpdates(PatchOperations operations) {
+        var updates = new ArrayList<Bson>();
+        for (var operation : operations.getPatchOperations()) {
+            var segments = VersionedWriter.toSegments(operation.getPath());
+            var path = String.join(".", segments);
+            var value = operation.getValue();
+            switch (operation.getOperationType().name()) {
+                case "SET", "REPLACE" -> updates.add(Updates.set(path, value));
+                case "ADD" -> {
+                    if ("-".equals(segments.get(segments.size() - 1))) {
+                        updates.add(Updates.push(String.join(".", segments.subList(0, segments.size() - 1)), value));
+                    } else {
+                        updates.add(Updates.set(path, value));
+                    }
+                }
+                case "REMOVE" -> updates.add(Updates.unset(path));
+                case "INCREMENT" -> updates.add(Updates.inc(path, (Number) value));
+                default -> throw new IllegalArgumentException("Not supported patch operation: " + operation.getOperationType());
+            }
+        }
+        updates.add(Updates.set(TIMESTAMP, Instant.now().getEpochSecond()));
+        return Updates.combine(updates);
+    }
+
+    static Map<String, Object> toMap(Document document) {
+        if (document == null) {
+            return null;
+        }
+        var map = new LinkedHashMap<String, Object>(document);
+        map.remove("_id");
+        return map;
+    }
+}
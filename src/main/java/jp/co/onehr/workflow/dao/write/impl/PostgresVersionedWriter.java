@@ -0,0 +1,200 @@
+package jp.co.onehr.workflow.dao.write.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.github.thunderz99.cosmos.impl.postgres.util.TableUtil;
+import io.github.thunderz99.cosmos.util.JsonUtil;
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.dao.infra.impl.PostgresSchemaDAO;
+import jp.co.onehr.workflow.dao.write.VersionedBulkResult;
+import jp.co.onehr.workflow.dao.write.VersionedPatch;
+import jp.co.onehr.workflow.dao.write.VersionedWriter;
+import jp.co.onehr.workflow.dto.base.BaseData;
+
+/**
+ * Implementation of VersionedWriter interface for Postgres.
+ *
+ * <p>
+ * The writes are UPDATE ... WHERE id = ? AND data->>'_version' = ? RETURNING data,
+ * a document that does not match is not updated and no row is returned.
+ * collection(=postgres schema), partition(=postgres table), the document is stored in the data column
+ * </p>
+ */
+public class PostgresVersionedWriter implements VersionedWriter {
+
+    static final String VERSION_CONDITION = "COALESCE((data->>'%s')::bigint, 0) = ?".formatted(BaseData.VERSION);
+
+    static final String TIMESTAMP_EXPRESSION = "jsonb_set(%s, '{_ts}', to_jsonb(extract(epoch from now())::bigint), true)";
+
+    @Override
+    public Map<String, Object> replaceIfVersion(String host, String coll, String partition, Map<String, Object> map, long expectedVersion) throws Exception {
+        var id = String.valueOf(map.get("id"));
+        var sql = "UPDATE %s SET data = %s WHERE id = ? AND %s RETURNING data".formatted(
+                getTable(coll, partition), TIMESTAMP_EXPRESSION.formatted("?::jsonb"), VERSION_CONDITION);
+
+        try (var conn = PostgresSchemaDAO.getDataSource(host).getConnection(); var stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, JsonUtil.toJson(map));
+            stmt.setString(2, id);
+            stmt.setLong(3, expectedVersion);
+            try (var rs = stmt.executeQuery()) {
+                return rs.next() ? JsonUtil.toMap(rs.getString(1)) : null;
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> patchIfVersion(String host, String coll, String partition, String id, PatchOperations operations, long expectedVersion) throws Exception {
+        try (var conn = PostgresSchemaDAO.getDataSource(host).getConnection()) {
+            return patchIfVersion(conn, coll, partition, id, operations, expectedVersion);
+        }
+    }
+
+    /**
+     * The conditional updates are sent one by one on the same connection, each row is checked on its own
+     */
+    @Override
+    public VersionedBulkResult bulkPatchIfVersion(String host, String coll, String partition, List<VersionedPatch> patches) throws Exception {
+        var result = new VersionedBulkResult();
+        try (var conn = PostgresSchemaDAO.getDataSource(host).getConnection()) {
+            for (var patch : patches) {
+                try {
+                    var document = patchIfVersion(conn, coll, partition, patch.id, patch.operations, patch.expectedVersion);
+                    if (document == null) {
+                        result.conflictIds.add(patch.id);
+                    } else {
+                        result.successMap.put(patch.id, document);
+                    }
+                } catch (SQLException e) {
+                    result.errorMap.put(patch.id, e);
+                }
+            }
+        }
+        return result;
+    }
+
+    Map<String, Object> patchIfVersion(Connection conn, String coll, String partition, String id, PatchOperations operations, long expectedVersion) throws Exception {
+        var params = new ArrayList<Object>();
+        var expression = TIMESTAMP_EXPRESSION.formatted(toExpression(conn, operations, params));
+        var sql = "UPDATE %s SET data = %s WHERE id = ? AND %s RETURNING data".formatted(getTable(coll, partition), expression, VERSION_CONDITION);
+        params.add(id);
+        params.add(expectedVersion);
+
+        try (var stmt = conn.prepareStatement(sql)) {
+            for (var i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            try (var rs = stmt.executeQuery()) {
+                return rs.next() ? JsonUtil.toMap(rs.getString(1)) : null;
+            }
+        }
+    }
+
+    /**
+     * Convert the patch operations to a subquery applying them one after another to the data column
+     * <p>
+     * Each operation is a step reading the document of the previous step, so a document is referenced several times
+     * without repeating the previous steps. Missing parents of a path are created as empty objects,
+     * and a missing array is created by an append, as a patch of java-cosmos does.
+     * e.g. set /a/b -> (SELECT s2.d FROM (SELECT data AS d) s0,
+     * LATERAL (SELECT jsonb_set(s0.d, '{a}', COALESCE(s0.d #> '{a}', '{}'), true) AS d) s1,
+     * LATERAL (SELECT jsonb_set(s1.d, '{a,b}', ?, true) AS d) s2)
+     *
+     * @param conn
+     * @param operations
+     * @param params     the parameters of the expression, in order
+     * @return
+     * @throws SQLException
+     */
+    static String toExpression(Connection conn, PatchOperations operations, List<Object> params) throws SQLException {
+        var steps = new ArrayList<String>();
+        for (var operation : operations.getPatchOperations()) {
+            var segments = new ArrayList<>(VersionedWriter.toSegments(operation.getPath()));
+            var value = JsonUtil.toJson(operation.getValue());
+            var last = segments.get(segments.size() - 1);
+
+            switch (operation.getOperationType().name()) {
+                case "SET" -> {
+                    addParentSteps(conn, segments, steps, params);
+                    steps.add("jsonb_set(%1$s, ?, ?::jsonb, true)");
+                    params.add(toPath(conn, segments));
+                    params.add(value);
+                }
+                case "REPLACE" -> {
+                    steps.add("jsonb_set(%1$s, ?, ?::jsonb, false)");
+                    params.add(toPath(conn, segments));
+                    params.add(value);
+                }
+                case "ADD" -> {
+                    // "-" appends, an array index inserts before the element at the index, or appends when it is the length
+                    var append = "-".equals(last);
+                    var arrayElement = append || last.chars().allMatch(Character::isDigit);
+                    if (append) {
+                        var arraySegments = segments.subList(0, segments.size() - 1);
+                        addParentSteps(conn, arraySegments, steps, params);
+                        steps.add("jsonb_set(%1$s, ?, COALESCE(%1$s #> ?, '[]'::jsonb), true)");
+                        var arrayPath = toPath(conn, arraySegments);
+                        params.add(arrayPath);
+                        params.add(arrayPath);
+                        segments.set(segments.size() - 1, "-1");
+                    } else if (!arrayElement) {
+                        addParentSteps(conn, segments, steps, params);
+                    }
+                    steps.add(arrayElement
+                            ? "jsonb_insert(%1$s, ?, ?::jsonb, " + append + ")"
+                            : "jsonb_set(%1$s, ?, ?::jsonb, true)");
+                    params.add(toPath(conn, segments));
+                    params.add(value);
+                }
+                case "REMOVE" -> {
+                    steps.add("(%1$s #- ?)");
+                    params.add(toPath(conn, segments));
+                }
+                case "INCREMENT" -> {
+                    addParentSteps(conn, segments, steps, params);
+                    var path = toPath(conn, segments);
+                    steps.add("jsonb_set(%1$s, ?, to_jsonb(COALESCE((%1$s #>> ?)::numeric, 0) + ?), true)");
+                    params.add(path);
+                    params.add(path);
+                    params.add(operation.getValue());
+                }
+                default -> throw new IllegalArgumentException("Not supported patch operation: " + operation.getOperationType());
+            }
+        }
+
+        var sql = new StringBuilder("(SELECT s%d.d FROM (SELECT data AS d) s0".formatted(steps.size()));
+        for (var i = 0; i < steps.size(); i++) {
+            sql.append(", LATERAL (SELECT ").append(steps.get(i).formatted("s" + i + ".d")).append(" AS d) s").append(i + 1);
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * Add the steps creating the missing parents of the path as empty objects, jsonb_set does nothing when a parent is missing
+     *
+     * @param conn
+     * @param segments the segments of the path
+     * @param steps
+     * @param params
+     * @throws SQLException
+     */
+    static void addParentSteps(Connection conn, List<String> segments, List<String> steps, List<Object> params) throws SQLException {
+        for (var i = 1; i < segments.size(); i++) {
+            var parentPath = toPath(conn, segments.subList(0, i));
+            steps.add("jsonb_set(%1$s, ?, COALESCE(%1$s #> ?, '{}'::jsonb), true)");
+            params.add(parentPath);
+            params.add(parentPath);
+        }
+    }
+
+    static java.sql.Array toPath(Connection conn, List<String> segments) throws SQLException {
+        return conn.createArrayOf("text", segments.toArray());
+    }
+
+    static String getTable(String coll, String partition) {
+        return TableUtil.checkAndNormalizeValidEntityName(coll) + "." + TableUtil.checkAndNormalizeValidEntityName(partition);
+    }
+}
@@ -1,5 +1,7 @@
 package jp.co.onehr.workflow.dto;
 
+import java.util.Objects;
+
 import jp.co.onehr.workflow.dto.base.SimpleData;
 
 public class ApprovalStatus extends SimpleData {
@@ -12,8 +14,44 @@ public class ApprovalStatus extends SimpleData {
         this.approved = approved;
     }
 
+    /**
+     * Copy constructor
+     *
+     * @param other
+     */
+    public ApprovalStatus(ApprovalStatus other) {
+        this.operatorId = other.operatorId;
+        this.approved = other.approved;
+    }
+
     public String operatorId = "";
 
     public boolean approved = false;
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T copy() {
+        if (getClass() != ApprovalStatus.class) {
+            return super.copy();
+        }
+        return (T) new ApprovalStatus(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var that = (ApprovalStatus) o;
+        return approved == that.approved && Objects.equals(operatorId, that.operatorId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operatorId, approved);
+    }
+
 }
\ No newline at end of file
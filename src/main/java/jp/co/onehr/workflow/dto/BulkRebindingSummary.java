@@ -0,0 +1,65 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary of a bulk rebinding of instances to a definition
+ */
+public class BulkRebindingSummary {
+
+    /**
+     * Maximum number of failures recorded with their reason, so the summary stays small for any number of instances
+     */
+    public static final int MAX_RECORDED_FAILURES = 1_000;
+
+    /**
+     * Number of instances matched by the bulk rebinding
+     */
+    public int total = 0;
+
+    /**
+     * Number of instances rebound successfully
+     */
+    public int successCount = 0;
+
+    /**
+     * Number of instances that could not be rebound after the retries
+     */
+    public int failureCount = 0;
+
+    /**
+     * instanceId -> reason, the first {@link #MAX_RECORDED_FAILURES} failures
+     */
+    public Map<String, String> failures = new LinkedHashMap<>();
+
+    /**
+     * Record an instance that could not be rebound
+     *
+     * @param instanceId
+     * @param reason
+     */
+    public void addFailure(String instanceId, String reason) {
+        failureCount++;
+        if (failures.size() < MAX_RECORDED_FAILURES) {
+            failures.put(instanceId, reason);
+        }
+    }
+
+    /**
+     * Add the results of a chunk of instances
+     *
+     * @param other
+     */
+    public void merge(BulkRebindingSummary other) {
+        total += other.total;
+        successCount += other.successCount;
+        failureCount += other.failureCount;
+        for (var entry : other.failures.entrySet()) {
+            if (failures.size() >= MAX_RECORDED_FAILURES) {
+                break;
+            }
+            failures.put(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import jp.co.onehr.workflow.constant.ApprovalType;
+import jp.co.onehr.workflow.constant.WorkflowErrors;
+import jp.co.onehr.workflow.dto.node.Node;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.service.NodeService;
+
+/**
+ * An indexed view of the nodes in a workflow definition
+ * <p>
+ * Node lookups by nodeId and by position are O(1), which matters for definitions with many nodes,
+ * because each action looks up the current node several times.
+ * Use {@link Definition#getCompiledDefinition()} to obtain the view, it is built again when the nodes of the definition are modified.
+ */
+public final class CompiledDefinition {
+
+    /**
+     * The node list the view was built from, used to detect modification of the definition
+     */
+    private final List<Node> sourceNodes;
+
+    private final Node[] nodes;
+
+    private final String[] nodeIds;
+
+    private final Map<String, Integer> nodeIndexMap;
+
+    private final boolean[] manualNodes;
+
+    private final ApprovalType[] approvalTypes;
+
+    private CompiledDefinition(List<Node> sourceNodes) {
+        this.sourceNodes = sourceNodes;
+        this.nodes = sourceNodes.toArray(new Node[0]);
+
+        var indexMap = new HashMap<String, Integer>(nodes.length * 2);
+        this.nodeIds = new String[nodes.length];
+        this.manualNodes = new boolean[nodes.length];
+        this.approvalTypes = new ApprovalType[nodes.length];
+
+        for (var i = 0; i < nodes.length; i++) {
+            var node = nodes[i];
+            // same as List.indexOf, the first node wins when nodeIds are duplicated
+            indexMap.putIfAbsent(node.nodeId, i);
+            nodeIds[i] = node.nodeId;
+            manualNodes[i] = NodeService.isManualNode(node.getType());
+            approvalTypes[i] = node.getApprovalType();
+        }
+        this.nodeIndexMap = Collections.unmodifiableMap(indexMap);
+    }
+
+    /**
+     * Build the view of the definition's nodes
+     *
+     * @param definition
+     * @return
+     */
+    public static CompiledDefinition of(Definition definition) {
+        return new CompiledDefinition(definition.nodes);
+    }
+
+    /**
+     * Whether the view still reflects the given node list
+     * <p>
+     * Every node is compared by identity, so nodes added, removed, replaced or moved after compiling are detected,
+     * as well as the nodeIds and approval types modified in place.
+     *
+     * @param currentNodes
+     * @return
+     */
+    boolean isCompiledFrom(List<Node> currentNodes) {
+        if (currentNodes != sourceNodes || currentNodes.size() != nodes.length) {
+            return false;
+        }
+        for (var i = 0; i < nodes.length; i++) {
+            var node = currentNodes.get(i);
+            if (node != nodes[i] || !Objects.equals(node.nodeId, nodeIds[i]) || node.getApprovalType() != approvalTypes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public List<Node> getNodes() {
+        return List.of(nodes);
+    }
+
+    public Node getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Get the index of the node
+     *
+     * @param nodeId
+     * @return
+     */
+    public int getNodeIndex(String nodeId) {
+        var index = nodeId == null ? null : nodeIndexMap.get(nodeId);
+        if (index == null) {
+            throw new WorkflowException(WorkflowErrors.NODE_ID_INVALID, "The current node's ID does not exist in the definition", nodeId);
+        }
+        return index;
+    }
+
+    public Node getNode(String nodeId) {
+        return nodes[getNodeIndex(nodeId)];
+    }
+
+    public boolean containsNode(String nodeId) {
+        return nodeId != null && nodeIndexMap.containsKey(nodeId);
+    }
+
+    public Node getStartNode() {
+        return nodes[0];
+    }
+
+    /**
+     * The first actionable node, which is the node next to the start node
+     *
+     * @return
+     */
+    public Node getFirstNode() {
+        return nodes[1];
+    }
+
+    public Node getLastNode() {
+        return nodes[nodes.length - 1];
+    }
+
+    public boolean isFirstNode(String nodeId) {
+        return getFirstNode().nodeId.equals(nodeId);
+    }
+
+    public boolean isLastNode(String nodeId) {
+        return getLastNode().nodeId.equals(nodeId);
+    }
+
+    public boolean isManualNode(int index) {
+        return manualNodes[index];
+    }
+
+    public boolean isManualNode(String nodeId) {
+        return manualNodes[getNodeIndex(nodeId)];
+    }
+
+    public ApprovalType getApprovalType(String nodeId) {
+        return approvalTypes[getNodeIndex(nodeId)];
+    }
+}
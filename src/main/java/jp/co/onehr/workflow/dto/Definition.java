@@ -3,8 +3,10 @@ package jp.co.onehr.workflow.dto;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -64,6 +66,12 @@ public class Definition extends BaseData implements IndexCustomizable {
      */
     public boolean returnToStartNode = true;
 
+    /**
+     * The indexed view of the nodes, built on first use
+     */
+    @JsonIgnore
+    private transient volatile CompiledDefinition compiledDefinition;
+
     public Definition() {
 
     }
@@ -81,6 +89,56 @@ public class Definition extends BaseData implements IndexCustomizable {
             Node node = JsonUtil.fromJson(JsonUtil.toJson(nodeMap), NodeType.getNodeClass(type));
             this.nodes.add(node);
         }
+        this.compiledDefinition = null;
+    }
+
+    /**
+     * Get the indexed view of the nodes for O(1) lookups
+     * <p>
+     * The view is rebuilt when nodes were added, removed, replaced or moved after the last call.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public CompiledDefinition getCompiledDefinition() {
+        var compiled = this.compiledDefinition;
+        if (compiled == null || !compiled.isCompiledFrom(nodes)) {
+            compiled = CompiledDefinition.of(this);
+            this.compiledDefinition = compiled;
+        }
+        return compiled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (getClass() != Definition.class) {
+            // subclasses may add fields, compare them by JSON as SimpleData does
+            return super.equals(o);
+        }
+        var that = (Definition) o;
+        return baseFieldsEquals(that)
+                && enableOperatorControl == that.enableOperatorControl
+                && returnToStartNode == that.returnToStartNode
+                && Objects.equals(workflowId, that.workflowId)
+                && Objects.equals(version, that.version)
+                && Objects.equals(nodes, that.nodes)
+                && Objects.equals(applicationModes, that.applicationModes)
+                && Objects.equals(allowedOperatorIds, that.allowedOperatorIds);
+    }
+
+    @Override
+    public int hashCode() {
+        if (getClass() != Definition.class) {
+            return super.hashCode();
+        }
+        // nodes are left out, the id and version distinguish definitions well enough
+        return Objects.hash(baseFieldsHashCode(), workflowId, version, applicationModes, enableOperatorControl, allowedOperatorIds, returnToStartNode);
     }
 
     @Override
@@ -1,7 +1,11 @@
 package jp.co.onehr.workflow.dto;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
@@ -11,6 +15,10 @@ import jp.co.onehr.workflow.constant.Action;
 import jp.co.onehr.workflow.constant.ApplicationMode;
 import jp.co.onehr.workflow.constant.Status;
 import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
+import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
+import jp.co.onehr.workflow.dto.base.index.IndexField;
+import jp.co.onehr.workflow.dto.base.index.IndexFieldType;
 import jp.co.onehr.workflow.dto.param.ApplicationParam;
 
 /**
@@ -18,7 +26,7 @@ import jp.co.onehr.workflow.dto.param.ApplicationParam;
  * <p>
  * Record of the running workflow initiated by the applicant
  */
-public class Instance extends BaseData {
+public class Instance extends BaseData implements IndexCustomizable {
 
     /**
      * ID of the Workflow for the Running Instance
@@ -92,6 +100,14 @@ public class Instance extends BaseData {
 
     public List<OperateLog> operateLogList = Lists.newArrayList();
 
+    /**
+     * Number of operate logs of the instance stored in the operate log partition
+     * <p>
+     * 0 if the operate logs are only stored in the instance.
+     * Otherwise operateLogList only keeps the latest logs, see {@link jp.co.onehr.workflow.ProcessConfiguration#externalizeOperateLogs(int)}
+     */
+    public long operateLogCount = 0;
+
     public Instance() {
 
     }
@@ -101,6 +117,134 @@ public class Instance extends BaseData {
         this.definitionId = definitionId;
     }
 
+    /**
+     * Copy constructor
+     * <p>
+     * Collections, approval statuses and operate logs are copied, so the copy can be modified independently.
+     *
+     * @param other
+     */
+    public Instance(Instance other) {
+        this.id = other.id;
+        this.createdAt = other.createdAt;
+        this.updatedAt = other.updatedAt;
+        this.dataVersion = other.dataVersion;
+        this.workflowId = other.workflowId;
+        this.definitionId = other.definitionId;
+        this.nodeId = other.nodeId;
+        this.preNodeId = other.preNodeId;
+        this.operatorIdSet = copySet(other.operatorIdSet);
+        this.operatorOrgIdSet = copySet(other.operatorOrgIdSet);
+        this.expandOperatorIdSet = copySet(other.expandOperatorIdSet);
+        this.preExpandOperatorIdSet = copySet(other.preExpandOperatorIdSet);
+        this.applicationMode = other.applicationMode;
+        this.applicant = other.applicant;
+        this.proxyApplicant = other.proxyApplicant;
+        this.status = other.status;
+        this.parallelApproval = copyParallelApproval(other.parallelApproval);
+        this.allowingActions = copySet(other.allowingActions);
+        this.operateLogList = copyOperateLogList(other.operateLogList);
+        this.operateLogCount = other.operateLogCount;
+    }
+
+    /**
+     * Generate a copy without the JSON round-trip of {@link jp.co.onehr.workflow.dto.base.SimpleData#copy()}
+     *
+     * @return
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T copy() {
+        if (getClass() != Instance.class) {
+            return super.copy();
+        }
+        return (T) new Instance(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (getClass() != Instance.class) {
+            // subclasses may add fields, compare them by JSON as SimpleData does
+            return super.equals(o);
+        }
+        var that = (Instance) o;
+        return baseFieldsEquals(that)
+                && Objects.equals(workflowId, that.workflowId)
+                && Objects.equals(definitionId, that.definitionId)
+                && Objects.equals(nodeId, that.nodeId)
+                && Objects.equals(preNodeId, that.preNodeId)
+                && Objects.equals(operatorIdSet, that.operatorIdSet)
+                && Objects.equals(operatorOrgIdSet, that.operatorOrgIdSet)
+                && Objects.equals(expandOperatorIdSet, that.expandOperatorIdSet)
+                && Objects.equals(preExpandOperatorIdSet, that.preExpandOperatorIdSet)
+                && applicationMode == that.applicationMode
+                && Objects.equals(applicant, that.applicant)
+                && Objects.equals(proxyApplicant, that.proxyApplicant)
+                && status == that.status
+                && Objects.equals(parallelApproval, that.parallelApproval)
+                && Objects.equals(allowingActions, that.allowingActions)
+                && Objects.equals(operateLogList, that.operateLogList)
+                && operateLogCount == that.operateLogCount;
+    }
+
+    @Override
+    public int hashCode() {
+        if (getClass() != Instance.class) {
+            return super.hashCode();
+        }
+        // operateLogList is left out, the other fields distinguish instances well enough
+        return Objects.hash(baseFieldsHashCode(), workflowId, definitionId, nodeId, preNodeId, operatorIdSet, operatorOrgIdSet,
+                expandOperatorIdSet, preExpandOperatorIdSet, applicationMode, applicant, proxyApplicant, status, parallelApproval, allowingActions, operateLogCount);
+    }
+
+    @Override
+    public List<IndexDefinition> getCustomIndexDefinitions() {
+        return List.of(
+                // The operator's inbox queries the instances whose current operators contain the operator
+                IndexDefinition.ofGin(IndexField.of("expandOperatorIdSet", IndexFieldType.JSONB)),
+                // Bulk rebinding and list views query the instances of a workflow by status
+                IndexDefinition.of(List.of(IndexField.of("workflowId", IndexFieldType.TEXT), IndexField.of("status", IndexFieldType.TEXT)), false),
+                // Relocating and rebinding query the instances at a node of a definition
+                IndexDefinition.of(List.of(IndexField.of("definitionId", IndexFieldType.TEXT), IndexField.of("nodeId", IndexFieldType.TEXT)), false),
+                // "My requests" queries the instances by applicant or proxy applicant
+                IndexDefinition.of(IndexField.of("applicant", IndexFieldType.TEXT), false),
+                IndexDefinition.of(IndexField.of("proxyApplicant", IndexFieldType.TEXT), false)
+        );
+    }
+
+    private static <E> Set<E> copySet(Set<E> set) {
+        return set == null ? null : new HashSet<>(set);
+    }
+
+    private static Map<String, ApprovalStatus> copyParallelApproval(Map<String, ApprovalStatus> parallelApproval) {
+        if (parallelApproval == null) {
+            return null;
+        }
+        var result = new HashMap<String, ApprovalStatus>(parallelApproval.size() * 2);
+        for (var entry : parallelApproval.entrySet()) {
+            result.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().copy());
+        }
+        return result;
+    }
+
+    private static List<OperateLog> copyOperateLogList(List<OperateLog> operateLogList) {
+        if (operateLogList == null) {
+            return null;
+        }
+        // one more slot, since an action usually appends a log to the copy
+        var result = new ArrayList<OperateLog>(operateLogList.size() + 1);
+        for (var operateLog : operateLogList) {
+            result.add(operateLog == null ? null : operateLog.copy());
+        }
+        return result;
+    }
+
     /**
      * Set the content of the application instance based on the application parameters
      *
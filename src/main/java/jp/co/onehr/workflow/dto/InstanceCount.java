@@ -0,0 +1,25 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Number of instances in a group, the result of counting instances grouped by some of their fields
+ */
+public class InstanceCount {
+
+    /**
+     * field name -> value of the group, e.g. {"nodeId": "xxx", "status": "PROCESSING"}
+     */
+    public Map<String, Object> group = new LinkedHashMap<>();
+
+    public long count;
+
+    public InstanceCount() {
+    }
+
+    public InstanceCount(Map<String, Object> group, long count) {
+        this.group = group;
+        this.count = count;
+    }
+}
@@ -0,0 +1,42 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.List;
+
+import jp.co.onehr.workflow.constant.ApplicationMode;
+import jp.co.onehr.workflow.constant.Status;
+import jp.co.onehr.workflow.dto.base.BaseData;
+
+/**
+ * The fields of an instance needed by list views
+ * <p>
+ * Only these fields are read from the database, the operate logs, the parallel approval
+ * and the operator sets of the instance are not transferred.
+ */
+public class InstanceSummary extends BaseData {
+
+    /**
+     * The fields read for a summary
+     */
+    public static final List<String> FIELDS = List.of("id", "workflowId", "definitionId", "nodeId", "status",
+            "applicationMode", "applicant", "proxyApplicant", "createdAt", "updatedAt");
+
+    public String workflowId = "";
+
+    public String definitionId = "";
+
+    /**
+     * ID of the Current Node in the Instance
+     */
+    public String nodeId = "";
+
+    public Status status;
+
+    public ApplicationMode applicationMode;
+
+    public String applicant = "";
+
+    public String proxyApplicant = "";
+
+    public InstanceSummary() {
+    }
+}
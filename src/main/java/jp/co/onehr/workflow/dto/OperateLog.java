@@ -1,6 +1,7 @@
 package jp.co.onehr.workflow.dto;
 
 import java.util.Map;
+import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonSetter;
 import io.github.thunderz99.cosmos.util.JsonUtil;
@@ -67,6 +68,80 @@ public class OperateLog extends SimpleData {
     public OperateLog() {
     }
 
+    /**
+     * Copy constructor
+     * <p>
+     * The logContext is shared with the original, it is not modified once the log is recorded.
+     *
+     * @param other
+     */
+    public OperateLog(OperateLog other) {
+        this.nodeId = other.nodeId;
+        this.nodeName = other.nodeName;
+        this.nodeType = other.nodeType;
+        this.statusBefore = other.statusBefore;
+        this.operatorId = other.operatorId;
+        this.action = other.action;
+        this.statusAfter = other.statusAfter;
+        this.comment = other.comment;
+        this.logContext = other.logContext;
+        this.operatorAt = other.operatorAt;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T copy() {
+        if (getClass() != OperateLog.class) {
+            return super.copy();
+        }
+        return (T) new OperateLog(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var that = (OperateLog) o;
+        return Objects.equals(nodeId, that.nodeId)
+                && Objects.equals(nodeName, that.nodeName)
+                && Objects.equals(nodeType, that.nodeType)
+                && statusBefore == that.statusBefore
+                && Objects.equals(operatorId, that.operatorId)
+                && Objects.equals(action, that.action)
+                && statusAfter == that.statusAfter
+                && Objects.equals(comment, that.comment)
+                && Objects.equals(operatorAt, that.operatorAt)
+                && logContextEquals(logContext, that.logContext);
+    }
+
+    @Override
+    public int hashCode() {
+        // logContext is left out, it is compared by its JSON representation
+        return Objects.hash(nodeId, nodeName, nodeType, statusBefore, operatorId, action, statusAfter, comment, operatorAt);
+    }
+
+    /**
+     * Compare the log contexts by their JSON representation, as they are stored,
+     * since the implementations of OperatorLogContext are not required to implement equals()
+     *
+     * @param logContext
+     * @param other
+     * @return
+     */
+    private static boolean logContextEquals(OperatorLogContext logContext, OperatorLogContext other) {
+        if (logContext == other) {
+            return true;
+        }
+        if (logContext == null || other == null || logContext.getClass() != other.getClass()) {
+            return false;
+        }
+        return JsonUtil.toJson(logContext).equals(JsonUtil.toJson(other));
+    }
+
     @JsonSetter
     public void setLogContext(Map<String, Object> map) throws ClassNotFoundException {
         if (MapUtils.isNotEmpty(map) && map.containsKey("clazz")) {
@@ -0,0 +1,48 @@
+package jp.co.onehr.workflow.dto;
+
+import jp.co.onehr.workflow.dto.base.BaseData;
+
+/**
+ * An operate log stored as its own document
+ * <p>
+ * Used when operate logs are externalized from the instance,
+ * see {@link jp.co.onehr.workflow.ProcessConfiguration#externalizeOperateLogs(int)}
+ */
+public class OperateLogEntry extends BaseData {
+
+    public static final String INSTANCE_ID = "instanceId";
+    public static final String SEQUENCE = "sequence";
+
+    /**
+     * ID of the instance the log belongs to
+     */
+    public String instanceId = "";
+
+    /**
+     * Position of the log in all logs of the instance, starting from 0
+     */
+    public long sequence;
+
+    public OperateLog operateLog;
+
+    public OperateLogEntry() {
+    }
+
+    public OperateLogEntry(String instanceId, long sequence, OperateLog operateLog) {
+        this.id = generateId(instanceId, sequence);
+        this.instanceId = instanceId;
+        this.sequence = sequence;
+        this.operateLog = operateLog;
+    }
+
+    /**
+     * The id is derived from the instance and the sequence, so storing a log again overwrites it
+     *
+     * @param instanceId
+     * @param sequence
+     * @return
+     */
+    public static String generateId(String instanceId, long sequence) {
+        return instanceId + "_" + sequence;
+    }
+}
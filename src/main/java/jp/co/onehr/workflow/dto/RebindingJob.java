@@ -0,0 +1,55 @@
+package jp.co.onehr.workflow.dto;
+
+import jp.co.onehr.workflow.constant.JobStatus;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.param.BulkRebindingParam;
+
+/**
+ * Progress of a bulk rebinding of the instances of a workflow
+ * <p>
+ * The job is checkpointed after each chunk of instances, so it can be resumed after the process stops.
+ * There is one job per workflow, its id is derived from the workflowId.
+ */
+public class RebindingJob extends BaseData {
+
+    public String workflowId = "";
+
+    /**
+     * ID of the definition the instances are rebound to
+     */
+    public String definitionId = "";
+
+    public String operatorId = "";
+
+    public BulkRebindingParam param;
+
+    public JobStatus status;
+
+    /**
+     * Continuation token, the id of the last instance processed. Instances are processed in the order of their id
+     */
+    public String lastInstanceId;
+
+    /**
+     * Reason of the last failure when the status is FAILED
+     */
+    public String error;
+
+    public BulkRebindingSummary summary = new BulkRebindingSummary();
+
+    public RebindingJob() {
+    }
+
+    public RebindingJob(String workflowId, String definitionId, String operatorId, BulkRebindingParam param) {
+        this.id = generateId(workflowId);
+        this.workflowId = workflowId;
+        this.definitionId = definitionId;
+        this.operatorId = operatorId;
+        this.param = param;
+        this.status = JobStatus.RUNNING;
+    }
+
+    public static String generateId(String workflowId) {
+        return "rebinding_" + workflowId;
+    }
+}
@@ -0,0 +1,51 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.co.onehr.workflow.dto.param.ResolveRequest;
+
+/**
+ * Results of resolving a batch of actions, modeled on {@link jp.co.onehr.workflow.dto.base.BulkResult}
+ *
+ * <p>The batch is non-transactional: each request succeeds or fails on its own.
+ * Check all three lists before deciding whether the batch completed successfully.</p>
+ */
+public class ResolveAllResult {
+
+    /**
+     * Results of the requests that were resolved and persisted
+     */
+    public List<ActionResult> successList = new ArrayList<>();
+
+    /**
+     * Requests that were not applied and can be submitted again,
+     * e.g. the instance was modified by another request, or it appears more than once in the batch.
+     * A request whose write failed without an error attributable to it is retried as well
+     */
+    public List<ResolveRequest> retryList = new ArrayList<>();
+
+    /**
+     * Requests that failed, e.g. the instance does not exist or the action is not allowed.
+     * Each failure is attributed to its request by the id of its instance
+     */
+    public List<Failure> fatalList = new ArrayList<>();
+
+    /**
+     * A failed request and its cause
+     */
+    public static class Failure {
+
+        public ResolveRequest request;
+
+        public Exception error;
+
+        public Failure() {
+        }
+
+        public Failure(ResolveRequest request, Exception error) {
+            this.request = request;
+            this.error = error;
+        }
+    }
+}
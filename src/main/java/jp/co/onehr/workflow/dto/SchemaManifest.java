@@ -0,0 +1,26 @@
+package jp.co.onehr.workflow.dto;
+
+import jp.co.onehr.workflow.dto.base.BaseData;
+
+/**
+ * The schema applied to a partition of a host
+ * <p>
+ * Recorded after the tables and indexes of the partition have been created,
+ * so the schema introspection can be skipped on restart while the schema is unchanged.
+ * There is one manifest per partition, its id is the partition name.
+ */
+public class SchemaManifest extends BaseData {
+
+    /**
+     * Hash of the table, index and TTL setup applied to the partition
+     */
+    public String hash = "";
+
+    public SchemaManifest() {
+    }
+
+    public SchemaManifest(String partition, String hash) {
+        this.id = partition;
+        this.hash = hash;
+    }
+}
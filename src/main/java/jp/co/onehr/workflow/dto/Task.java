@@ -0,0 +1,75 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.List;
+
+import jp.co.onehr.workflow.constant.Status;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
+import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
+import jp.co.onehr.workflow.dto.base.index.IndexField;
+import jp.co.onehr.workflow.dto.base.index.IndexFieldType;
+
+/**
+ * A pending task of an operator, one document per operator and instance
+ * <p>
+ * A projection of the current operators of the processing instances,
+ * see {@link jp.co.onehr.workflow.ProcessConfiguration#enableTaskProjection()}
+ */
+public class Task extends BaseData implements IndexCustomizable {
+
+    public static final String OPERATOR_ID = "operatorId";
+    public static final String INSTANCE_ID = "instanceId";
+
+    /**
+     * ID of the operator who can operate the instance
+     */
+    public String operatorId = "";
+
+    public String instanceId = "";
+
+    public String workflowId = "";
+
+    /**
+     * ID of the current node of the instance
+     */
+    public String nodeId = "";
+
+    public Status status;
+
+    /**
+     * When the operator became an operator of the current node
+     */
+    public String enteredAt = "";
+
+    public Task() {
+    }
+
+    public Task(String operatorId, Instance instance, String enteredAt) {
+        this.id = generateId(operatorId, instance.id);
+        this.operatorId = operatorId;
+        this.instanceId = instance.id;
+        this.workflowId = instance.workflowId;
+        this.nodeId = instance.nodeId;
+        this.status = instance.status;
+        this.enteredAt = enteredAt;
+    }
+
+    /**
+     * The id starts with the operatorId, so the tasks of an operator are paged in the order of their id
+     *
+     * @param operatorId
+     * @param instanceId
+     * @return
+     */
+    public static String generateId(String operatorId, String instanceId) {
+        return operatorId + "_" + instanceId;
+    }
+
+    @Override
+    public List<IndexDefinition> getCustomIndexDefinitions() {
+        return List.of(
+                IndexDefinition.of(IndexField.of(OPERATOR_ID, IndexFieldType.TEXT), false),
+                IndexDefinition.of(IndexField.of(INSTANCE_ID, IndexFieldType.TEXT), false)
+        );
+    }
+}
@@ -1,5 +1,7 @@
 package jp.co.onehr.workflow.dto;
 
+import java.util.Objects;
+
 import jp.co.onehr.workflow.dto.base.BaseData;
 
 /**
@@ -35,4 +37,24 @@ public class Workflow extends BaseData {
         this.setId(id);
         this.name = name;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var that = (Workflow) o;
+        return baseFieldsEquals(that)
+                && enableVersion == that.enableVersion
+                && Objects.equals(name, that.name)
+                && Objects.equals(currentVersion, that.currentVersion);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(baseFieldsHashCode(), name, currentVersion, enableVersion);
+    }
 }
@@ -1,17 +1,30 @@
 package jp.co.onehr.workflow.dto.base;
 
+import java.util.Objects;
+
 import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
 
 
 public class BaseData extends SimpleData implements Identifiable {
 
+    public static final String VERSION = "_version";
+
     public String id = "";
 
     public String createdAt = "";
 
     public String updatedAt = "";
 
+    /**
+     * Version of the document, incremented on every create/update/upsert and versioned patch
+     * <p>
+     * Used for optimistic concurrency control. Documents written before versioning was introduced have version 0.
+     */
+    @JsonProperty(VERSION)
+    public long dataVersion = 0;
+
     @Override
     @JsonGetter
     public String getId() {
@@ -23,4 +36,26 @@ public class BaseData extends SimpleData implements Identifiable {
     public void setId(String id) {
         this.id = id;
     }
+
+    /**
+     * Compare the common fields, used by the field-based equals() of subclasses
+     *
+     * @param other
+     * @return
+     */
+    protected boolean baseFieldsEquals(BaseData other) {
+        return dataVersion == other.dataVersion
+                && Objects.equals(id, other.id)
+                && Objects.equals(createdAt, other.createdAt)
+                && Objects.equals(updatedAt, other.updatedAt);
+    }
+
+    /**
+     * Hash of the common fields, used by the field-based hashCode() of subclasses
+     *
+     * @return
+     */
+    protected int baseFieldsHashCode() {
+        return Objects.hash(id, createdAt, updatedAt, dataVersion);
+    }
 }
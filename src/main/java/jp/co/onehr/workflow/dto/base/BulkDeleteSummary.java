@@ -0,0 +1,48 @@
+package jp.co.onehr.workflow.dto.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Progress of a bulk deletion, which moves documents to the recycle bin chunk by chunk
+ */
+public class BulkDeleteSummary {
+
+    /**
+     * Maximum number of failures recorded with their reason, so the summary stays small for any number of documents
+     */
+    public static final int MAX_RECORDED_FAILURES = 1_000;
+
+    /**
+     * Number of documents processed so far
+     */
+    public int total = 0;
+
+    /**
+     * Number of documents moved to the recycle bin, including documents deleted concurrently by another request
+     */
+    public int deletedCount = 0;
+
+    /**
+     * Number of documents that could not be moved to the recycle bin
+     */
+    public int failureCount = 0;
+
+    /**
+     * id -> reason, the first {@link #MAX_RECORDED_FAILURES} failures
+     */
+    public Map<String, String> failures = new LinkedHashMap<>();
+
+    /**
+     * Record a document that could not be moved to the recycle bin
+     *
+     * @param id
+     * @param reason
+     */
+    public void addFailure(String id, String reason) {
+        failureCount++;
+        if (failures.size() < MAX_RECORDED_FAILURES) {
+            failures.put(id, reason);
+        }
+    }
+}
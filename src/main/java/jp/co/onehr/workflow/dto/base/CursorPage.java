@@ -0,0 +1,36 @@
+package jp.co.onehr.workflow.dto.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a cursor-based read
+ * <p>
+ * Pass {@link #nextCursor} to the same read to get the following page.
+ *
+ * @param <T> the type of the items
+ */
+public class CursorPage<T> {
+
+    /**
+     * Items of the page
+     */
+    public List<T> items = new ArrayList<>();
+
+    /**
+     * Opaque cursor for the next page, null if there are no more items
+     */
+    public String nextCursor;
+
+    public CursorPage() {
+    }
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
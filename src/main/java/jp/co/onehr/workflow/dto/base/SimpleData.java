@@ -5,6 +5,9 @@ import io.github.thunderz99.cosmos.util.JsonUtil;
 /**
  * base class for the Data class
  * provide convenient methods such as toString(), equals(), and more by default
+ * <p>
+ * equals() and hashCode() compare the JSON representation,
+ * DTOs used in hash-based collections or compared frequently override them with field-based versions.
  */
 public abstract class SimpleData {
 
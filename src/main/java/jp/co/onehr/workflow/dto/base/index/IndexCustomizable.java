@@ -6,16 +6,16 @@ import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
- * Interface for customizing postgres indexes for a DTO.
+ * Interface for customizing postgres/mongodb indexes for a DTO.
  *
  * <p>
  * By implementing this interface, you can define custom indexes
  * for the DTO's table.<br>
- * Example: Creating an index on data->>'workflowId' for Instance.
+ * Example: Creating a GIN index on data->'expandOperatorIdSet' for Instance.
  * </p>
  *
  * <p>
- * Effective only for postgres.
+ * Effective for postgres. For mongodb, compound indexes are created as well (multikey for array fields).
  * Has no effect for other database types.
  * </p>
  */
@@ -24,13 +24,13 @@ public interface IndexCustomizable {
 
     /**
      * Returns a list of custom index definitions required by this DTO
-     * (effective only when using postgres).
+     * (effective when using postgres or mongodb).
      *
      * <p>
      * If nothing is defined, no custom indexes are created.
      * If definitions are provided, they are created during schema initialization in BaseNoSqlService.getColl(host).
      * If an index with the same name and method already exists, no action is taken.
-     * If the name matches but the method differs, schema initialization fails so that
+     * If the name matches but the method or the predicate of a partial index differs, schema initialization fails so that
      * the existing index can be migrated explicitly.
      * Fields specified as uniqueKey automatically generate a unique B-tree index,so no custom index needs to be defined here.
      * Example: Instance.workflowId requires no custom index.
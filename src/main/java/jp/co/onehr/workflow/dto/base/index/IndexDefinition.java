@@ -1,10 +1,20 @@
 package jp.co.onehr.workflow.dto.base.index;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+import io.github.thunderz99.cosmos.util.JsonUtil;
 import jp.co.onehr.workflow.util.CheckUtil;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 
 
 /**
@@ -27,6 +37,18 @@ public class IndexDefinition {
      */
     public final IndexMethod method;
 
+    /**
+     * Conditions of a partial index, field name to value, combined by AND.
+     * Only the documents matching all conditions are indexed. Empty for an index of all documents.
+     */
+    public final Map<String, Object> partialFilter;
+
+    /**
+     * Non-filtering fields stored in the index after the key fields, so list queries can read them from the index.
+     * Empty for an index of only the key fields. Supported on MongoDB only.
+     */
+    public final List<IndexField> includedFields;
+
     /**
      * Constructor of IndexDefinition.
      * Specifies the fields and whether the index is unique.
@@ -47,12 +69,42 @@ public class IndexDefinition {
      * @param method PostgreSQL index method.
      */
     public IndexDefinition(List<IndexField> fields, boolean unique, IndexMethod method) {
+        this(fields, unique, method, Map.of());
+    }
+
+    /**
+     * Creates a partial index definition, which indexes only the documents matching the conditions.
+     *
+     * @param fields        List of fields that compose the index.
+     * @param unique        Indicates whether the index is unique.
+     * @param method        PostgreSQL index method.
+     * @param partialFilter Conditions of the partial index, field name to value (String, Number, Boolean or Enum).
+     */
+    public IndexDefinition(List<IndexField> fields, boolean unique, IndexMethod method, Map<String, Object> partialFilter) {
+        this(fields, unique, method, partialFilter, List.of());
+    }
+
+    /**
+     * Creates a covering index definition, which stores the included fields after the key fields.
+     *
+     * @param fields         List of fields that compose the index.
+     * @param unique         Indicates whether the index is unique.
+     * @param method         PostgreSQL index method.
+     * @param partialFilter  Conditions of the partial index, field name to value (String, Number, Boolean or Enum).
+     * @param includedFields Fields stored in the index after the key fields.
+     */
+    public IndexDefinition(List<IndexField> fields, boolean unique, IndexMethod method, Map<String, Object> partialFilter, List<IndexField> includedFields) {
         CheckUtil.check(CollectionUtils.isNotEmpty(fields), "Index must have at least one field.");
         CheckUtil.check(Objects.nonNull(method), "Index method is required.");
+        CheckUtil.check(Objects.nonNull(partialFilter), "Partial filter is required. Use an empty map for an index of all documents.");
+        CheckUtil.check(Objects.nonNull(includedFields), "Included fields are required. Use an empty list for an index of only the key fields.");
         validateGinConstraints(fields, unique, method);
+        validateIncludedFields(unique, method, includedFields);
         this.unique = unique;
         this.fields = fields;
         this.method = method;
+        this.partialFilter = normalizePartialFilter(partialFilter);
+        this.includedFields = List.copyOf(includedFields);
     }
 
     /**
@@ -146,6 +198,108 @@ public class IndexDefinition {
         return new IndexDefinition(List.of(field), false, IndexMethod.GIN);
     }
 
+    /**
+     * Returns a partial index definition that indexes only the documents whose field equals the value,
+     * in addition to the existing conditions.
+     *
+     * <p>Queries use the partial index only when their filter contains the same condition,
+     * e.g. {@code IndexDefinition.ofGin(IndexField.of("expandOperatorIdSet", IndexFieldType.JSONB)).where("status", Status.PROCESSING)}
+     * for queries filtering the instances in progress.</p>
+     *
+     * @param fieldName Field or nested JSON path of the condition.
+     * @param value     String, Number, Boolean or Enum. An Enum is compared by its name.
+     * @return A new IndexDefinition instance.
+     */
+    public IndexDefinition where(String fieldName, Object value) {
+        var filter = new LinkedHashMap<>(partialFilter);
+        filter.put(fieldName, value);
+        return new IndexDefinition(fields, unique, method, filter, includedFields);
+    }
+
+    /**
+     * Returns a covering index definition that stores the fields after the key fields,
+     * in addition to the existing included fields.
+     *
+     * <p>Use it for list queries that filter by the key fields and read only a few other fields,
+     * e.g. {@code IndexDefinition.of(List.of(IndexField.of("workflowId"), IndexField.of("status")), false).include(IndexField.of("nodeId"))}.
+     * On MongoDB the included fields are trailing keys of the compound index, so queries projecting only these fields are covered by the index.
+     * They are not supported for unique and GIN indexes.</p>
+     *
+     * <p>Postgres ignores them with a warning and indexes only the key fields: the documents are stored in a JSONB column and read as a whole,
+     * so no index can cover a query, and INCLUDE only accepts table columns.</p>
+     *
+     * @param fields Fields stored in the index.
+     * @return A new IndexDefinition instance.
+     */
+    public IndexDefinition include(IndexField... fields) {
+        var included = new ArrayList<>(includedFields);
+        included.addAll(List.of(fields));
+        return new IndexDefinition(this.fields, unique, method, partialFilter, included);
+    }
+
+    /**
+     * Whether the index stores fields after the key fields
+     *
+     * @return
+     */
+    public boolean hasIncludedFields() {
+        return !includedFields.isEmpty();
+    }
+
+    /**
+     * Whether only the documents matching the partial filter are indexed
+     *
+     * @return
+     */
+    public boolean isPartial() {
+        return !partialFilter.isEmpty();
+    }
+
+    /**
+     * The part of the index name for the conditions of a partial index, empty for an index of all documents.
+     * e.g. _where_status_3f1c9a2b
+     *
+     * <p>It ends with a short hash of the conditions including their values,
+     * so partial indexes of the same fields with different values have different names.</p>
+     *
+     * @return
+     */
+    public String getPartialFilterSuffix() {
+        if (!isPartial()) {
+            return "";
+        }
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(JsonUtil.toJson(partialFilter).getBytes(StandardCharsets.UTF_8));
+            return "_where_" + String.join("_", partialFilter.keySet()) + "_" + HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, Object> normalizePartialFilter(Map<String, Object> partialFilter) {
+        var ret = new LinkedHashMap<String, Object>();
+        for (var entry : partialFilter.entrySet()) {
+            CheckUtil.check(StringUtils.isNotBlank(entry.getKey()), "Partial filter field name is required.");
+
+            var value = entry.getValue() instanceof Enum<?> e ? e.name() : entry.getValue();
+            CheckUtil.check(value instanceof String || value instanceof Number || value instanceof Boolean,
+                    "Partial filter value should be String, Number, Boolean or Enum: " + entry.getKey());
+            ret.put(entry.getKey(), value);
+        }
+        return Collections.unmodifiableMap(ret);
+    }
+
+    private static void validateIncludedFields(boolean unique, IndexMethod method, List<IndexField> includedFields) {
+        if (includedFields.isEmpty()) {
+            return;
+        }
+
+        // the included fields are trailing keys, which would change the uniqueness
+        CheckUtil.check(!unique, "Included fields are not supported for unique indexes");
+        CheckUtil.check(method == IndexMethod.BTREE, "Included fields are only supported for BTREE indexes");
+        CheckUtil.check(includedFields.stream().allMatch(Objects::nonNull), "Included field is required.");
+    }
+
     private static void validateGinConstraints(List<IndexField> fields, boolean unique, IndexMethod method) {
         if (method != IndexMethod.GIN) {
             return;
@@ -3,9 +3,11 @@ package jp.co.onehr.workflow.dto.node;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import com.azure.cosmos.implementation.guava25.collect.Sets;
+import com.google.common.collect.Iterables;
 import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.constant.ApprovalType;
 import jp.co.onehr.workflow.constant.WorkflowErrors;
@@ -76,6 +78,30 @@ public class MultipleNode extends ManualNode {
         return approvalType;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        var that = (MultipleNode) o;
+        // the order of the operators is significant, as it is in the JSON representation
+        return approvalType == that.approvalType
+                && elementsEqual(operatorIdSet, that.operatorIdSet)
+                && elementsEqual(operatorOrgIdSet, that.operatorOrgIdSet);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hash(operatorIdSet, operatorOrgIdSet, approvalType);
+    }
+
+    private static boolean elementsEqual(Set<String> a, Set<String> b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return Iterables.elementsEqual(a, b);
+    }
+
     @Override
     public void resetCurrentOperators(Instance instance, InstanceContext instanceContext) {
         clearOperators(instance);
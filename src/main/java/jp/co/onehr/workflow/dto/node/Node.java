@@ -60,6 +60,30 @@ public abstract class Node extends SimpleData {
         return type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var that = (Node) o;
+        return enableNotification == that.enableNotification
+                && Objects.equals(nodeId, that.nodeId)
+                && Objects.equals(nodeName, that.nodeName)
+                && Objects.equals(localNames, that.localNames)
+                && Objects.equals(type, that.type)
+                && Objects.equals(plugins, that.plugins)
+                && Objects.equals(configuration, that.configuration)
+                && Objects.equals(notificationModes, that.notificationModes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodeId, nodeName, localNames, type, plugins, configuration, enableNotification, notificationModes);
+    }
+
     /**
      * Special handling when the node is the first node of the workflow definition
      *
@@ -2,6 +2,7 @@ package jp.co.onehr.workflow.dto.node;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import com.google.common.collect.Sets;
@@ -33,6 +34,16 @@ public class SingleNode extends ManualNode {
         this.nodeName = nodeName;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o) && Objects.equals(operatorId, ((SingleNode) o).operatorId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hashCode(operatorId);
+    }
+
     @Override
     public void resetCurrentOperators(Instance instance, InstanceContext instanceContext) {
         clearOperators(instance);
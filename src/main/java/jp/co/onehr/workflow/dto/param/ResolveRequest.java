@@ -0,0 +1,39 @@
+package jp.co.onehr.workflow.dto.param;
+
+import jp.co.onehr.workflow.constant.Action;
+
+/**
+ * One action to resolve in a batch, see {@link jp.co.onehr.workflow.ProcessEngine#resolveAll}
+ */
+public class ResolveRequest {
+
+    public String instanceId = "";
+
+    public Action action;
+
+    public String operatorId = "";
+
+    /**
+     * not required
+     */
+    public ActionExtendParam extendParam;
+
+    /**
+     * not required
+     */
+    public ApplicantActionContext applicantActionContext;
+
+    public ResolveRequest() {
+    }
+
+    public ResolveRequest(String instanceId, Action action, String operatorId) {
+        this.instanceId = instanceId;
+        this.action = action;
+        this.operatorId = operatorId;
+    }
+
+    public ResolveRequest(String instanceId, Action action, String operatorId, ActionExtendParam extendParam) {
+        this(instanceId, action, operatorId);
+        this.extendParam = extendParam;
+    }
+}
@@ -1,9 +1,17 @@
 package jp.co.onehr.workflow.service;
 
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import io.github.thunderz99.cosmos.condition.Condition;
 import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.constant.ApplicationMode;
@@ -11,6 +19,8 @@ import jp.co.onehr.workflow.constant.NodeType;
 import jp.co.onehr.workflow.constant.WorkflowErrors;
 import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Workflow;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.base.DeletedObject;
 import jp.co.onehr.workflow.dto.node.EndNode;
 import jp.co.onehr.workflow.dto.node.StartNode;
@@ -30,6 +40,17 @@ public class DefinitionService extends BaseCRUDService<Definition> {
 
     public static final DefinitionService singleton = new DefinitionService();
 
+    /**
+     * host -> (definitionId -> definition)
+     * <p>
+     * Definitions are read on every action of an instance, so they are cached in memory per host.
+     * A versioned definition is never modified after it is created, an in-place upsert invalidates the cached entry.
+     * The entries of other processes expire after {@link ProcessConfiguration#getDefinitionCacheExpireAfterWrite()},
+     * until then they serve the definition as it was before the in-place upsert.
+     * The cached definitions are shared, the hooks of {@link ProcessConfiguration} and the plugins receive copies.
+     */
+    private final Map<String, Cache<String, Definition>> definitionCacheMap = new ConcurrentHashMap<>();
+
     private DefinitionService() {
         super(Definition.class);
     }
@@ -94,6 +115,11 @@ public class DefinitionService extends BaseCRUDService<Definition> {
 
         var result = this.upsert(host, definition);
 
+        // the definition was overwritten in place, so the cached one is stale
+        if (!workflow.enableVersion) {
+            invalidateCache(host, result.getId());
+        }
+
         // updating the definition would require updating the current version number of the workflow.
         if (workflow.enableVersion) {
             workflow.currentVersion = result.version;
@@ -105,19 +131,46 @@ public class DefinitionService extends BaseCRUDService<Definition> {
 
     @Override
     protected DeletedObject delete(String host, String id) throws Exception {
+        invalidateCache(host, id);
         return super.delete(host, id);
     }
 
     @Override
     protected DeletedObject purge(String host, String id) throws Exception {
+        invalidateCache(host, id);
         return super.purge(host, id);
     }
 
+    @Override
+    protected void bulkDelete(String host, Condition cond, BulkDeleteSummary summary, Consumer<BulkDeleteSummary> progressListener) throws Exception {
+        super.bulkDelete(host, cond, summary, progressListener);
+    }
+
+    @Override
+    protected void afterBulkDelete(String host, List<String> ids) throws Exception {
+        ids.forEach(id -> invalidateCache(host, id));
+    }
+
     @Override
     protected List<Definition> find(String host, Condition cond) throws Exception {
         return super.find(host, cond);
     }
 
+    @Override
+    protected CursorPage<Definition> findPage(String host, Condition cond, String cursor, int limit) throws Exception {
+        return super.findPage(host, cond, cursor, limit);
+    }
+
+    @Override
+    protected Iterator<Definition> iterate(String host, Condition cond, int pageSize) {
+        return super.iterate(host, cond, pageSize);
+    }
+
+    @Override
+    protected Stream<Definition> stream(String host, Condition cond, int pageSize) {
+        return super.stream(host, cond, pageSize);
+    }
+
     /**
      * Make sure Definition is existed
      *
@@ -127,13 +180,75 @@ public class DefinitionService extends BaseCRUDService<Definition> {
      * @throws Exception
      */
     protected Definition getDefinition(String host, String definitionId) throws Exception {
-        var definition = super.readSuppressing404(host, definitionId);
+        var cache = getCache(host);
+        var definition = cache != null && definitionId != null ? cache.getIfPresent(definitionId) : null;
+        if (definition != null) {
+            return definition;
+        }
+
+        definition = super.readSuppressing404(host, definitionId);
         if (ObjectUtils.isEmpty(definition)) {
             throw new WorkflowException(WorkflowErrors.DEFINITION_NOT_EXIST, "The definition does not exist in the database", definitionId);
         }
+
+        if (cache != null) {
+            cache.put(definitionId, definition);
+        }
         return definition;
     }
 
+    /**
+     * Get the hit/miss statistics of the definition cache for the host
+     *
+     * @param host
+     * @return empty statistics if the cache is disabled or not used yet
+     */
+    protected CacheStats getCacheStats(String host) {
+        var cache = definitionCacheMap.get(host);
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Remove the definition from the cache of the host
+     *
+     * @param host
+     * @param definitionId
+     */
+    protected void invalidateCache(String host, String definitionId) {
+        var cache = definitionCacheMap.get(host);
+        if (cache != null && definitionId != null) {
+            cache.invalidate(definitionId);
+        }
+    }
+
+    /**
+     * Clear the definition caches of all hosts
+     * <p>
+     * The caches will be rebuilt with the current configuration
+     */
+    public void clearCache() {
+        definitionCacheMap.clear();
+    }
+
+    /**
+     * Get the definition cache of the host, create it if not exist
+     *
+     * @param host
+     * @return null if the cache is disabled
+     */
+    private Cache<String, Definition> getCache(String host) {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var maximumSize = configuration.getDefinitionCacheMaximumSize();
+        if (maximumSize <= 0) {
+            return null;
+        }
+        return definitionCacheMap.computeIfAbsent(host, k -> CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(configuration.getDefinitionCacheExpireAfterWrite())
+                .recordStats()
+                .build());
+    }
+
     /**
      * Retrieve the corresponding workflow definition based on the workflow ID and version number
      *
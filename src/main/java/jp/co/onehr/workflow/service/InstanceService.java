@@ -1,25 +1,50 @@
 package jp.co.onehr.workflow.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import io.github.thunderz99.cosmos.condition.Aggregate;
 import io.github.thunderz99.cosmos.condition.Condition;
 import io.github.thunderz99.cosmos.condition.SubConditionType;
+import io.github.thunderz99.cosmos.util.JsonUtil;
+import io.github.thunderz99.cosmos.v4.PatchOperations;
 import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.constant.*;
 import jp.co.onehr.workflow.contract.context.InstanceContext;
 import jp.co.onehr.workflow.contract.context.OperatorLogContext;
 import jp.co.onehr.workflow.contract.notification.Notification;
+import jp.co.onehr.workflow.dao.write.VersionedPatch;
 import jp.co.onehr.workflow.dto.ActionResult;
+import jp.co.onehr.workflow.dto.BulkRebindingSummary;
 import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
+import jp.co.onehr.workflow.dto.InstanceCount;
+import jp.co.onehr.workflow.dto.InstanceSummary;
 import jp.co.onehr.workflow.dto.OperateLog;
+import jp.co.onehr.workflow.dto.OperateLogEntry;
+import jp.co.onehr.workflow.dto.RebindingJob;
+import jp.co.onehr.workflow.dto.Task;
+import jp.co.onehr.workflow.dto.ResolveAllResult;
 import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.base.DeletedObject;
 import jp.co.onehr.workflow.dto.node.Node;
 import jp.co.onehr.workflow.dto.param.*;
@@ -41,10 +66,20 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
     public static final String WORKFLOW_ID = "workflowId";
     public static final String DEFINITION_ID = "definitionId";
     public static final String STATUS = "status";
+    public static final String EXPAND_OPERATOR_ID_SET = "expandOperatorIdSet";
+
+    // Alias of the count in the result of countInstances
+    static final String COUNT_ALIAS = "itemCount";
 
     // Enable recursive action for nodes.
     public static final Set<Action> recursiveAction = Set.of(Action.NEXT, Action.BACK, Action.REAPPLY);
 
+    // Maximum attempts of resolve when the instance is modified concurrently by another request
+    public static final int RESOLVE_MAX_ATTEMPTS = 3;
+
+    // Maximum attempts to write an instance of a bulk rebinding
+    public static final int BULK_REBINDING_MAX_ATTEMPTS = 3;
+
     private InstanceService() {
         super(Instance.class);
     }
@@ -61,19 +96,52 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
 
     @Override
     protected DeletedObject delete(String host, String id) throws Exception {
-        return super.delete(host, id);
+        var result = super.delete(host, id);
+        TaskService.singleton.purgeByInstance(host, id);
+        return result;
     }
 
     @Override
     protected DeletedObject purge(String host, String id) throws Exception {
+        OperateLogEntryService.singleton.purgeByInstance(host, id);
+        TaskService.singleton.purgeByInstance(host, id);
         return super.purge(host, id);
     }
 
+    @Override
+    protected void bulkDelete(String host, Condition cond, BulkDeleteSummary summary, Consumer<BulkDeleteSummary> progressListener) throws Exception {
+        super.bulkDelete(host, cond, summary, progressListener);
+    }
+
+    /**
+     * Same as deleting one instance, the operate logs and tasks of the instances are purged
+     */
+    @Override
+    protected void afterBulkDelete(String host, List<String> ids) throws Exception {
+        OperateLogEntryService.singleton.purgeByInstances(host, ids);
+        TaskService.singleton.purgeByInstances(host, ids);
+    }
+
     @Override
     protected List<Instance> find(String host, Condition cond) throws Exception {
         return super.find(host, cond);
     }
 
+    @Override
+    protected CursorPage<Instance> findPage(String host, Condition cond, String cursor, int limit) throws Exception {
+        return super.findPage(host, cond, cursor, limit);
+    }
+
+    @Override
+    protected Iterator<Instance> iterate(String host, Condition cond, int pageSize) {
+        return super.iterate(host, cond, pageSize);
+    }
+
+    @Override
+    protected Stream<Instance> stream(String host, Condition cond, int pageSize) {
+        return super.stream(host, cond, pageSize);
+    }
+
     /**
      * Make sure Instance is existed
      *
@@ -129,7 +197,9 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
 
         instance.operateLogList.add(operateLog);
 
+        OperateLogEntryService.singleton.record(host, instance.id, externalizeOperateLogs(null, instance));
         var result = super.create(host, instance);
+        recordChanges(host, null, result);
 
         Notification notification = null;
         if (ObjectUtils.isNotEmpty(param)) {
@@ -156,6 +226,36 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
      */
     protected ActionResult resolve(String host, String instanceId, Action action, String operatorId, ActionExtendParam extendParam, ApplicantActionContext applicantActionContext) throws Exception {
 
+        // actions consume some fields of extendParam, keep them to retry with the original param
+        var extendParamState = ExtendParamState.capture(extendParam);
+
+        for (var attempt = 1; ; attempt++) {
+            try {
+                return resolveOnce(host, instanceId, action, operatorId, extendParam, applicantActionContext);
+            } catch (WorkflowException e) {
+                // the instance was modified by another request, re-read it and apply the action again
+                if (e.getError() != DatabaseErrors.VERSION_CONFLICT || attempt >= RESOLVE_MAX_ATTEMPTS) {
+                    throw e;
+                }
+                extendParamState.restore(extendParam);
+            }
+        }
+    }
+
+    /**
+     * Read the instance, apply the action and persist the changes conditionally on the version read
+     *
+     * @param host
+     * @param instanceId
+     * @param action
+     * @param operatorId
+     * @param extendParam
+     * @param applicantActionContext
+     * @return
+     * @throws Exception
+     */
+    private ActionResult resolveOnce(String host, String instanceId, Action action, String operatorId, ActionExtendParam extendParam, ApplicantActionContext applicantActionContext) throws Exception {
+
         var existInstance = getInstance(host, instanceId);
 
         var definition = DefinitionService.singleton.getDefinition(host, existInstance.definitionId);
@@ -164,6 +264,36 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
 
         var existNode = NodeService.getNodeByInstance(definition, existInstance);
 
+        var result = applyAction(definition, existInstance, action, operatorId, extendParam, applicantActionContext);
+
+        var updatedInstance = result.instance;
+
+        // Delete the instance if withdraw
+        if (result.withdraw) {
+            delete(host, updatedInstance.id);
+        } else {
+            result.instance = persistChanges(host, existInstance, updatedInstance);
+        }
+
+        handleSendNotification(configuration, result.instance, existNode, action, getNotification(extendParam));
+
+        return result;
+    }
+
+    /**
+     * Apply the action to a copy of the instance in memory
+     *
+     * @param definition
+     * @param existInstance the instance as read from the database, not modified
+     * @param action
+     * @param operatorId
+     * @param extendParam
+     * @param applicantActionContext
+     * @return the result with the modified copy of the instance
+     * @throws Exception
+     */
+    private ActionResult applyAction(Definition definition, Instance existInstance, Action action, String operatorId, ActionExtendParam extendParam, ApplicantActionContext applicantActionContext) throws Exception {
+
         Instance instance = existInstance.copy();
 
         checkAllowingAction(operatorId, extendParam, definition, instance, action, applicantActionContext);
@@ -174,29 +304,191 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
 
         var updatedInstance = result.instance;
 
-        // Delete the instance if withdraw
-        if (result.withdraw) {
-            delete(host, updatedInstance.id);
-        } else {
-
-            // If the instance reaches the last node, the status is changed to Approved.
-            if (NodeService.isLastNode(definition, updatedInstance.nodeId)) {
-                updatedInstance.status = Status.APPROVED;
-                var operateLogList = updatedInstance.operateLogList;
-                operateLogList.get(operateLogList.size() - 1).statusAfter = Status.APPROVED;
-            }
-            result.instance = super.update(host, updatedInstance);
+        // If the instance reaches the last node, the status is changed to Approved.
+        if (!result.withdraw && NodeService.isLastNode(definition, updatedInstance.nodeId)) {
+            updatedInstance.status = Status.APPROVED;
+            var operateLogList = updatedInstance.operateLogList;
+            operateLogList.get(operateLogList.size() - 1).statusAfter = Status.APPROVED;
         }
+        return result;
+    }
 
+    private static Notification getNotification(ActionExtendParam extendParam) {
         Notification notification = null;
         if (ObjectUtils.isNotEmpty(extendParam)) {
             notification = extendParam.notification;
         }
-        handleSendNotification(configuration, updatedInstance, existNode, action, notification);
+        return notification;
+    }
+
+    /**
+     * Advance a batch of instances
+     * <p>
+     * The instances are read in one query, each distinct definition is loaded once,
+     * the actions are applied in memory and the changes are written with one bulk patch.
+     * Withdrawn instances are moved to the recycle bin with bulk operations, changes too large for a patch are written one by one.
+     * Each request succeeds or fails on its own, see {@link ResolveAllResult}.
+     *
+     * @param host
+     * @param requests
+     * @return
+     * @throws Exception if the batch cannot be read or submitted to the database
+     */
+    protected ResolveAllResult resolveAll(String host, List<ResolveRequest> requests) throws Exception {
+        var result = new ResolveAllResult();
+        if (CollectionUtils.isEmpty(requests)) {
+            return result;
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            if (requests.get(i) == null) {
+                throw new IllegalArgumentException("ResolveRequest[" + i + "] should not be null");
+            }
+        }
+
+        var configuration = ProcessConfiguration.getConfiguration();
+
+        var instanceIds = requests.stream().map(request -> request.instanceId).distinct().collect(Collectors.toList());
+        var existInstanceMap = super.find(host, Condition.filter("id", instanceIds).limit(instanceIds.size()))
+                .stream().collect(Collectors.toMap(BaseData::getId, instance -> instance, (a, b) -> a));
+        var definitionMap = new HashMap<String, Definition>();
+
+        // instanceId -> request waiting for the bulk patch
+        var pendingMap = new LinkedHashMap<String, PendingResolve>();
+        // instanceId -> request waiting for the bulk deletion
+        var withdrawalMap = new LinkedHashMap<String, PendingResolve>();
+        var resolvedIds = new HashSet<String>();
+
+        for (var request : requests) {
+            // the same instance can only be changed once per batch, the later requests are applied on the next submission
+            if (!resolvedIds.add(request.instanceId)) {
+                result.retryList.add(request);
+                continue;
+            }
+
+            var existInstance = existInstanceMap.get(request.instanceId);
+            if (existInstance == null) {
+                result.fatalList.add(new ResolveAllResult.Failure(request,
+                        new WorkflowException(WorkflowErrors.INSTANCE_NOT_EXIST, "The instance does not exist in the database", request.instanceId)));
+                continue;
+            }
+
+            // requests may share one extendParam, which is consumed by the action
+            var extendParamState = ExtendParamState.capture(request.extendParam);
+            try {
+                var definition = definitionMap.get(existInstance.definitionId);
+                if (definition == null) {
+                    definition = DefinitionService.singleton.getDefinition(host, existInstance.definitionId);
+                    definitionMap.put(existInstance.definitionId, definition);
+                }
+                var existNode = NodeService.getNodeByInstance(definition, existInstance);
+                var actionResult = applyAction(definition, existInstance, request.action, request.operatorId, request.extendParam, request.applicantActionContext);
+                var updatedInstance = actionResult.instance;
+
+                if (actionResult.withdraw) {
+                    withdrawalMap.put(request.instanceId, new PendingResolve(request, existInstance, existNode, actionResult, null, null));
+                    continue;
+                }
+
+                var operateLogs = externalizeOperateLogs(existInstance, updatedInstance);
+                var operations = generatePatchOperations(existInstance, updatedInstance);
+                if (operations == null) {
+                    OperateLogEntryService.singleton.record(host, request.instanceId, operateLogs);
+                    actionResult.instance = super.update(host, updatedInstance);
+                    recordChanges(host, existInstance, actionResult.instance);
+                    handleSendNotification(configuration, actionResult.instance, existNode, request.action, getNotification(request.extendParam));
+                    result.successList.add(actionResult);
+                    continue;
+                }
+                pendingMap.put(request.instanceId, new PendingResolve(request, existInstance, existNode, actionResult, operations, operateLogs));
+            } catch (WorkflowException e) {
+                if (e.getError() == DatabaseErrors.VERSION_CONFLICT) {
+                    result.retryList.add(request);
+                } else {
+                    result.fatalList.add(new ResolveAllResult.Failure(request, e));
+                }
+            } catch (Exception e) {
+                result.fatalList.add(new ResolveAllResult.Failure(request, e));
+            } finally {
+                extendParamState.restore(request.extendParam);
+            }
+        }
+
+        if (!withdrawalMap.isEmpty()) {
+            var failures = bulkDelete(host, new ArrayList<>(withdrawalMap.keySet()));
+            for (var pending : withdrawalMap.values()) {
+                if (!failures.containsKey(pending.existInstance.id)) {
+                    handleSendNotification(configuration, pending.actionResult.instance, pending.existNode, pending.request.action, getNotification(pending.request.extendParam));
+                    result.successList.add(pending.actionResult);
+                } else {
+                    // the instance is left in place, the errors of a bulk request cannot be attributed to it
+                    result.retryList.add(pending.request);
+                }
+            }
+        }
+
+        if (pendingMap.isEmpty()) {
+            return result;
+        }
 
+        // the operate logs are stored before the instances are trimmed
+        var logEntries = new ArrayList<OperateLogEntry>();
+        // each patch is applied only if the instance is still at the version it was read
+        var patches = new ArrayList<VersionedPatch>(pendingMap.size());
+        for (var pending : pendingMap.values()) {
+            pending.operateLogs.forEach((sequence, operateLog) -> logEntries.add(new OperateLogEntry(pending.existInstance.id, sequence, operateLog)));
+            patches.add(VersionedPatch.of(pending.existInstance.id, pending.operations, pending.existInstance.dataVersion));
+        }
+        OperateLogEntryService.singleton.recordAll(host, logEntries);
+        var bulkResult = super.bulkPatchIfVersion(host, patches);
+
+        for (var pending : pendingMap.values()) {
+            var id = pending.existInstance.id;
+            var document = bulkResult.successMap.get(id);
+            var error = bulkResult.errorMap.get(id);
+            if (document != null) {
+                // the stored instance carries the version written by the patch
+                pending.actionResult.instance = toObject(document);
+                recordChanges(host, pending.existInstance, pending.actionResult.instance);
+                handleSendNotification(configuration, pending.actionResult.instance, pending.existNode, pending.request.action, getNotification(pending.request.extendParam));
+                result.successList.add(pending.actionResult);
+            } else if (error != null) {
+                result.fatalList.add(new ResolveAllResult.Failure(pending.request, error));
+            } else {
+                // modified concurrently, throttled, or not executed
+                result.retryList.add(pending.request);
+            }
+        }
         return result;
     }
 
+    /**
+     * A request of resolveAll applied in memory and waiting for the bulk patch, or for the bulk deletion if withdrawn
+     */
+    private record PendingResolve(ResolveRequest request, Instance existInstance, Node existNode, ActionResult actionResult,
+                                  PatchOperations operations, Map<Long, OperateLog> operateLogs) {
+    }
+
+    /**
+     * The fields of ActionExtendParam that are consumed by the actions
+     */
+    private record ExtendParamState(String comment, OperatorLogContext logContext, String backNodeId) {
+
+        static ExtendParamState capture(ActionExtendParam extendParam) {
+            if (extendParam == null) {
+                return new ExtendParamState(null, null, null);
+            }
+            return new ExtendParamState(extendParam.comment, extendParam.logContext, extendParam.backNodeId);
+        }
+
+        void restore(ActionExtendParam extendParam) {
+            if (extendParam != null) {
+                extendParam.comment = comment;
+                extendParam.logContext = logContext;
+                extendParam.backNodeId = backNodeId;
+            }
+        }
+    }
+
     private void checkAllowingAction(String operatorId, ActionExtendParam extendParam, Definition definition, Instance instance, Action action, ApplicantActionContext applicantActionContext) {
         OperationMode targetOperationMode = null;
         // operator as not admin
@@ -232,14 +524,15 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
     protected ActionResult recursiveInstance(Definition definition, Status currentStatus, ActionResult actionResult, Action action,
                                              String operatorId, ActionExtendParam extendParam, int count) {
         var instance = actionResult.instance;
+        var compiled = definition.getCompiledDefinition();
 
         // When the instance reaches the last node, the workflow ends, and the result is returned.
-        if (NodeService.isLastNode(definition, instance.nodeId)) {
+        if (compiled.isLastNode(instance.nodeId)) {
             return actionResult;
         }
 
         // When the instance reaches the first node, the workflow ends, and the result is returned.
-        if (NodeService.isFirstNode(definition, instance.nodeId)) {
+        if (compiled.isFirstNode(instance.nodeId)) {
             return actionResult;
         }
 
@@ -296,6 +589,8 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
     /**
      * Bulk Rebinding of Instances to Definitions
      * Warning: Reversion will reset the instance to the first node
+     * <p>
+     * Runs a bulk rebinding job to the end, see {@link #startBulkRebindingJob}
      *
      * @param host
      * @param workflowId
@@ -304,7 +599,29 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
      * @return
      * @throws Exception
      */
-    protected List<Instance> bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
+    protected BulkRebindingSummary bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
+        return startBulkRebindingJob(host, workflowId, operatorId, bulkRebindingParam).summary;
+    }
+
+    /**
+     * Start a bulk rebinding job and run it to the end
+     * Warning: Reversion will reset the instance to the first node
+     * <p>
+     * The instances are read in chunks ordered by id, the instances of a chunk are rebound concurrently
+     * and written with one bulk patch. Items the database asks to retry, and instances modified concurrently,
+     * are submitted again up to {@link #BULK_REBINDING_MAX_ATTEMPTS} times.
+     * See {@link ProcessConfiguration#configureBulkRebinding(int, int)}
+     * <p>
+     * The progress is checkpointed after each chunk. If the process stops, continue with {@link #resumeBulkRebindingJob}.
+     *
+     * @param host
+     * @param workflowId
+     * @param operatorId
+     * @param bulkRebindingParam
+     * @return the completed job
+     * @throws Exception
+     */
+    protected RebindingJob startBulkRebindingJob(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
         var workflow = WorkflowService.singleton.getWorkflow(host, workflowId);
 
         var version = workflow.currentVersion;
@@ -315,22 +632,87 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
             version = bulkRebindingParam.definitionVersion;
         }
 
-        var configuration = ProcessConfiguration.getConfiguration();
-
-        var definitions = DefinitionService.singleton.find(host, Condition.filter(WORKFLOW_ID, workflowId).limit(DATA_LIMIT));
-
-        var definitionMap = definitions.stream().collect(Collectors.toMap(BaseData::getId, i -> i));
+        var existJob = RebindingJobService.singleton.getJob(host, workflowId);
+        if (existJob != null && RebindingJobService.singleton.isAlive(existJob)) {
+            throw new WorkflowException(WorkflowErrors.REBINDING_JOB_RUNNING, "A bulk rebinding job of the workflow is already running", workflowId);
+        }
 
         // target definition
         var definition = DefinitionService.singleton.getCurrentDefinition(host, workflow.getId(), version);
 
+        var job = new RebindingJob(workflowId, definition.id, operatorId, bulkRebindingParam);
+        job = RebindingJobService.singleton.start(host, job, existJob);
+
+        return runBulkRebindingJob(host, job, definition);
+    }
+
+    /**
+     * Continue a bulk rebinding job from its last checkpoint
+     * <p>
+     * A running job can only be resumed once its lease expired, see {@link ProcessConfiguration#configureBulkRebindingLease}.
+     *
+     * @param host
+     * @param workflowId
+     * @return the completed job
+     * @throws Exception
+     */
+    protected RebindingJob resumeBulkRebindingJob(String host, String workflowId) throws Exception {
+        var job = getBulkRebindingJob(host, workflowId);
+        if (job.status == JobStatus.COMPLETED) {
+            return job;
+        }
+        if (RebindingJobService.singleton.isAlive(job)) {
+            throw new WorkflowException(WorkflowErrors.REBINDING_JOB_RUNNING, "The bulk rebinding job is running in another process", workflowId);
+        }
+
+        var definition = DefinitionService.singleton.getDefinition(host, job.definitionId);
+
+        job.status = JobStatus.RUNNING;
+        job.error = null;
+        job = RebindingJobService.singleton.checkpoint(host, job);
+
+        return runBulkRebindingJob(host, job, definition);
+    }
+
+    /**
+     * Get the progress of the bulk rebinding job of the workflow
+     *
+     * @param host
+     * @param workflowId
+     * @return
+     * @throws Exception
+     */
+    protected RebindingJob getBulkRebindingJob(String host, String workflowId) throws Exception {
+        var job = RebindingJobService.singleton.getJob(host, workflowId);
+        if (job == null) {
+            throw new WorkflowException(WorkflowErrors.REBINDING_JOB_NOT_EXIST, "The bulk rebinding job does not exist in the database", workflowId);
+        }
+        return job;
+    }
+
+    /**
+     * Rebind the instances after the continuation token of the job, one chunk at a time
+     * <p>
+     * Only one chunk of instances is held in memory, regardless of the number of instances.
+     * Instances of a chunk that was written but not checkpointed are processed again when the job is resumed.
+     *
+     * @param host
+     * @param job
+     * @param definition the target definition
+     * @return
+     * @throws Exception
+     */
+    private RebindingJob runBulkRebindingJob(String host, RebindingJob job, Definition definition) throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var bulkRebindingParam = job.param;
+
         var statuses = new HashSet<String>();
         if (ObjectUtils.isNotEmpty(bulkRebindingParam)) {
             statuses.addAll(bulkRebindingParam.statuses.stream().map(Enum::name).collect(Collectors.toSet()));
         }
 
         List<Condition> subConditions = Lists.newArrayList();
-        subConditions.add(Condition.filter(WORKFLOW_ID, workflowId));
+        subConditions.add(Condition.filter(WORKFLOW_ID, job.workflowId));
 
         var includeTargetDefinition = ObjectUtils.isNotEmpty(bulkRebindingParam) ? bulkRebindingParam.includeTargetDefinition : false;
         if (!includeTargetDefinition) {
@@ -341,30 +723,208 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
             subConditions.add(Condition.filter(STATUS, statuses));
         }
 
-        var condition = Condition.filter(SubConditionType.AND + " bulkInstance", subConditions);
+        var chunkSize = configuration.getBulkRebindingChunkSize();
+        var executor = configuration.getBulkExecutor();
+        try {
+            while (true) {
+                // keyset paging on id, rebound instances are not read again even if they still match
+                var conditions = new ArrayList<>(subConditions);
+                if (job.lastInstanceId != null) {
+                    conditions.add(Condition.filter("id >", job.lastInstanceId));
+                }
+                var condition = Condition.filter(SubConditionType.AND + " bulkInstance", conditions).sort("id", "ASC").limit(chunkSize);
+
+                var instances = this.find(host, condition);
+                if (instances.isEmpty()) {
+                    break;
+                }
+                // the results of the chunk are added to the job with its continuation token,
+                // a chunk that stops midway is processed and counted again on resume
+                var chunkSummary = new BulkRebindingSummary();
+                chunkSummary.total = instances.size();
+                rebindChunk(host, definition, instances, job.operatorId, executor, chunkSummary);
+
+                job.summary.merge(chunkSummary);
+                job.lastInstanceId = instances.get(instances.size() - 1).id;
+                if (instances.size() < chunkSize) {
+                    break;
+                }
+                job = RebindingJobService.singleton.checkpoint(host, job);
+            }
+        } catch (Exception e) {
+            // another process took over the job, leave the checkpoint to it
+            if (!(e instanceof WorkflowException we && we.getError() == DatabaseErrors.VERSION_CONFLICT)) {
+                job.status = JobStatus.FAILED;
+                job.error = e.getMessage();
+                RebindingJobService.singleton.checkpoint(host, job);
+            }
+            throw e;
+        }
+
+        job.status = JobStatus.COMPLETED;
+        return RebindingJobService.singleton.checkpoint(host, job);
+    }
+
+    /**
+     * Rebind a chunk of instances and write them with bulk patches
+     *
+     * @param host
+     * @param definition     the target definition
+     * @param existInstances the instances as read from the database
+     * @param operatorId
+     * @param executor       executor computing the rebinding concurrently
+     * @param summary        summary to add the results to
+     * @throws Exception
+     */
+    private void rebindChunk(String host, Definition definition, List<Instance> existInstances,
+                             String operatorId, Executor executor, BulkRebindingSummary summary) throws Exception {
+        var pendingMap = computeRebinding(host, definition, existInstances, operatorId, executor, summary);
+
+        for (var attempt = 1; !pendingMap.isEmpty(); attempt++) {
+            var lastAttempt = attempt >= BULK_REBINDING_MAX_ATTEMPTS;
+
+            var conflictedIds = new ArrayList<String>();
+            var logEntries = new ArrayList<OperateLogEntry>();
+            var patches = new ArrayList<VersionedPatch>();
+            for (var iterator = pendingMap.values().iterator(); iterator.hasNext(); ) {
+                var pending = iterator.next();
+                var id = pending.existInstance().id;
+                var operations = generatePatchOperations(pending.existInstance(), pending.instance());
+                if (operations == null) {
+                    // too large for a patch, written on its own
+                    iterator.remove();
+                    try {
+                        OperateLogEntryService.singleton.record(host, id, pending.operateLogs());
+                        var updated = super.update(host, pending.instance());
+                        recordChanges(host, pending.existInstance(), updated);
+                        summary.successCount++;
+                    } catch (WorkflowException e) {
+                        if (e.getError() != DatabaseErrors.VERSION_CONFLICT) {
+                            throw e;
+                        }
+                        conflictedIds.add(id);
+                    }
+                    continue;
+                }
+                // applied only if the instance is still at the version it was read
+                pending.operateLogs().forEach((sequence, operateLog) -> logEntries.add(new OperateLogEntry(id, sequence, operateLog)));
+                patches.add(VersionedPatch.of(id, operations, pending.existInstance().dataVersion));
+            }
+
+            // the operate logs are stored before the instances are trimmed
+            OperateLogEntryService.singleton.recordAll(host, logEntries);
+            var bulkResult = super.bulkPatchIfVersion(host, patches);
+            for (var entry : bulkResult.successMap.entrySet()) {
+                var pending = pendingMap.remove(entry.getKey());
+                if (pending != null) {
+                    recordChanges(host, pending.existInstance(), toObject(entry.getValue()));
+                    summary.successCount++;
+                }
+            }
+            for (var entry : bulkResult.errorMap.entrySet()) {
+                if (pendingMap.remove(entry.getKey()) != null) {
+                    summary.addFailure(entry.getKey(), entry.getValue().getMessage());
+                }
+            }
+            for (var id : bulkResult.conflictIds) {
+                if (pendingMap.remove(id) != null) {
+                    conflictedIds.add(id);
+                }
+            }
+            // the items throttled or not executed stay pending
 
-        var instances = this.find(host, condition.limit(DATA_LIMIT));
+            if (lastAttempt) {
+                for (var id : pendingMap.keySet()) {
+                    summary.addFailure(id, "The instance could not be written after " + attempt + " attempts");
+                }
+                conflictedIds.forEach(id -> summary.addFailure(id, "The instance was modified by another request"));
+                break;
+            }
 
-        var result = new LinkedList<Instance>();
+            // the instances modified concurrently are read and rebound again
+            if (!conflictedIds.isEmpty()) {
+                var instances = super.find(host, Condition.filter("id", conflictedIds).limit(conflictedIds.size()));
+                var foundIds = instances.stream().map(BaseData::getId).collect(Collectors.toSet());
+                for (var id : conflictedIds) {
+                    if (!foundIds.contains(id)) {
+                        summary.addFailure(id, "The instance does not exist in the database");
+                    }
+                }
+                pendingMap.putAll(computeRebinding(host, definition, instances, operatorId, executor, summary));
+            }
+        }
+    }
 
-        for (var existInstance : instances) {
-            var existDefinition = definitionMap.get(existInstance.definitionId);
-            var isNodeExists = NodeService.checkNodeExists(existDefinition, existInstance.nodeId);
+    /**
+     * Rebind the instances in memory concurrently
+     * <p>
+     * The executor is shared, at most {@link ProcessConfiguration#getBulkRebindingParallelism()} instances are submitted at a time.
+     *
+     * @return instanceId -> rebound instance, the instances that failed are added to the summary
+     */
+    private Map<String, PendingRebinding> computeRebinding(String host, Definition definition, List<Instance> existInstances,
+                                                           String operatorId, Executor executor, BulkRebindingSummary summary) throws InterruptedException {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var permits = new Semaphore(configuration.getBulkRebindingParallelism());
+
+        var futures = new LinkedHashMap<String, FutureTask<PendingRebinding>>();
+        try {
+            for (var existInstance : existInstances) {
+                permits.acquire();
+                var task = new FutureTask<>(() -> {
+                    try {
+                        return rebindInMemory(host, definition, existInstance, operatorId);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                futures.put(existInstance.id, task);
+                executor.execute(task);
+            }
 
-            Node existNode = null;
-            if (isNodeExists) {
-                existNode = NodeService.getNodeByNodeId(existDefinition, existInstance.nodeId);
+            var result = new LinkedHashMap<String, PendingRebinding>();
+            for (var entry : futures.entrySet()) {
+                try {
+                    result.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    summary.addFailure(entry.getKey(), String.valueOf(e.getCause().getMessage()));
+                }
             }
+            return result;
+        } finally {
+            // the instances not rebound yet when interrupted are not started
+            futures.values().forEach(future -> future.cancel(false));
+        }
+    }
 
-            var contextParam = new ContextParam();
+    /**
+     * Rebind an instance in memory, the operate logs are externalized for the bulk patch
+     */
+    private PendingRebinding rebindInMemory(String host, Definition definition, Instance existInstance, String operatorId) throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
 
-            configuration.generateContextParam4Bulk(contextParam, existDefinition, existInstance, operatorId);
+        // definitions are cached, only the definitions of the chunk are loaded
+        var existDefinition = DefinitionService.singleton.getDefinition(host, existInstance.definitionId);
+        var isNodeExists = NodeService.checkNodeExists(existDefinition, existInstance.nodeId);
 
-            var instance = rebindingDefinition(host, definition, existInstance, operatorId, existNode, contextParam);
-            result.add(instance);
+        Node existNode = null;
+        if (isNodeExists) {
+            existNode = NodeService.getNodeByNodeId(existDefinition, existInstance.nodeId);
         }
 
-        return result;
+        var contextParam = new ContextParam();
+
+        configuration.generateContextParam4Bulk(contextParam, existDefinition, existInstance, operatorId);
+
+        var instance = rebindInstance(definition, existInstance, operatorId, existNode, contextParam);
+        var operateLogs = externalizeOperateLogs(existInstance, instance);
+        return new PendingRebinding(existInstance, instance, operateLogs);
+    }
+
+    /**
+     * An instance rebound in memory and waiting for the bulk patch
+     */
+    private record PendingRebinding(Instance existInstance, Instance instance, Map<Long, OperateLog> operateLogs) {
     }
 
     /**
@@ -444,7 +1004,7 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
         var operateLog = generateRelocateLog(existInstance, instance, operatorId, existNode, comment, logContext);
         instance.operateLogList.add(operateLog);
 
-        return super.update(host, instance);
+        return persistChanges(host, existInstance, instance);
     }
 
     /**
@@ -539,21 +1099,22 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
             case PROCESSING -> {
                 actions.add(Action.RETRIEVE);
 
+                var compiled = definition.getCompiledDefinition();
+                var currentNodeIndex = compiled.getNodeIndex(instance.nodeId);
+
                 //If it is the first node, back and retrieve action is not allowed.
                 // the reapply action can be used.
-                if (NodeService.isFirstNode(definition, instance.nodeId)) {
+                if (compiled.isFirstNode(instance.nodeId)) {
                     actions.add(Action.BACK);
                     actions.remove(Action.REAPPLY);
                 }
 
                 // If it is the last node, next action is not allowed.
-                if (NodeService.isLastNode(definition, instance.nodeId)) {
+                if (compiled.isLastNode(instance.nodeId)) {
                     actions.add(Action.NEXT);
                 }
 
-                var currentNode = NodeService.getNodeByNodeId(definition, instance.nodeId);
-
-                if (NodeService.isManualNode(currentNode.getType())) {
+                if (compiled.isManualNode(currentNodeIndex)) {
                     // If the current operator is not one of the allowed operators for the instance,
                     // all actions are not available for use.
                     if (!instance.expandOperatorIdSet.contains(operatorId)) {
@@ -566,7 +1127,7 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
 
                     // In the case of parallel approval, if it is the operator of the instance
                     // Operators who have already approved the action are not allowed to perform any further actions.
-                    if (instance.expandOperatorIdSet.contains(operatorId) && currentNode.getApprovalType().equals(ApprovalType.AND)) {
+                    if (instance.expandOperatorIdSet.contains(operatorId) && compiled.getApprovalType(instance.nodeId).equals(ApprovalType.AND)) {
 
                         var approvedIds = instance.parallelApproval.values().stream()
                                 .filter(approvalStatus -> approvalStatus.approved)
@@ -639,13 +1200,15 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
                 actions.add(Action.RETRIEVE);
                 actions.add(Action.APPLY);
 
+                var compiled = definition.getCompiledDefinition();
+
                 //If it is the first node, back and retrieve action is not allowed.
-                if (NodeService.isFirstNode(definition, instance.nodeId)) {
+                if (compiled.isFirstNode(instance.nodeId)) {
                     actions.add(Action.BACK);
                 }
 
                 // If it is the last node, next action is not allowed.
-                if (NodeService.isLastNode(definition, instance.nodeId)) {
+                if (compiled.isLastNode(instance.nodeId)) {
                     actions.add(Action.NEXT);
                 }
 
@@ -716,6 +1279,23 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
      */
     private Instance rebindingDefinition(String host, Definition definition, Instance existInstance, String operatorId, Node existNode,
                                          ContextParam contextParam) throws Exception {
+        var instance = rebindInstance(definition, existInstance, operatorId, existNode, contextParam);
+        return persistChanges(host, existInstance, instance);
+    }
+
+    /**
+     * Rebind a copy of the instance to the definition in memory
+     *
+     * @param definition
+     * @param existInstance
+     * @param operatorId
+     * @param existNode
+     * @param contextParam
+     * @return
+     * @throws Exception
+     */
+    private Instance rebindInstance(Definition definition, Instance existInstance, String operatorId, Node existNode,
+                                    ContextParam contextParam) throws Exception {
         Instance instance = existInstance.copy();
 
         instance.definitionId = definition.id;
@@ -736,7 +1316,350 @@ public class InstanceService extends BaseCRUDService<Instance> implements Notifi
         var operateLog = generateRebindingLog(existInstance, operatorId, existNode, comment, logContext);
         instance.operateLogList.add(operateLog);
 
-        return super.update(host, instance);
+        return instance;
+    }
+
+    /**
+     * Persist only the changes of the instance compared to the instance read from the database
+     * <p>
+     * Changed fields are set and new operate logs are appended through a patch,
+     * so the write does not grow with the number of operate logs.
+     * When the changes cannot be expressed within the patch operation limit, the whole instance is updated.
+     * Both writes fail with {@link DatabaseErrors#VERSION_CONFLICT} if the instance was modified after existInstance was read.
+     *
+     * @param host
+     * @param existInstance the instance as read from the database
+     * @param instance      the modified copy of existInstance
+     * @return
+     * @throws Exception
+     */
+    protected Instance persistChanges(String host, Instance existInstance, Instance instance) throws Exception {
+        // the operate logs are stored before the instance is trimmed, a log is never only in memory
+        OperateLogEntryService.singleton.record(host, instance.id, externalizeOperateLogs(existInstance, instance));
+
+        var operations = generatePatchOperations(existInstance, instance);
+        var result = operations == null
+                ? super.update(host, instance)
+                : super.patch(host, instance.id, operations, existInstance.dataVersion);
+
+        recordChanges(host, existInstance, result);
+        return result;
+    }
+
+    /**
+     * Store the tasks derived from the instance after the instance is written
+     * <p>
+     * Stored after the instance, so a request that lost a version conflict does not overwrite the data of the winner.
+     * The changes are synced only if the instance is still at the version written. Otherwise a later write may have synced its tasks already,
+     * and the tasks are reconciled with the instance as stored, so a sync running late does not add back the operators removed by the later write.
+     * If the incremental sync fails, the tasks are reconciled with the instance as stored too.
+     *
+     * @param host
+     * @param existInstance the instance before the write, null for a new instance
+     * @param instance      the instance as written
+     * @throws Exception
+     */
+    protected void recordChanges(String host, Instance existInstance, Instance instance) throws Exception {
+        if (!ProcessConfiguration.getConfiguration().isTaskProjectionEnabled()) {
+            return;
+        }
+        try {
+            var storedInstance = super.readSuppressing404(host, instance.id);
+            if (storedInstance == null || storedInstance.dataVersion != instance.dataVersion) {
+                TaskService.singleton.rebuild(host, instance.id, storedInstance);
+                return;
+            }
+            TaskService.singleton.sync(host, existInstance, instance);
+        } catch (Exception e) {
+            log.warn("host:{}, failed to sync the tasks, rebuilding them. instanceId:{}, error:{}", host, instance.id, e.getMessage());
+            rebuildTasks(host, instance.id);
+        }
+    }
+
+    /**
+     * Rebuild the tasks of the instance from the instance as stored, see {@link ProcessConfiguration#enableTaskProjection()}
+     * <p>
+     * Repairs the tasks of an instance whose write succeeded but whose task sync failed.
+     * Nothing is done if the task projection is disabled.
+     *
+     * @param host
+     * @param instanceId
+     * @throws Exception
+     */
+    protected void rebuildTasks(String host, String instanceId) throws Exception {
+        if (StringUtils.isBlank(instanceId)) {
+            throw new IllegalArgumentException("instanceId should not be empty");
+        }
+        if (!ProcessConfiguration.getConfiguration().isTaskProjectionEnabled()) {
+            return;
+        }
+        TaskService.singleton.rebuild(host, instanceId, super.readSuppressing404(host, instanceId));
+    }
+
+    /**
+     * Collect the operate logs of the instance that are not stored in the operate log partition yet,
+     * and keep only the latest logs in the instance
+     * <p>
+     * Logs of an instance written before externalization was enabled are all collected on its first write.
+     * The logs are stored before the instance is written, so a request that loses a version conflict may overwrite a log of the winner.
+     * The logs leaving the instance are collected again, so such a log is restored from the instance before it is trimmed,
+     * until then the log kept in the instance is returned, see {@link #getOperateLogs}.
+     *
+     * @param existInstance the instance as read from the database, null for a new instance
+     * @param instance      the instance to be written
+     * @return sequence -> operate log, empty if operate logs are not externalized
+     */
+    protected Map<Long, OperateLog> externalizeOperateLogs(Instance existInstance, Instance instance) {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var existCount = existInstance == null ? 0 : existInstance.operateLogCount;
+        var operateLogs = new LinkedHashMap<Long, OperateLog>();
+        if ((!configuration.isOperateLogExternalized() && existCount == 0) || instance.operateLogList == null) {
+            return operateLogs;
+        }
+
+        var existLogs = existInstance == null || existInstance.operateLogList == null ? List.<OperateLog>of() : existInstance.operateLogList;
+        var logs = instance.operateLogList;
+        // the logs kept in the instance are the last ones of all externalized logs
+        var storedSize = existCount > 0 ? Math.min(existLogs.size(), logs.size()) : 0;
+        var offset = existCount > 0 ? existCount - existLogs.size() : 0;
+        var retainedSize = configuration.getOperateLogRetainedSize();
+        var trimmedSize = Math.max(logs.size() - retainedSize, 0);
+        for (var i = 0; i < logs.size(); i++) {
+            if (i < trimmedSize || i >= storedSize || !Objects.equals(existLogs.get(i), logs.get(i))) {
+                operateLogs.put(offset + i, logs.get(i));
+            }
+        }
+
+        instance.operateLogCount = offset + logs.size();
+        if (logs.size() > retainedSize) {
+            instance.operateLogList = new ArrayList<>(logs.subList(logs.size() - retainedSize, logs.size()));
+        }
+        return operateLogs;
+    }
+
+    /**
+     * Count the instances matching the condition, grouped by the given fields
+     * <p>
+     * The count is done in the database, see {@link #aggregate}.
+     *
+     * @param host
+     * @param cond    the filter of the instances, same as findInstances
+     * @param groupBy the fields to group by, e.g. nodeId, status
+     * @return one count per group
+     * @throws Exception
+     */
+    protected List<InstanceCount> countInstances(String host, Condition cond, List<String> groupBy) throws Exception {
+        if (CollectionUtils.isEmpty(groupBy) || groupBy.stream().anyMatch(StringUtils::isBlank)) {
+            throw new IllegalArgumentException("groupBy should contain at least one field and no blank field");
+        }
+
+        var aggregate = Aggregate.function("COUNT(1) AS " + COUNT_ALIAS).groupBy(groupBy.toArray(new String[]{}));
+        var groups = super.aggregate(host, aggregate, cond);
+
+        var result = new ArrayList<InstanceCount>(groups.size());
+        for (var map : groups) {
+            var group = new LinkedHashMap<String, Object>();
+            for (var field : groupBy) {
+                group.put(field, map.get(field));
+            }
+            var count = map.get(COUNT_ALIAS) instanceof Number number ? number.longValue() : 0L;
+            result.add(new InstanceCount(group, count));
+        }
+        return result;
+    }
+
+    /**
+     * Find the summaries of the instances matching the condition
+     * <p>
+     * The condition is used as is except for the fields read, which are {@link InstanceSummary#FIELDS}.
+     * The condition of the caller is not modified.
+     *
+     * @param host
+     * @param cond
+     * @return
+     * @throws Exception
+     */
+    protected List<InstanceSummary> findInstanceSummaries(String host, Condition cond) throws Exception {
+        if (cond == null) {
+            throw new IllegalArgumentException("cond should not be null");
+        }
+
+        // a copy keeps the negation, sub conditions and join of the caller
+        var summaryCond = JsonUtil.fromJson(JsonUtil.toJson(cond), Condition.class);
+        summaryCond.fields(InstanceSummary.FIELDS.toArray(new String[]{}));
+        return super.findProjection(host, summaryCond, InstanceSummary.class);
+    }
+
+    /**
+     * Get the processing instances the operator can currently operate, page by page in the order of their id
+     * <p>
+     * The query is served by the index on expandOperatorIdSet, see {@link Instance#getCustomIndexDefinitions()}.
+     *
+     * @param host
+     * @param operatorId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of instances in the page
+     * @return
+     * @throws Exception
+     */
+    protected CursorPage<Instance> findPendingTasks(String host, String operatorId, String cursor, int limit) throws Exception {
+        if (StringUtils.isEmpty(operatorId)) {
+            throw new IllegalArgumentException("operatorId should not be empty");
+        }
+        var cond = Condition.filter(EXPAND_OPERATOR_ID_SET + " ARRAY_CONTAINS", operatorId, STATUS, Status.PROCESSING.name());
+        return this.findPage(host, cond, cursor, limit);
+    }
+
+    /**
+     * Get the tasks of the operator page by page, see {@link ProcessConfiguration#enableTaskProjection()}
+     *
+     * @param host
+     * @param operatorId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of tasks in the page
+     * @return
+     * @throws Exception
+     */
+    protected CursorPage<Task> findTasks(String host, String operatorId, String cursor, int limit) throws Exception {
+        return TaskService.singleton.findByOperator(host, operatorId, cursor, limit);
+    }
+
+    /**
+     * Get the operate logs of the instance page by page, in the order they were recorded
+     *
+     * @param host
+     * @param instanceId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of logs in the page
+     * @return
+     * @throws Exception
+     */
+    protected CursorPage<OperateLog> getOperateLogs(String host, String instanceId, String cursor, int limit) throws Exception {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be greater than 0");
+        }
+        long after = -1;
+        if (StringUtils.isNotEmpty(cursor)) {
+            try {
+                after = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("cursor is invalid: " + cursor);
+            }
+        }
+
+        var instance = getInstance(host, instanceId);
+
+        // the logs are only stored in the instance, the sequence is the position in the list
+        if (instance.operateLogCount == 0) {
+            var logs = instance.operateLogList;
+            var from = (int) Math.min(after + 1, logs.size());
+            var to = Math.min(from + limit, logs.size());
+            var nextCursor = to < logs.size() ? String.valueOf(to - 1) : null;
+            return new CursorPage<>(new ArrayList<>(logs.subList(from, to)), nextCursor);
+        }
+
+        var entries = OperateLogEntryService.singleton.findAfter(host, instanceId, after, instance.operateLogCount, limit);
+        // the logs kept in the instance are the ones written with it
+        var retainedFrom = instance.operateLogCount - instance.operateLogList.size();
+        var items = entries.stream()
+                .map(entry -> entry.sequence >= retainedFrom ? instance.operateLogList.get((int) (entry.sequence - retainedFrom)) : entry.operateLog)
+                .collect(Collectors.toCollection(ArrayList::new));
+        String nextCursor = null;
+        if (!entries.isEmpty()) {
+            var lastSequence = entries.get(entries.size() - 1).sequence;
+            if (entries.size() == limit && lastSequence < instance.operateLogCount - 1) {
+                nextCursor = String.valueOf(lastSequence);
+            }
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+
+    /**
+     * Generate the patch operations that turn existInstance into instance
+     *
+     * @param existInstance
+     * @param instance
+     * @return null if the changes cannot be expressed as a patch within {@link PatchOperations#LIMIT} operations
+     */
+    protected PatchOperations generatePatchOperations(Instance existInstance, Instance instance) {
+        if (!Objects.equals(existInstance.id, instance.id) || existInstance.operateLogList == null || instance.operateLogList == null) {
+            return null;
+        }
+
+        // path -> value
+        var setOperations = new LinkedHashMap<String, Object>();
+        putIfChanged(setOperations, "/workflowId", existInstance.workflowId, instance.workflowId);
+        putIfChanged(setOperations, "/definitionId", existInstance.definitionId, instance.definitionId);
+        putIfChanged(setOperations, "/nodeId", existInstance.nodeId, instance.nodeId);
+        putIfChanged(setOperations, "/preNodeId", existInstance.preNodeId, instance.preNodeId);
+        putIfChanged(setOperations, "/operatorIdSet", existInstance.operatorIdSet, instance.operatorIdSet);
+        putIfChanged(setOperations, "/operatorOrgIdSet", existInstance.operatorOrgIdSet, instance.operatorOrgIdSet);
+        putIfChanged(setOperations, "/expandOperatorIdSet", existInstance.expandOperatorIdSet, instance.expandOperatorIdSet);
+        putIfChanged(setOperations, "/preExpandOperatorIdSet", existInstance.preExpandOperatorIdSet, instance.preExpandOperatorIdSet);
+        putIfChanged(setOperations, "/applicationMode", existInstance.applicationMode, instance.applicationMode);
+        putIfChanged(setOperations, "/applicant", existInstance.applicant, instance.applicant);
+        putIfChanged(setOperations, "/proxyApplicant", existInstance.proxyApplicant, instance.proxyApplicant);
+        putIfChanged(setOperations, "/status", existInstance.status, instance.status);
+        putIfChanged(setOperations, "/parallelApproval", existInstance.parallelApproval, instance.parallelApproval);
+        putIfChanged(setOperations, "/allowingActions", existInstance.allowingActions, instance.allowingActions);
+
+        putIfChanged(setOperations, "/operateLogCount", existInstance.operateLogCount, instance.operateLogCount);
+
+        var existLogs = existInstance.operateLogList;
+        var logs = instance.operateLogList;
+        // logs are usually appended, an existing log may be modified (e.g. statusAfter of the last one)
+        var logOperations = new LinkedHashMap<String, Object>();
+        if (logs.size() >= existLogs.size()) {
+            for (var i = 0; i < existLogs.size(); i++) {
+                putIfChanged(logOperations, "/operateLogList/" + i, existLogs.get(i), logs.get(i));
+            }
+        }
+        // the list was trimmed to the latest logs, replacing it is cheaper than setting each shifted position
+        var replaceLogs = logs.size() < existLogs.size() || logOperations.size() > 1;
+        var appendCount = replaceLogs ? 0 : logs.size() - existLogs.size();
+        if (replaceLogs) {
+            setOperations.put("/operateLogList", toPatchValue(logs));
+        } else {
+            setOperations.putAll(logOperations);
+        }
+
+        // +2 for updatedAt and the version
+        if (setOperations.size() + appendCount + 2 > PatchOperations.LIMIT) {
+            return null;
+        }
+
+        var operations = PatchOperations.create();
+        setOperations.forEach(operations::set);
+        for (var i = logs.size() - appendCount; i < logs.size(); i++) {
+            operations.add("/operateLogList/" + i, toPatchValue(logs.get(i)));
+        }
+        operations.set("/updatedAt", DateUtil.nowDateTimeStringUTC());
+        return operations;
+    }
+
+    private static void putIfChanged(LinkedHashMap<String, Object> setOperations, String path, Object existValue, Object value) {
+        if (!Objects.equals(existValue, value)) {
+            setOperations.put(path, toPatchValue(value));
+        }
+    }
+
+    /**
+     * Convert the value to the JSON compatible form stored in the database
+     *
+     * @param value
+     * @return
+     */
+    private static Object toPatchValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Enum<?> e) {
+            return e.name();
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection.stream().map(InstanceService::toPatchValue).collect(Collectors.toCollection(ArrayList::new));
+        }
+        return JsonUtil.toMap(value);
     }
 
     /**
@@ -3,11 +3,11 @@ package jp.co.onehr.workflow.service;
 
 import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import jp.co.onehr.workflow.constant.NodeType;
 import jp.co.onehr.workflow.constant.WorkflowErrors;
 import jp.co.onehr.workflow.contract.context.InstanceContext;
+import jp.co.onehr.workflow.dto.CompiledDefinition;
 import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.PreviousNodeInfo;
@@ -25,8 +25,7 @@ public class NodeService {
      * @return
      */
     public static Node getStartNode(Definition definition) {
-        var nodes = definition.nodes;
-        return nodes.get(0);
+        return definition.getCompiledDefinition().getStartNode();
     }
 
     /**
@@ -38,8 +37,7 @@ public class NodeService {
      * @return
      */
     public static Node getFirstNode(Definition definition) {
-        var nodes = definition.nodes;
-        return nodes.get(1);
+        return definition.getCompiledDefinition().getFirstNode();
     }
 
     /**
@@ -60,8 +58,7 @@ public class NodeService {
      * @return
      */
     public static Integer getNodeIndexByNodeId(Definition definition, String nodeId) {
-        var nodes = getAllNodes(definition);
-        return getNodeIndexByNodeId(nodes, nodeId);
+        return definition.getCompiledDefinition().getNodeIndex(nodeId);
     }
 
     /**
@@ -90,9 +87,7 @@ public class NodeService {
      * @return
      */
     public static Node getNodeByNodeId(Definition definition, String nodeId) {
-        var nodes = getAllNodes(definition);
-        var currentNodeIndex = getNodeIndexByNodeId(nodes, nodeId);
-        return nodes.get(currentNodeIndex);
+        return definition.getCompiledDefinition().getNode(nodeId);
     }
 
     public static Node getNodeByInstance(Definition definition, Instance instance) {
@@ -100,8 +95,7 @@ public class NodeService {
     }
 
     public static boolean checkNodeExists(Definition definition, String nodeId) {
-        var nodeIdSet = definition.nodes.stream().map(i -> i.nodeId).collect(Collectors.toSet());
-        return nodeIdSet.contains(nodeId);
+        return definition.getCompiledDefinition().containsNode(nodeId);
     }
 
     /**
@@ -110,8 +104,7 @@ public class NodeService {
      * @return
      */
     public static boolean isFirstNode(Definition definition, String nodeId) {
-        var allNodes = getAllNodes(definition);
-        return allNodes.get(1).nodeId.equals(nodeId);
+        return definition.getCompiledDefinition().isFirstNode(nodeId);
     }
 
     /**
@@ -122,8 +115,7 @@ public class NodeService {
      * @return
      */
     public static boolean isLastNode(Definition definition, String nodeId) {
-        var allNodes = getAllNodes(definition);
-        return allNodes.get(allNodes.size() - 1).nodeId.equals(nodeId);
+        return definition.getCompiledDefinition().isLastNode(nodeId);
     }
 
     public static boolean isManualNode(String type) {
@@ -141,21 +133,22 @@ public class NodeService {
      * @return
      */
     public static PreviousNodeInfo getPreviousNodeInfo(Definition definition, Instance instance, InstanceContext instanceContext) {
-        var nodeIndex = NodeService.getNodeIndexByNodeId(definition, instance.nodeId);
+        var compiled = definition.getCompiledDefinition();
+        var nodeIndex = compiled.getNodeIndex(instance.nodeId);
 
-        return recursivePreviousNode(definition, instance, instanceContext, nodeIndex, 0);
+        return recursivePreviousNode(compiled, instance, instanceContext, nodeIndex, 0);
     }
 
     /**
      * Recursively find the previous manual node.
      *
-     * @param definition
+     * @param compiled
      * @param instance
      * @param nodeIndex
      * @param count
      * @return
      */
-    private static PreviousNodeInfo recursivePreviousNode(Definition definition, Instance instance, InstanceContext instanceContext, int nodeIndex, int count) {
+    private static PreviousNodeInfo recursivePreviousNode(CompiledDefinition compiled, Instance instance, InstanceContext instanceContext, int nodeIndex, int count) {
 
         if (count > 100) {
             throw new WorkflowException(WorkflowErrors.INSTANCE_OPERATOR_INVALID, "Too many recursion when finding previous node's operator ", instance.id);
@@ -163,14 +156,14 @@ public class NodeService {
         count++;
 
         if (nodeIndex - 1 >= 0) {
-            var currentNode = definition.nodes.get(nodeIndex - 1);
-            if (!NodeService.isManualNode(currentNode.getType())) {
-                return recursivePreviousNode(definition, instance, instanceContext, nodeIndex - 1, count);
+            var currentNode = compiled.getNode(nodeIndex - 1);
+            if (!compiled.isManualNode(nodeIndex - 1)) {
+                return recursivePreviousNode(compiled, instance, instanceContext, nodeIndex - 1, count);
             }
 
             var expandOperatorIds = currentNode.generateExpandOperatorIds(instanceContext);
             if (expandOperatorIds.isEmpty()) {
-                return recursivePreviousNode(definition, instance, instanceContext, nodeIndex - 1, count);
+                return recursivePreviousNode(compiled, instance, instanceContext, nodeIndex - 1, count);
             }
 
             return new PreviousNodeInfo(currentNode.nodeId, expandOperatorIds);
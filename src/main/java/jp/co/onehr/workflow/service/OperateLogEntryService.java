@@ -0,0 +1,119 @@
+package jp.co.onehr.workflow.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.github.thunderz99.cosmos.condition.Condition;
+import jp.co.onehr.workflow.constant.DatabaseErrors;
+import jp.co.onehr.workflow.dto.OperateLog;
+import jp.co.onehr.workflow.dto.OperateLogEntry;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.service.base.BaseCRUDService;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
+
+import static jp.co.onehr.workflow.dto.OperateLogEntry.INSTANCE_ID;
+import static jp.co.onehr.workflow.dto.OperateLogEntry.SEQUENCE;
+
+/**
+ * Storage of externalized operate logs, one document per log in the "OperateLogs" partition
+ */
+public class OperateLogEntryService extends BaseCRUDService<OperateLogEntry> {
+
+    public static final OperateLogEntryService singleton = new OperateLogEntryService();
+
+    private OperateLogEntryService() {
+        super(OperateLogEntry.class, "OperateLogs");
+    }
+
+    /**
+     * Store the operate logs of the instance
+     * <p>
+     * A log that is already stored with the same sequence is overwritten.
+     *
+     * @param host
+     * @param instanceId
+     * @param operateLogs sequence -> operate log
+     * @throws Exception
+     */
+    protected void record(String host, String instanceId, Map<Long, OperateLog> operateLogs) throws Exception {
+        if (MapUtils.isEmpty(operateLogs)) {
+            return;
+        }
+        var entries = new ArrayList<OperateLogEntry>(operateLogs.size());
+        for (var entry : operateLogs.entrySet()) {
+            entries.add(new OperateLogEntry(instanceId, entry.getKey(), entry.getValue()));
+        }
+        recordAll(host, entries);
+    }
+
+    /**
+     * Store the operate logs of one or more instances with one bulk upsert
+     * <p>
+     * The id of an entry is derived from its instance and sequence, so storing it again is idempotent.
+     *
+     * @param host
+     * @param entries
+     * @throws Exception
+     */
+    protected void recordAll(String host, List<OperateLogEntry> entries) throws Exception {
+        if (CollectionUtils.isEmpty(entries)) {
+            return;
+        }
+        var result = super.bulkUpsert(host, entries);
+        var writtenIds = result.successList.stream().map(BaseData::getId).collect(Collectors.toSet());
+        var remainingIds = entries.stream().map(BaseData::getId).filter(id -> !writtenIds.contains(id)).collect(Collectors.toList());
+        if (!remainingIds.isEmpty()) {
+            throw new WorkflowException(DatabaseErrors.BULK_WRITE_INCOMPLETE, "Failed to store the operate logs", remainingIds);
+        }
+    }
+
+    /**
+     * Find the operate logs of the instance after the given sequence, ordered by sequence
+     * <p>
+     * Logs are stored before the instance, the logs of a write that did not complete are beyond the count of the instance and are not returned.
+     *
+     * @param host
+     * @param instanceId
+     * @param afterSequence -1 to start from the first log
+     * @param count         operateLogCount of the instance
+     * @param limit
+     * @return
+     * @throws Exception
+     */
+    protected List<OperateLogEntry> findAfter(String host, String instanceId, long afterSequence, long count, int limit) throws Exception {
+        var cond = Condition.filter(INSTANCE_ID, instanceId, SEQUENCE + " >", afterSequence, SEQUENCE + " <", count)
+                .sort(SEQUENCE, "ASC")
+                .limit(limit);
+        return super.find(host, cond);
+    }
+
+    /**
+     * Physically delete all operate logs of the instance
+     *
+     * @param host
+     * @param instanceId
+     * @throws Exception
+     */
+    protected void purgeByInstance(String host, String instanceId) throws Exception {
+        purgeByInstances(host, List.of(instanceId));
+    }
+
+    /**
+     * Physically delete all operate logs of the instances with bulk deletes
+     *
+     * @param host
+     * @param instanceIds
+     * @throws Exception
+     */
+    protected void purgeByInstances(String host, Collection<String> instanceIds) throws Exception {
+        if (CollectionUtils.isEmpty(instanceIds)) {
+            return;
+        }
+        super.bulkPurge(host, Condition.filter(INSTANCE_ID, new ArrayList<>(instanceIds)));
+    }
+}
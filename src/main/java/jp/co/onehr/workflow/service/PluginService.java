@@ -38,7 +38,8 @@ public class PluginService {
                 try {
                     var plugin = ProcessConfiguration.getConfiguration().getPlugin(pluginType);
                     if (ObjectUtils.isNotEmpty(plugin)) {
-                        var pluginResult = plugin.handle(node, param);
+                        // the node belongs to a definition that may be shared by the definition cache
+                        var pluginResult = plugin.handle(node.copy(), param);
                         result.put(pluginType, pluginResult);
                     }
                 } catch (Exception e) {
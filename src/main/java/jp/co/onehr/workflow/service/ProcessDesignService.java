@@ -1,14 +1,20 @@
 package jp.co.onehr.workflow.service;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import com.google.common.cache.CacheStats;
 import io.github.thunderz99.cosmos.condition.Condition;
 import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Workflow;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.base.DeletedObject;
 import jp.co.onehr.workflow.dto.param.DefinitionParam;
 import jp.co.onehr.workflow.dto.param.WorkflowCreationParam;
 import jp.co.onehr.workflow.dto.param.WorkflowUpdatingParam;
+import jp.co.onehr.workflow.service.base.BaseCRUDService;
 
 public class ProcessDesignService {
 
@@ -43,6 +49,10 @@ public class ProcessDesignService {
         return WorkflowService.singleton.delete(host, workflowId);
     }
 
+    public DeletedObject deleteWorkflow(String host, String workflowId, Consumer<BulkDeleteSummary> progressListener) throws Exception {
+        return WorkflowService.singleton.delete(host, workflowId, progressListener);
+    }
+
     public List<Workflow> findWorkflows(String host, Condition cond) throws Exception {
         return WorkflowService.singleton.find(host, cond);
     }
@@ -53,7 +63,12 @@ public class ProcessDesignService {
     }
 
     public Definition getDefinition(String host, String definitionId) throws Exception {
-        return DefinitionService.singleton.getDefinition(host, definitionId);
+        // the definition may be shared through the cache, so callers get their own copy
+        return DefinitionService.singleton.getDefinition(host, definitionId).copy();
+    }
+
+    public CacheStats getDefinitionCacheStats(String host) {
+        return DefinitionService.singleton.getCacheStats(host);
     }
 
     public Definition getCurrentDefinition(String host, String workflowId, int version) throws Exception {
@@ -63,4 +78,31 @@ public class ProcessDesignService {
     public List<Definition> findDefinitions(String host, Condition cond) throws Exception {
         return DefinitionService.singleton.find(host, cond);
     }
+
+    /**
+     * Find the definitions matching the condition page by page, in the order of their id
+     * <p>
+     * The sort, offset and limit of the condition are ignored.
+     *
+     * @param host
+     * @param cond   the filter and fields of the query
+     * @param cursor the nextCursor of the previous page, null or empty for the first page
+     * @param limit  maximum number of definitions in the page
+     * @return
+     * @throws Exception
+     */
+    public CursorPage<Definition> findDefinitions(String host, Condition cond, String cursor, int limit) throws Exception {
+        return DefinitionService.singleton.findPage(host, cond, cursor, limit);
+    }
+
+    /**
+     * Stream all definitions matching the condition, reading them page by page
+     *
+     * @param host
+     * @param cond the filter and fields of the query
+     * @return
+     */
+    public Stream<Definition> streamDefinitions(String host, Condition cond) {
+        return DefinitionService.singleton.stream(host, cond, BaseCRUDService.DEFAULT_PAGE_SIZE);
+    }
 }
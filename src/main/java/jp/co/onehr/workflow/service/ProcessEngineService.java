@@ -1,13 +1,23 @@
 package jp.co.onehr.workflow.service;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 import io.github.thunderz99.cosmos.condition.Condition;
 import jp.co.onehr.workflow.constant.Action;
 import jp.co.onehr.workflow.constant.OperationMode;
 import jp.co.onehr.workflow.dto.ActionResult;
+import jp.co.onehr.workflow.dto.BulkRebindingSummary;
 import jp.co.onehr.workflow.dto.Instance;
+import jp.co.onehr.workflow.dto.InstanceCount;
+import jp.co.onehr.workflow.dto.InstanceSummary;
+import jp.co.onehr.workflow.dto.OperateLog;
+import jp.co.onehr.workflow.dto.RebindingJob;
+import jp.co.onehr.workflow.dto.ResolveAllResult;
+import jp.co.onehr.workflow.dto.Task;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.param.*;
+import jp.co.onehr.workflow.service.base.BaseCRUDService;
 
 /**
  * The service corresponding to the workflow engine is called the Workflow Engine Service
@@ -68,14 +78,56 @@ public class ProcessEngineService {
         return InstanceService.singleton.resolve(host, instanceId, action, operatorId, extendParam, applicantActionContext);
     }
 
+    /**
+     * Resolve a batch of actions with bulk reads and one bulk write
+     *
+     * @param host
+     * @param requests
+     * @return the outcome of each request
+     * @throws Exception
+     */
+    public ResolveAllResult resolveAll(String host, List<ResolveRequest> requests) throws Exception {
+        return InstanceService.singleton.resolveAll(host, requests);
+    }
+
     public Instance rebinding(String host, String instanceId, String operatorId, RebindingParam rebindingParam) throws Exception {
         return InstanceService.singleton.rebinding(host, instanceId, operatorId, rebindingParam);
     }
 
-    public List<Instance> bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
+    public BulkRebindingSummary bulkRebinding(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
         return InstanceService.singleton.bulkRebinding(host, workflowId, operatorId, bulkRebindingParam);
     }
 
+    /**
+     * Start a resumable bulk rebinding job and run it to the end
+     *
+     * @param host
+     * @param workflowId
+     * @param operatorId
+     * @param bulkRebindingParam
+     * @return the completed job
+     * @throws Exception
+     */
+    public RebindingJob startBulkRebindingJob(String host, String workflowId, String operatorId, BulkRebindingParam bulkRebindingParam) throws Exception {
+        return InstanceService.singleton.startBulkRebindingJob(host, workflowId, operatorId, bulkRebindingParam);
+    }
+
+    /**
+     * Continue the bulk rebinding job of the workflow from its last checkpoint, e.g. after a restart
+     *
+     * @param host
+     * @param workflowId
+     * @return the completed job
+     * @throws Exception
+     */
+    public RebindingJob resumeBulkRebindingJob(String host, String workflowId) throws Exception {
+        return InstanceService.singleton.resumeBulkRebindingJob(host, workflowId);
+    }
+
+    public RebindingJob getBulkRebindingJob(String host, String workflowId) throws Exception {
+        return InstanceService.singleton.getBulkRebindingJob(host, workflowId);
+    }
+
     public Instance relocate(String host, String definitionId, String operatorId, RelocateParam relocateParam) throws Exception {
         return InstanceService.singleton.relocate(host, definitionId, operatorId, relocateParam);
     }
@@ -85,6 +137,131 @@ public class ProcessEngineService {
         return instances;
     }
 
+    /**
+     * Count the instances of the workflow grouped by the given fields, e.g. nodeId and status
+     *
+     * @param host
+     * @param workflowId
+     * @param groupBy
+     * @return one count per group
+     * @throws Exception
+     */
+    public List<InstanceCount> countInstances(String host, String workflowId, List<String> groupBy) throws Exception {
+        return countInstances(host, Condition.filter(InstanceService.WORKFLOW_ID, workflowId), groupBy);
+    }
+
+    /**
+     * Count the instances matching the condition grouped by the given fields, without reading the instances
+     *
+     * @param host
+     * @param cond    the filter of the instances, same as findInstances
+     * @param groupBy
+     * @return one count per group
+     * @throws Exception
+     */
+    public List<InstanceCount> countInstances(String host, Condition cond, List<String> groupBy) throws Exception {
+        return InstanceService.singleton.countInstances(host, cond, groupBy);
+    }
+
+    /**
+     * Find the instances matching the condition, reading only the fields needed by list views
+     *
+     * @param host
+     * @param cond the filter, sort and limit of the query, its fields are replaced
+     * @return
+     * @throws Exception
+     */
+    public List<InstanceSummary> findInstanceSummaries(String host, Condition cond) throws Exception {
+        return InstanceService.singleton.findInstanceSummaries(host, cond);
+    }
+
+    /**
+     * Find the instances matching the condition page by page, in the order of their id
+     * <p>
+     * The sort, offset and limit of the condition are ignored.
+     *
+     * @param host
+     * @param cond   the filter and fields of the query
+     * @param cursor the nextCursor of the previous page, null or empty for the first page
+     * @param limit  maximum number of instances in the page
+     * @return
+     * @throws Exception
+     */
+    public CursorPage<Instance> findInstances(String host, Condition cond, String cursor, int limit) throws Exception {
+        return InstanceService.singleton.findPage(host, cond, cursor, limit);
+    }
+
+    /**
+     * Stream all instances matching the condition, reading them page by page
+     * <p>
+     * Only one page is held in memory at a time, so it can be used for exports of any size.
+     *
+     * @param host
+     * @param cond the filter and fields of the query
+     * @return
+     */
+    public Stream<Instance> streamInstances(String host, Condition cond) {
+        return InstanceService.singleton.stream(host, cond, BaseCRUDService.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Get the processing instances the operator can currently operate, page by page
+     *
+     * @param host
+     * @param operatorId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of instances in the page
+     * @return
+     * @throws Exception
+     */
+    public CursorPage<Instance> findPendingTasks(String host, String operatorId, String cursor, int limit) throws Exception {
+        return InstanceService.singleton.findPendingTasks(host, operatorId, cursor, limit);
+    }
+
+    /**
+     * Get the tasks of the operator page by page, in the order of their id
+     * <p>
+     * Only available when the task projection is enabled, see {@link jp.co.onehr.workflow.ProcessConfiguration#enableTaskProjection()}
+     *
+     * @param host
+     * @param operatorId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of tasks in the page
+     * @return
+     * @throws Exception
+     */
+    public CursorPage<Task> findTasks(String host, String operatorId, String cursor, int limit) throws Exception {
+        return InstanceService.singleton.findTasks(host, operatorId, cursor, limit);
+    }
+
+    /**
+     * Rebuild the tasks of the instance from the instance as stored
+     * <p>
+     * Repairs the tasks of an instance whose write succeeded but whose task sync failed.
+     * Nothing is done if the task projection is disabled, see {@link jp.co.onehr.workflow.ProcessConfiguration#enableTaskProjection()}
+     *
+     * @param host
+     * @param instanceId
+     * @throws Exception
+     */
+    public void rebuildTasks(String host, String instanceId) throws Exception {
+        InstanceService.singleton.rebuildTasks(host, instanceId);
+    }
+
+    /**
+     * Get the operate logs of the instance page by page, in the order they were recorded
+     *
+     * @param host
+     * @param instanceId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of logs in the page
+     * @return
+     * @throws Exception
+     */
+    public CursorPage<OperateLog> getOperateLogs(String host, String instanceId, String cursor, int limit) throws Exception {
+        return InstanceService.singleton.getOperateLogs(host, instanceId, cursor, limit);
+    }
+
     /**
      * For systems already using a workflow, you can migrate historical data to instances in cosmos-workflow.
      *
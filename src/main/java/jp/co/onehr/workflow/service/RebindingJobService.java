@@ -0,0 +1,108 @@
+package jp.co.onehr.workflow.service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.constant.DatabaseErrors;
+import jp.co.onehr.workflow.constant.JobStatus;
+import jp.co.onehr.workflow.constant.WorkflowErrors;
+import jp.co.onehr.workflow.dto.RebindingJob;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.service.base.BaseCRUDService;
+import jp.co.onehr.workflow.util.DateUtil;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Storage of the checkpoints of bulk rebinding jobs, in the "RebindingJobs" partition
+ */
+public class RebindingJobService extends BaseCRUDService<RebindingJob> {
+
+    public static final RebindingJobService singleton = new RebindingJobService();
+
+    private RebindingJobService() {
+        super(RebindingJob.class, "RebindingJobs");
+    }
+
+    protected RebindingJob getJob(String host, String workflowId) throws Exception {
+        return super.readSuppressing404(host, RebindingJob.generateId(workflowId));
+    }
+
+    /**
+     * Store a new job of the workflow, replacing its previous job
+     * <p>
+     * The write fails if another process started a job of the workflow at the same time:
+     * a first job is created and conflicts on its id, a previous job is replaced conditionally on the version read.
+     *
+     * @param host
+     * @param job
+     * @param existJob the previous job of the workflow as read, null if there is none
+     * @return
+     * @throws Exception
+     */
+    protected RebindingJob start(String host, RebindingJob job, RebindingJob existJob) throws Exception {
+        try {
+            if (existJob == null) {
+                return super.create(host, job);
+            }
+            job.createdAt = existJob.createdAt;
+            job.dataVersion = existJob.dataVersion;
+            return super.update(host, job);
+        } catch (WorkflowException e) {
+            if (e.getError() == DatabaseErrors.ID_CONFLICT || e.getError() == DatabaseErrors.VERSION_CONFLICT) {
+                throw new WorkflowException(WorkflowErrors.REBINDING_JOB_RUNNING, "A bulk rebinding job of the workflow was started by another process", job.workflowId);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the progress of the job
+     * <p>
+     * The write is conditional on the version of the job, so when two processes run the same job,
+     * only one of them can checkpoint and the other one stops with a version conflict.
+     * The checkpoint also renews the lease of the running job, see {@link #isAlive(RebindingJob)}.
+     *
+     * @param host
+     * @param job
+     * @return
+     * @throws Exception
+     */
+    protected RebindingJob checkpoint(String host, RebindingJob job) throws Exception {
+        return super.update(host, job);
+    }
+
+    /**
+     * Whether the job is running in a process that checkpointed it within the lease
+     * <p>
+     * A job left running by a process that stopped is not alive once the lease expired.
+     * See {@link ProcessConfiguration#configureBulkRebindingLease(Duration)}
+     *
+     * @param job
+     * @return
+     */
+    protected boolean isAlive(RebindingJob job) {
+        if (job.status != JobStatus.RUNNING) {
+            return false;
+        }
+        if (StringUtils.isEmpty(job.updatedAt)) {
+            return true;
+        }
+        var lease = ProcessConfiguration.getConfiguration().getBulkRebindingLease();
+        return Instant.parse(job.updatedAt).plus(lease).isAfter(DateUtil.now());
+    }
+
+    /**
+     * Remove the job of the workflow if it exists
+     *
+     * @param host
+     * @param workflowId
+     * @throws Exception
+     */
+    protected void purgeByWorkflow(String host, String workflowId) throws Exception {
+        var job = getJob(host, workflowId);
+        if (job != null) {
+            super.purge(host, job.getId());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package jp.co.onehr.workflow.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import io.github.thunderz99.cosmos.condition.Condition;
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.constant.DatabaseErrors;
+import jp.co.onehr.workflow.constant.Status;
+import jp.co.onehr.workflow.dto.Instance;
+import jp.co.onehr.workflow.dto.Task;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.CursorPage;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.service.base.BaseCRUDService;
+import jp.co.onehr.workflow.util.DateUtil;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import static jp.co.onehr.workflow.dto.Task.INSTANCE_ID;
+import static jp.co.onehr.workflow.dto.Task.OPERATOR_ID;
+
+/**
+ * Storage of the pending tasks of operators, one document per operator and instance in the "Tasks" partition
+ */
+public class TaskService extends BaseCRUDService<Task> {
+
+    public static final TaskService singleton = new TaskService();
+
+    private TaskService() {
+        super(Task.class, "Tasks");
+    }
+
+    /**
+     * Update the tasks of the instance after the instance is written
+     * <p>
+     * Only the operators added or removed are written, with one bulk delete and one bulk upsert. When the instance moved to another node,
+     * the tasks of all current operators are written again with a new enteredAt.
+     * Nothing is done if the task projection is disabled.
+     * <p>
+     * The diff is applied as is, the caller checks that the instance is still at the version written,
+     * and uses {@link #rebuild(String, String, Instance)} otherwise.
+     *
+     * @param host
+     * @param existInstance the instance before the write, null for a new instance
+     * @param instance      the instance after the write, at its stored version
+     * @throws Exception
+     */
+    protected void sync(String host, Instance existInstance, Instance instance) throws Exception {
+        if (!ProcessConfiguration.getConfiguration().isTaskProjectionEnabled()) {
+            return;
+        }
+
+        var existOperatorIds = getPendingOperatorIds(existInstance);
+        var operatorIds = getPendingOperatorIds(instance);
+        var nodeChanged = existInstance == null || !StringUtils.equals(existInstance.nodeId, instance.nodeId);
+
+        var removedIds = existOperatorIds.stream()
+                .filter(operatorId -> !operatorIds.contains(operatorId))
+                .map(operatorId -> Task.generateId(operatorId, existInstance.id))
+                .collect(Collectors.toList());
+        if (!removedIds.isEmpty()) {
+            super.bulkPurge(host, Condition.filter("id", removedIds));
+        }
+
+        var enteredAt = DateUtil.nowDateTimeStringUTC();
+        var tasks = operatorIds.stream()
+                .filter(operatorId -> nodeChanged || !existOperatorIds.contains(operatorId))
+                .map(operatorId -> new Task(operatorId, instance, enteredAt))
+                .collect(Collectors.toList());
+        writeTasks(host, tasks);
+    }
+
+    /**
+     * Reconcile the tasks of the instance with the instance as stored
+     * <p>
+     * Used when the tasks may have missed a change of the instance, e.g. when a sync failed after the instance was written.
+     * The tasks of operators that are no longer pending are deleted, the others are written again.
+     * enteredAt is kept for the tasks still on the same node.
+     *
+     * @param host
+     * @param instanceId
+     * @param instance   the instance as stored, null if it does not exist anymore
+     * @throws Exception
+     */
+    protected void rebuild(String host, String instanceId, Instance instance) throws Exception {
+        var operatorIds = getPendingOperatorIds(instance);
+
+        var existTaskMap = new HashMap<String, Task>();
+        var removedIds = new ArrayList<String>();
+        var existTasks = super.iterate(host, Condition.filter(INSTANCE_ID, instanceId), DEFAULT_PAGE_SIZE);
+        while (existTasks.hasNext()) {
+            var task = existTasks.next();
+            if (operatorIds.contains(task.operatorId)) {
+                existTaskMap.put(task.operatorId, task);
+            } else {
+                removedIds.add(task.id);
+            }
+        }
+        if (!removedIds.isEmpty()) {
+            super.bulkPurge(host, Condition.filter("id", removedIds));
+        }
+
+        var now = DateUtil.nowDateTimeStringUTC();
+        var tasks = new ArrayList<Task>(operatorIds.size());
+        for (var operatorId : operatorIds) {
+            var existTask = existTaskMap.get(operatorId);
+            var sameNode = existTask != null && StringUtils.equals(existTask.nodeId, instance.nodeId);
+            tasks.add(new Task(operatorId, instance, sameNode ? existTask.enteredAt : now));
+        }
+        writeTasks(host, tasks);
+    }
+
+    private void writeTasks(String host, List<Task> tasks) throws Exception {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        var result = super.bulkUpsert(host, tasks);
+        var writtenIds = result.successList.stream().map(BaseData::getId).collect(Collectors.toSet());
+        var remainingIds = tasks.stream().map(BaseData::getId).filter(id -> !writtenIds.contains(id)).collect(Collectors.toList());
+        if (!remainingIds.isEmpty()) {
+            throw new WorkflowException(DatabaseErrors.BULK_WRITE_INCOMPLETE, "Failed to write the tasks", remainingIds);
+        }
+    }
+
+    private static Set<String> getPendingOperatorIds(Instance instance) {
+        if (instance == null || instance.status != Status.PROCESSING || instance.expandOperatorIdSet == null) {
+            return Set.of();
+        }
+        return instance.expandOperatorIdSet;
+    }
+
+    /**
+     * Find the tasks of the operator page by page, in the order of their id
+     *
+     * @param host
+     * @param operatorId
+     * @param cursor     the nextCursor of the previous page, null or empty for the first page
+     * @param limit      maximum number of tasks in the page
+     * @return
+     * @throws Exception
+     */
+    protected CursorPage<Task> findByOperator(String host, String operatorId, String cursor, int limit) throws Exception {
+        if (StringUtils.isEmpty(operatorId)) {
+            throw new IllegalArgumentException("operatorId should not be empty");
+        }
+        return super.findPage(host, Condition.filter(OPERATOR_ID, operatorId), cursor, limit);
+    }
+
+    /**
+     * Physically delete all tasks of the instance
+     *
+     * @param host
+     * @param instanceId
+     * @throws Exception
+     */
+    protected void purgeByInstance(String host, String instanceId) throws Exception {
+        purgeByInstances(host, List.of(instanceId));
+    }
+
+    /**
+     * Physically delete all tasks of the instances with bulk deletes
+     *
+     * @param host
+     * @param instanceIds
+     * @throws Exception
+     */
+    protected void purgeByInstances(String host, Collection<String> instanceIds) throws Exception {
+        if (CollectionUtils.isEmpty(instanceIds)) {
+            return;
+        }
+        super.bulkPurge(host, Condition.filter(INSTANCE_ID, new ArrayList<>(instanceIds)));
+    }
+}
@@ -1,10 +1,14 @@
 package jp.co.onehr.workflow.service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import io.github.thunderz99.cosmos.condition.Condition;
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.constant.DatabaseErrors;
 import jp.co.onehr.workflow.constant.WorkflowErrors;
 import jp.co.onehr.workflow.dto.Workflow;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
 import jp.co.onehr.workflow.dto.base.DeletedObject;
 import jp.co.onehr.workflow.dto.param.WorkflowCreationParam;
 import jp.co.onehr.workflow.dto.param.WorkflowUpdatingParam;
@@ -72,40 +76,54 @@ public class WorkflowService extends BaseCRUDService<Workflow> {
     @Override
     protected DeletedObject purge(String host, String id) throws Exception {
 
-        var definitions = DefinitionService.singleton.find(host, Condition.filter("workflowId", id).fields("id"));
-        for (var definition : definitions) {
+        // read page by page, so the number of definitions and instances is not limited by the query limit
+        var definitions = DefinitionService.singleton.iterate(host, Condition.filter("workflowId", id).fields("id"), DEFAULT_PAGE_SIZE);
+        while (definitions.hasNext()) {
+            var definition = definitions.next();
             if (StringUtils.isNotEmpty(definition.getId())) {
                 DefinitionService.singleton.purge(host, definition.getId());
             }
         }
 
-        var instances = InstanceService.singleton.find(host, Condition.filter("workflowId", id).fields("id"));
-        for (var instance : instances) {
+        var instances = InstanceService.singleton.iterate(host, Condition.filter("workflowId", id).fields("id"), DEFAULT_PAGE_SIZE);
+        while (instances.hasNext()) {
+            var instance = instances.next();
             if (StringUtils.isNotEmpty(instance.getId())) {
                 InstanceService.singleton.purge(host, instance.getId());
             }
         }
 
+        RebindingJobService.singleton.purgeByWorkflow(host, id);
+
         return super.purge(host, id);
     }
 
     @Override
     protected DeletedObject delete(String host, String id) throws Exception {
+        return delete(host, id, null);
+    }
 
-        var definitions = DefinitionService.singleton.find(host, Condition.filter("workflowId", id).fields("id"));
-        for (var definition : definitions) {
-            if (StringUtils.isNotEmpty(definition.getId())) {
-                DefinitionService.singleton.delete(host, definition.getId());
-            }
-        }
-
-        var instances = InstanceService.singleton.find(host, Condition.filter("workflowId", id).fields("id"));
-        for (var instance : instances) {
-            if (StringUtils.isNotEmpty(instance.getId())) {
-                InstanceService.singleton.delete(host, instance.getId());
-            }
+    /**
+     * Move the workflow and its definitions and instances to the recycle bin
+     * <p>
+     * The definitions and instances are moved chunk by chunk with bulk operations, see {@link ProcessConfiguration#configureBulkDelete}.
+     * If some of them could not be moved, the workflow is kept, so deleting it again resumes the deletion.
+     *
+     * @param host
+     * @param id
+     * @param progressListener called with the number of definitions and instances processed after each chunk, may be null
+     * @return
+     * @throws Exception
+     */
+    protected DeletedObject delete(String host, String id, Consumer<BulkDeleteSummary> progressListener) throws Exception {
+        var summary = new BulkDeleteSummary();
+        DefinitionService.singleton.bulkDelete(host, Condition.filter("workflowId", id), summary, progressListener);
+        InstanceService.singleton.bulkDelete(host, Condition.filter("workflowId", id), summary, progressListener);
+
+        if (summary.failureCount > 0) {
+            throw new WorkflowException(DatabaseErrors.BULK_DELETE_INCOMPLETE,
+                    "Failed to move " + summary.failureCount + " definitions and instances of the workflow to the recycle bin", summary.failures);
         }
-
         return super.delete(host, id);
     }
 
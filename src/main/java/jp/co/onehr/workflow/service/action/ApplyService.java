@@ -6,7 +6,6 @@ import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.param.ActionExtendParam;
 import jp.co.onehr.workflow.service.ActionStrategy;
-import jp.co.onehr.workflow.service.NodeService;
 
 /**
  * Processing of the "Apply" action
@@ -14,7 +13,7 @@ import jp.co.onehr.workflow.service.NodeService;
 public class ApplyService implements ActionStrategy {
     @Override
     public ActionResult execute(Definition definition, Instance instance, String operatorId, ActionExtendParam extendParam) {
-        var firstNode = NodeService.getFirstNode(definition);
+        var firstNode = definition.getCompiledDefinition().getFirstNode();
         instance.nodeId = firstNode.nodeId;
         instance.status = Status.PROCESSING;
         return new ActionResult();
@@ -9,7 +9,6 @@ import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.param.ActionExtendParam;
 import jp.co.onehr.workflow.exception.WorkflowException;
 import jp.co.onehr.workflow.service.ActionStrategy;
-import jp.co.onehr.workflow.service.NodeService;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -18,7 +17,7 @@ public class BackService implements ActionStrategy {
 
     @Override
     public ActionResult execute(Definition definition, Instance instance, String operatorId, ActionExtendParam extendParam) {
-        var currentNode = NodeService.getNodeByNodeId(definition, instance.nodeId);
+        var currentNode = definition.getCompiledDefinition().getNode(instance.nodeId);
         return currentNode.getApprovalType().backExecute(definition, instance, currentNode, operatorId, extendParam);
     }
 
@@ -49,18 +48,18 @@ public class BackService implements ActionStrategy {
      */
     private void moveToPreviousNode(Definition definition, Instance instance, String backStepId) {
 
-        var nodes = NodeService.getAllNodes(definition);
-        var currentNodeIndex = NodeService.getNodeIndexByNodeId(nodes, instance.nodeId);
+        var compiled = definition.getCompiledDefinition();
+        var currentNodeIndex = compiled.getNodeIndex(instance.nodeId);
 
         if (StringUtils.isBlank(backStepId)) {
-            var backNode = nodes.get(currentNodeIndex - 1);
+            var backNode = compiled.getNode(currentNodeIndex - 1);
             instance.nodeId = backNode.nodeId;
         } else {
-            var backNodeIndex = NodeService.getNodeIndexByNodeId(definition, backStepId);
+            var backNodeIndex = compiled.getNodeIndex(backStepId);
             if (backNodeIndex >= currentNodeIndex) {
                 throw new WorkflowException(WorkflowErrors.BACK_NODE_INVALID, "Back is only allowed to go back to the previous nodes before the current node", instance.id);
             }
-            var backNode = NodeService.getNodeByNodeId(definition, backStepId);
+            var backNode = compiled.getNode(backNodeIndex);
             instance.nodeId = backNode.nodeId;
         }
     }
@@ -72,7 +71,7 @@ public class BackService implements ActionStrategy {
      * @param instance
      */
     private void moveToFirstNode(Definition definition, Instance instance) {
-        var firstNode = NodeService.getFirstNode(definition);
+        var firstNode = definition.getCompiledDefinition().getFirstNode();
         instance.nodeId = firstNode.nodeId;
     }
 
@@ -6,14 +6,13 @@ import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.param.ActionExtendParam;
 import jp.co.onehr.workflow.service.ActionStrategy;
-import jp.co.onehr.workflow.service.NodeService;
 
 public class CancelService implements ActionStrategy {
 
     @Override
     public ActionResult execute(Definition definition, Instance instance, String operatorId, ActionExtendParam extendParam) {
         if (definition.returnToStartNode) {
-            var startNode = NodeService.getStartNode(definition);
+            var startNode = definition.getCompiledDefinition().getStartNode();
             instance.nodeId = startNode.nodeId;
         }
         instance.status = Status.CANCELED;
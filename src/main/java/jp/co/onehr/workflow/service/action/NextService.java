@@ -5,14 +5,13 @@ import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.param.ActionExtendParam;
 import jp.co.onehr.workflow.service.ActionStrategy;
-import jp.co.onehr.workflow.service.NodeService;
 
 
 public class NextService implements ActionStrategy {
 
     @Override
     public ActionResult execute(Definition definition, Instance instance, String operatorId, ActionExtendParam extendParam) {
-        var currentNode = NodeService.getNodeByNodeId(definition, instance.nodeId);
+        var currentNode = definition.getCompiledDefinition().getNode(instance.nodeId);
         return currentNode.getApprovalType().nextExecute(definition, instance, currentNode, operatorId, extendParam);
     }
 
@@ -23,10 +22,10 @@ public class NextService implements ActionStrategy {
      * @param instance
      */
     protected void handleSimpleNext(Definition definition, Instance instance) {
-        var nodes = NodeService.getAllNodes(definition);
-        var currentNodeIndex = NodeService.getNodeIndexByNodeId(nodes, instance.nodeId);
+        var compiled = definition.getCompiledDefinition();
+        var currentNodeIndex = compiled.getNodeIndex(instance.nodeId);
 
-        var nextNode = nodes.get(currentNodeIndex + 1);
+        var nextNode = compiled.getNode(currentNodeIndex + 1);
         instance.nodeId = nextNode.nodeId;
     }
 }
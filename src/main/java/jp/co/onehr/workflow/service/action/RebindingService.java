@@ -5,7 +5,6 @@ import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.param.ActionExtendParam;
 import jp.co.onehr.workflow.service.ActionStrategy;
-import jp.co.onehr.workflow.service.NodeService;
 
 
 /**
@@ -15,7 +14,7 @@ public class RebindingService implements ActionStrategy {
 
     @Override
     public ActionResult execute(Definition definition, Instance instance, String operatorId, ActionExtendParam extendParam) {
-        var firstNode = NodeService.getFirstNode(definition);
+        var firstNode = definition.getCompiledDefinition().getFirstNode();
         instance.nodeId = firstNode.nodeId;
         return new ActionResult();
     }
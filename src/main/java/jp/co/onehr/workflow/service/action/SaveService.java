@@ -8,7 +8,6 @@ import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.param.ActionExtendParam;
 import jp.co.onehr.workflow.service.ActionStrategy;
-import jp.co.onehr.workflow.service.NodeService;
 import org.apache.commons.collections4.CollectionUtils;
 
 
@@ -18,7 +17,7 @@ public class SaveService implements ActionStrategy {
     public ActionResult execute(Definition definition, Instance instance, String operatorId, ActionExtendParam extendParam) {
         var actionResult = new ActionResult();
 
-        var currentNode = NodeService.getNodeByNodeId(definition, instance.nodeId);
+        var currentNode = definition.getCompiledDefinition().getNode(instance.nodeId);
 
         InstanceContext instanceContext = null;
 
@@ -1,25 +1,43 @@
 package jp.co.onehr.workflow.service.base;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.azure.cosmos.models.CosmosItemOperation;
 import com.google.common.collect.Sets;
 import io.github.thunderz99.cosmos.Cosmos;
 import io.github.thunderz99.cosmos.CosmosDocument;
 import io.github.thunderz99.cosmos.CosmosException;
+import io.github.thunderz99.cosmos.condition.Aggregate;
 import io.github.thunderz99.cosmos.condition.Condition;
+import io.github.thunderz99.cosmos.condition.SubConditionType;
 import io.github.thunderz99.cosmos.dto.BulkPatchOperation;
 import io.github.thunderz99.cosmos.dto.CosmosBulkResult;
 import io.github.thunderz99.cosmos.util.JsonUtil;
 import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.constant.DatabaseErrors;
+import jp.co.onehr.workflow.dao.write.VersionedBulkResult;
+import jp.co.onehr.workflow.dao.write.VersionedPatch;
+import jp.co.onehr.workflow.dao.write.VersionedWriter;
+import jp.co.onehr.workflow.dao.write.VersionedWriterBuilder;
 import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
 import jp.co.onehr.workflow.dto.base.BulkResult;
+import jp.co.onehr.workflow.dto.base.CursorPage;
 import jp.co.onehr.workflow.dto.base.DeletedObject;
 import jp.co.onehr.workflow.dto.base.UniqueKeyCapable;
 import jp.co.onehr.workflow.exception.WorkflowException;
 import jp.co.onehr.workflow.util.DateUtil;
+import jp.co.onehr.workflow.util.InfraUtil;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -30,6 +48,11 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
 
     public static final int DEFAULT_RECYCLE_LIFETIME = 90 * 24 * 60 * 60;
 
+    /**
+     * Number of documents read per query when iterating over all documents matching a condition
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1_000;
+
     public static final String ORIGINAL_DATA = "originalData";
     public static final String CREATED_AT = "createdAt";
     public static final String DELETED_AT = "deletedAt";
@@ -40,6 +63,12 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
      */
     public static final Set<String> CONSTRAINT_KEYS = Sets.newLinkedHashSet();
 
+    /**
+     * key: dbType
+     * value: the writer of the conditional writes
+     */
+    static final Map<String, VersionedWriter> versionedWriterMap = new ConcurrentHashMap<>();
+
     static {
         CONSTRAINT_KEYS.addAll(UniqueKeyCapable.uniqueKeys);
         CONSTRAINT_KEYS.addAll(Set.of("id", Cosmos.getDefaultPartitionKey()));
@@ -88,6 +117,7 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
 
         data.createdAt = DateUtil.nowDateTimeStringUTC();
         data.updatedAt = data.createdAt;
+        data.dataVersion = 1;
 
         var map = JsonUtil.toMap(data);
         map = beforeMutation(data, map);
@@ -125,7 +155,7 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
      */
     protected T read(String host, String id) throws Exception {
         var db = getDatabase(host);
-        CosmosDocument cd = db.read(getColl(host), id, getPartition());
+        CosmosDocument cd = queryRecoveringSchema(host, () -> db.read(getColl(host), id, getPartition()));
         try {
             return cd.toObject(classOfT);
         } catch (Exception e) {
@@ -151,7 +181,7 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
             return null;
         }
         var db = getDatabase(host);
-        var ret = db.readSuppressing404(getColl(host), id, partition);
+        var ret = queryRecoveringSchema(host, () -> db.readSuppressing404(getColl(host), id, partition));
 
         if (ret == null) {
             return null;
@@ -164,7 +194,22 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
         }
     }
 
+    /**
+     * Update the whole document
+     * <p>
+     * If the data carries a version (read from the database), the update is conditional:
+     * the database writes it only if the document is still at that version, without reading it first,
+     * and it fails with {@link DatabaseErrors#VERSION_CONFLICT} when the document was modified after it was read.
+     *
+     * @param host
+     * @param data
+     * @return
+     * @throws Exception
+     */
     protected T update(String host, T data) throws Exception {
+        if (data.dataVersion > 0 && StringUtils.isNotEmpty(data.getId())) {
+            return updateIfVersion(host, data);
+        }
 
         T existData = null;
         if (StringUtils.isNotEmpty(data.getId())) {
@@ -174,12 +219,49 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
         data.createdAt = StringUtils.isNotEmpty(existData.createdAt) ? existData.createdAt
                 : DateUtil.nowDateTimeStringUTC();
         data.updatedAt = DateUtil.nowDateTimeStringUTC();
+        data.dataVersion = existData.dataVersion + 1;
 
         var map = JsonUtil.toMap(data);
         map = beforeMutation(data, map);
         return updateMap(host, map);
     }
 
+    /**
+     * Replace the document only if it is still at the version of the data
+     *
+     * @param host
+     * @param data data read from the database, carrying its version
+     * @return
+     * @throws Exception
+     */
+    private T updateIfVersion(String host, T data) throws Exception {
+        var id = StringUtils.strip(data.getId());
+        var expectedVersion = data.dataVersion;
+
+        if (StringUtils.isEmpty(data.createdAt)) {
+            data.createdAt = DateUtil.nowDateTimeStringUTC();
+        }
+        data.updatedAt = DateUtil.nowDateTimeStringUTC();
+        data.dataVersion = expectedVersion + 1;
+
+        var map = JsonUtil.toMap(data);
+        map = stripId(beforeMutation(data, map));
+
+        Map<String, Object> written;
+        try {
+            written = getVersionedWriter(host).replaceIfVersion(host, getColl(host), getPartition(), map, expectedVersion);
+        } catch (CosmosException e) {
+            data.dataVersion = expectedVersion;
+            throw wrapConflictError(e, map);
+        }
+        if (written == null) {
+            // the data is left at the version it was read
+            data.dataVersion = expectedVersion;
+            throw notWrittenError(host, id, expectedVersion);
+        }
+        return toObject(written);
+    }
+
     protected T updateMap(String host, Map<String, Object> map) throws Exception {
         map = stripId(map);
         var db = getDatabase(host);
@@ -243,6 +325,92 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
         }
     }
 
+    /**
+     * Applies a partial update to one document only if it was not modified since it was read.
+     *
+     * <p>The patch sets the version to {@code expectedVersion + 1}, and the database applies it
+     * only if the document is at {@code expectedVersion}, in the same write.
+     * The operations must leave one slot for the version within {@link PatchOperations#LIMIT}.</p>
+     *
+     * @param host the host used to resolve the registered database and collection
+     * @param id the document ID
+     * @param operations the patch operations to apply
+     * @param expectedVersion the version of the document when it was read
+     * @return the document returned by the database, converted to {@code T}
+     * @throws WorkflowException with {@link DatabaseErrors#VERSION_CONFLICT} if the document was modified by another request
+     * @throws Exception if the database cannot apply the patch
+     */
+    public T patch(String host, String id, PatchOperations operations, long expectedVersion) throws Exception {
+        if (StringUtils.isBlank(id)) {
+            throw new IllegalArgumentException("id should not be empty");
+        }
+        if (operations == null) {
+            throw new IllegalArgumentException("PatchOperations operations should not be null");
+        }
+
+        operations.set("/" + BaseData.VERSION, expectedVersion + 1);
+        var written = getVersionedWriter(host).patchIfVersion(host, getColl(host), getPartition(), StringUtils.strip(id), operations, expectedVersion);
+        if (written == null) {
+            throw notWrittenError(host, StringUtils.strip(id), expectedVersion);
+        }
+        return toObject(written);
+    }
+
+    /**
+     * Applies a separate set of patch operations to each document, each only if the document was not modified since it was read.
+     *
+     * <p>Each patch sets the version to its expected version + 1. The request is non-transactional,
+     * the result of each patch is attributed to the id of its document, see {@link VersionedBulkResult}.</p>
+     *
+     * @param host
+     * @param patches
+     * @return
+     * @throws Exception if the patches cannot be submitted to the database
+     */
+    protected VersionedBulkResult bulkPatchIfVersion(String host, Collection<VersionedPatch> patches) throws Exception {
+        if (CollectionUtils.isEmpty(patches)) {
+            return new VersionedBulkResult();
+        }
+        for (var patch : patches) {
+            patch.operations.set("/" + BaseData.VERSION, patch.expectedVersion + 1);
+        }
+        return getVersionedWriter(host).bulkPatchIfVersion(host, getColl(host), getPartition(), new ArrayList<>(patches));
+    }
+
+    /**
+     * Convert a document returned by the database
+     *
+     * @param map
+     * @return
+     */
+    protected T toObject(Map<String, Object> map) {
+        try {
+            return JsonUtil.fromMap(map, classOfT);
+        } catch (Exception e) {
+            throw new WorkflowException(DatabaseErrors.JSON_FROM_DB_PROCESS_ERROR);
+        }
+    }
+
+    /**
+     * The error of a conditional write that did not match the document
+     * <p>
+     * Only read when the write failed: a missing document fails as the read does, otherwise it is a version conflict.
+     */
+    private Exception notWrittenError(String host, String id, long expectedVersion) throws Exception {
+        var current = this.read(host, id);
+        return versionConflictError(id, expectedVersion, current.dataVersion);
+    }
+
+    static VersionedWriter getVersionedWriter(String host) {
+        var dbType = InfraUtil.getDbTypeByHost(host);
+        return versionedWriterMap.computeIfAbsent(dbType, type -> new VersionedWriterBuilder().withDatabaseType(type).build());
+    }
+
+    static WorkflowException versionConflictError(String id, long expectedVersion, long currentVersion) {
+        return new WorkflowException(DatabaseErrors.VERSION_CONFLICT,
+                "The document was modified by another request. expected version: " + expectedVersion + ", current version: " + currentVersion, id);
+    }
+
     /**
      * Applies a separate set of patch operations to each document in a bulk request.
      *
@@ -298,6 +466,40 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
         return collectBulkResult(db.bulkPatch(getColl(host), data, getPartition()));
     }
 
+    /**
+     * Upsert the documents in one non-transactional bulk request
+     * <p>
+     * The stored documents are not read: updatedAt is set to now, createdAt and the version are written as given,
+     * createdAt is set to now if it is empty.
+     * Use it for documents whose id determines their content, so writing them again has the same result.
+     *
+     * @param host
+     * @param dataList
+     * @return the written documents, retry candidates, and fatal errors
+     * @throws Exception if the bulk request cannot be submitted
+     */
+    protected BulkResult<T> bulkUpsert(String host, List<T> dataList) throws Exception {
+        if (CollectionUtils.isEmpty(dataList)) {
+            return new BulkResult<>();
+        }
+
+        var now = DateUtil.nowDateTimeStringUTC();
+        var maps = new ArrayList<Map<String, Object>>(dataList.size());
+        for (var data : dataList) {
+            if (StringUtils.isEmpty(data.getId())) {
+                data.setId(generateId(data));
+            }
+            if (StringUtils.isEmpty(data.createdAt)) {
+                data.createdAt = now;
+            }
+            data.updatedAt = now;
+            maps.add(stripId(beforeMutation(data, JsonUtil.toMap(data))));
+        }
+
+        var db = getDatabase(host);
+        return collectBulkResult(db.bulkUpsert(getColl(host), maps, getPartition()));
+    }
+
     /**
      * Converts the SDK bulk result into the result type exposed by this library.
      *
@@ -334,9 +536,11 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
 
         if (existData == null) {
             data.createdAt = DateUtil.nowDateTimeStringUTC();
+            data.dataVersion = 1;
         } else {
             data.createdAt = StringUtils.isNotEmpty(existData.createdAt) ? existData.createdAt
                     : DateUtil.nowDateTimeStringUTC();
+            data.dataVersion = existData.dataVersion + 1;
         }
 
         data.updatedAt = DateUtil.nowDateTimeStringUTC();
@@ -397,6 +601,21 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
         if (oldMap == null) {
             return null;
         }
+        upsertRaw(host, toRecycle(id, oldMap), true);
+        // hard delete
+        purge(host, StringUtils.strip(id));
+
+        return JsonUtil.fromMap(oldMap, this.classOfT);
+    }
+
+    /**
+     * Generate the copy of the origin data in recycle bin
+     *
+     * @param id
+     * @param oldMap origin data
+     * @return
+     */
+    private Map<String, Object> toRecycle(String id, Map<String, Object> oldMap) {
         var recycle = new HashMap<String, Object>();
         recycle.put("ttl", getTtlLifeTime());
         recycle.put(ORIGINAL_DATA, oldMap);
@@ -407,12 +626,253 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
         recycle.put(UniqueKeyCapable.UNIQUE_KEY_3, id);
 
         recycle.put(DELETED_AT, DateUtil.nowDateTimeStringUTC());
+        return recycle;
+    }
 
-        upsertRaw(host, recycle, true);
-        // hard delete
-        purge(host, StringUtils.strip(id));
+    /**
+     * Soft delete all documents matching the condition, chunk by chunk with bulk operations
+     * <p>
+     * The ids are read page by page and split into chunks of {@link ProcessConfiguration#getBulkDeleteChunkSize()},
+     * each chunk is moved to the recycle bin by {@link #bulkDelete(String, List)}.
+     * At most {@link ProcessConfiguration#getBulkDeleteParallelism()} chunks are processed concurrently on {@link ProcessConfiguration#getBulkExecutor()},
+     * so only those chunks are held in memory, regardless of the number of documents.
+     * When a chunk fails, the chunks not started yet are skipped and the running ones are awaited before the exception is thrown.
+     * The documents that could not be moved are left in place and added to the summary, deleting them again resumes the deletion.
+     *
+     * @param host
+     * @param cond             the filter of the documents to delete
+     * @param summary          summary to add the results to
+     * @param progressListener called with the summary after each chunk, may be null
+     * @throws Exception
+     */
+    protected void bulkDelete(String host, Condition cond, BulkDeleteSummary summary, Consumer<BulkDeleteSummary> progressListener) throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var chunkSize = configuration.getBulkDeleteChunkSize();
+        var parallelism = configuration.getBulkDeleteParallelism();
 
-        return JsonUtil.fromMap(oldMap, this.classOfT);
+        var idCond = Condition.filter();
+        idCond.filter.putAll(cond.filter);
+        idCond.fields("id");
+
+        var executor = configuration.getBulkExecutor();
+        // set when the deletion fails, the chunks not started yet are skipped
+        var aborted = new AtomicBoolean();
+        var futures = new ArrayDeque<FutureTask<BulkDeleteChunk>>();
+        try {
+            var ids = iterate(host, idCond, chunkSize);
+            var chunk = new ArrayList<String>(chunkSize);
+            while (ids.hasNext()) {
+                chunk.add(ids.next().getId());
+                if (chunk.size() < chunkSize && ids.hasNext()) {
+                    continue;
+                }
+                // the executor is shared, at most parallelism chunks are submitted at a time
+                if (futures.size() >= parallelism) {
+                    addBulkDeleteChunk(getBulkDeleteChunk(futures.poll()), summary, progressListener);
+                }
+                var chunkIds = List.copyOf(chunk);
+                var task = new FutureTask<>(() -> aborted.get()
+                        ? new BulkDeleteChunk(List.of(), Map.of())
+                        : new BulkDeleteChunk(chunkIds, bulkDelete(host, chunkIds)));
+                futures.add(task);
+                executor.execute(task);
+                chunk.clear();
+            }
+            while (!futures.isEmpty()) {
+                addBulkDeleteChunk(getBulkDeleteChunk(futures.poll()), summary, progressListener);
+            }
+        } catch (Exception e) {
+            // no chunk is moved after the failure is thrown, the running chunks are awaited and added to the summary
+            aborted.set(true);
+            awaitBulkDeleteChunks(futures, summary);
+            throw e;
+        }
+    }
+
+    private static BulkDeleteChunk getBulkDeleteChunk(Future<BulkDeleteChunk> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the chunks submitted before a failure, the chunks that failed too are ignored
+     */
+    private void awaitBulkDeleteChunks(Collection<FutureTask<BulkDeleteChunk>> futures, BulkDeleteSummary summary) {
+        for (var future : futures) {
+            try {
+                addBulkDeleteChunk(future.get(), summary, null);
+            } catch (ExecutionException e) {
+                log.warn("Bulk delete chunk failed after another chunk failed. error:{}", String.valueOf(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add the results of a chunk to the summary, in the order the chunks were read
+     */
+    private static void addBulkDeleteChunk(BulkDeleteChunk chunk, BulkDeleteSummary summary, Consumer<BulkDeleteSummary> progressListener) {
+        summary.total += chunk.ids().size();
+        summary.deletedCount += chunk.ids().size() - chunk.failures().size();
+        chunk.failures().forEach(summary::addFailure);
+        if (progressListener != null) {
+            progressListener.accept(summary);
+        }
+    }
+
+    /**
+     * A chunk of a bulk deletion and the documents of it that could not be moved to the recycle bin
+     */
+    private record BulkDeleteChunk(List<String> ids, Map<String, String> failures) {
+    }
+
+    /**
+     * Soft delete the documents of the ids with bulk operations
+     * <p>
+     * The documents are read with one query, copied to the recycle bin with one bulk upsert,
+     * and the originals whose copy was written are removed with one bulk delete.
+     * Ids that do not exist are ignored. {@link #afterBulkDelete} is called with the ids of the removed documents.
+     *
+     * @param host
+     * @param ids
+     * @return id -> reason, the documents that could not be moved to the recycle bin
+     * @throws Exception
+     */
+    protected Map<String, String> bulkDelete(String host, List<String> ids) throws Exception {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Map.of();
+        }
+        var db = getDatabase(host);
+        var coll = getColl(host);
+
+        var oldMaps = db.find(coll, Condition.filter("id", ids).limit(ids.size()), getPartition()).toMap();
+        if (oldMaps.isEmpty()) {
+            return Map.of();
+        }
+
+        var recycles = oldMaps.stream()
+                .map(oldMap -> toRecycle(String.valueOf(oldMap.get("id")), oldMap))
+                .collect(Collectors.toList());
+        var upsertResult = db.bulkUpsert(coll, recycles, getRecyclePartition());
+        var copiedIds = upsertResult.successList.stream()
+                .map(document -> String.valueOf(document.toMap().get("id")))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        var failedIds = recycles.stream()
+                .map(recycle -> String.valueOf(recycle.get("id")))
+                .filter(id -> !copiedIds.contains(id))
+                .collect(Collectors.toList());
+        var failures = new LinkedHashMap<String, String>();
+        var copyError = getBulkError(upsertResult, failedIds.size(), "The document could not be copied to the recycle bin");
+        failedIds.forEach(id -> failures.put(id, copyError));
+        if (copiedIds.isEmpty()) {
+            return failures;
+        }
+
+        var deleteIds = new ArrayList<>(copiedIds);
+        var remainingIds = purgeChunk(host, deleteIds);
+        failures.putAll(remainingIds);
+
+        var deletedIds = deleteIds.stream().filter(id -> !remainingIds.containsKey(id)).collect(Collectors.toList());
+        if (!deletedIds.isEmpty()) {
+            afterBulkDelete(host, deletedIds);
+        }
+        return failures;
+    }
+
+    /**
+     * Called after a chunk of documents is moved to the recycle bin by a bulk deletion
+     * <p>
+     * Override to clean up the data depending on the documents, as {@link #purge} does for a single document.
+     *
+     * @param host
+     * @param ids the ids of the removed documents
+     * @throws Exception
+     */
+    protected void afterBulkDelete(String host, List<String> ids) throws Exception {
+    }
+
+    /**
+     * Physically delete all documents matching the condition, chunk by chunk with bulk deletes
+     *
+     * @param host
+     * @param cond the filter of the documents to delete
+     * @throws Exception
+     */
+    protected void bulkPurge(String host, Condition cond) throws Exception {
+        var idCond = Condition.filter();
+        idCond.filter.putAll(cond.filter);
+        idCond.fields("id");
+
+        var ids = iterate(host, idCond, DEFAULT_PAGE_SIZE);
+        var chunk = new ArrayList<String>();
+        while (ids.hasNext()) {
+            chunk.add(ids.next().getId());
+            if (chunk.size() < DEFAULT_PAGE_SIZE && ids.hasNext()) {
+                continue;
+            }
+            var remainingIds = purgeChunk(host, chunk);
+            if (!remainingIds.isEmpty()) {
+                throw new WorkflowException(DatabaseErrors.BULK_DELETE_INCOMPLETE, "Failed to delete the documents of " + getPartition(), remainingIds);
+            }
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Physically delete the documents of the ids with one bulk delete
+     * <p>
+     * A bulk delete returns no document, so when it reports an error the documents still existing are read back,
+     * a document already deleted by another request is not an error.
+     *
+     * @param host
+     * @param ids
+     * @return id -> reason, the documents still existing
+     * @throws Exception
+     */
+    private Map<String, String> purgeChunk(String host, List<String> ids) throws Exception {
+        var db = getDatabase(host);
+        var coll = getColl(host);
+
+        var deleteResult = db.bulkDelete(coll, ids, getPartition());
+        if (deleteResult.retryList.isEmpty() && deleteResult.fatalList.isEmpty()) {
+            return Map.of();
+        }
+
+        var remainingIds = new LinkedHashMap<String, String>();
+        var remainingCond = Condition.filter("id", ids).fields("id").limit(ids.size());
+        var remainings = db.find(coll, remainingCond, getPartition()).toMap();
+        var deleteError = getBulkError(deleteResult, remainings.size(), "The document could not be deleted");
+        for (var remaining : remainings) {
+            remainingIds.put(String.valueOf(remaining.get("id")), deleteError);
+        }
+        return remainingIds;
+    }
+
+    /**
+     * The reason of the failed documents of a bulk request
+     * <p>
+     * The errors of a bulk request do not tell which document they belong to,
+     * an error is only reported when it is the only error of the only failed document.
+     *
+     * @param bulkResult
+     * @param failedCount number of documents that failed
+     * @param defaultMessage
+     * @return
+     */
+    private static String getBulkError(CosmosBulkResult bulkResult, int failedCount, String defaultMessage) {
+        if (failedCount == 1 && bulkResult.fatalList.size() == 1) {
+            return bulkResult.fatalList.get(0).getMessage();
+        }
+        return defaultMessage;
     }
 
     /**
@@ -447,18 +907,156 @@ public abstract class BaseCRUDService<T extends BaseData> extends BaseNoSqlServi
             return null;
         }
         var db = getDatabase(host);
-        var ret = db.readSuppressing404(getColl(host), id, partition);
+        var ret = queryRecoveringSchema(host, () -> db.readSuppressing404(getColl(host), id, partition));
 
         return ret == null ? null : ret.toMap();
     }
 
     protected List<T> find(String host, Condition cond) throws Exception {
+        return findProjection(host, cond, classOfT);
+    }
+
+    /**
+     * Find the documents matching the condition and read them as a projection class
+     * <p>
+     * The fields of the condition should select only the fields of the projection,
+     * so the rest of the documents is neither transferred nor deserialized.
+     *
+     * @param host
+     * @param cond
+     * @param classOfR the projection class
+     * @param <R>
+     * @return
+     * @throws Exception
+     */
+    protected <R> List<R> findProjection(String host, Condition cond, Class<R> classOfR) throws Exception {
         var db = getDatabase(host);
         if (CollectionUtils.isEmpty(cond.sort)) {
             cond.sort(getDefaultSort().toArray(new String[]{}));
         }
 
-        return db.find(getColl(host), cond, getPartition()).toList(classOfT);
+        return queryRecoveringSchema(host, () -> db.find(getColl(host), cond, getPartition()).toList(classOfR));
+    }
+
+    /**
+     * Aggregate the documents matching the condition in the database, no documents are transferred
+     * <p>
+     * Pushed down as a GROUP BY on postgres, an aggregation pipeline on mongodb and an aggregate query on cosmosdb.
+     *
+     * @param host
+     * @param aggregate the aggregate functions and the group by fields
+     * @param cond      the filter of the documents to aggregate
+     * @return one map per group, containing the group by fields and the results of the functions
+     * @throws Exception
+     */
+    protected List<Map<String, Object>> aggregate(String host, Aggregate aggregate, Condition cond) throws Exception {
+        var db = getDatabase(host);
+        return queryRecoveringSchema(host, () -> db.aggregate(getColl(host), aggregate, cond, getPartition()).toMap());
+    }
+
+    /**
+     * Find one page of the documents matching the condition, in the order of their id
+     * <p>
+     * Keyset paging on id: a page is read by "id > cursor", so its cost does not depend on its position,
+     * and documents deleted between two pages do not shift the following pages.
+     * The sort, offset and limit of the condition are ignored.
+     *
+     * @param host
+     * @param cond   the filter and fields of the query
+     * @param cursor the nextCursor of the previous page, null or empty for the first page
+     * @param limit  maximum number of documents in the page
+     * @return
+     * @throws Exception
+     */
+    protected CursorPage<T> findPage(String host, Condition cond, String cursor, int limit) throws Exception {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be greater than 0");
+        }
+
+        var pageCond = Condition.filter();
+        pageCond.filter.putAll(cond.filter);
+        if (StringUtils.isNotEmpty(cursor)) {
+            // as a sub condition, so it does not collide with an "id" filter of the condition
+            pageCond.filter.put(SubConditionType.AND + " keysetCursor", List.of(Condition.filter("id >", cursor)));
+        }
+        if (CollectionUtils.isNotEmpty(cond.fields)) {
+            // the id is needed for the cursor
+            var fields = new LinkedHashSet<String>(cond.fields);
+            fields.add("id");
+            pageCond.fields(fields.toArray(new String[]{}));
+        }
+
+        // one more document is read to know whether there is a next page
+        var items = find(host, pageCond.sort("id", "ASC").limit(limit + 1));
+
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = new ArrayList<>(items.subList(0, limit));
+            nextCursor = items.get(limit - 1).id;
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+
+    /**
+     * Iterate over all documents matching the condition, reading them page by page with {@link #findPage}
+     * <p>
+     * Only one page is held in memory at a time. A page is read when the previous one is consumed,
+     * an exception while reading a page is thrown from hasNext, wrapped in an IllegalStateException if it is checked.
+     *
+     * @param host
+     * @param cond     the filter and fields of the query
+     * @param pageSize number of documents read per query
+     * @return
+     */
+    protected Iterator<T> iterate(String host, Condition cond, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize should be greater than 0");
+        }
+
+        return new Iterator<>() {
+            private Iterator<T> current = Collections.emptyIterator();
+            private String cursor;
+            private boolean lastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && !lastPage) {
+                    CursorPage<T> page;
+                    try {
+                        page = findPage(host, cond, cursor, pageSize);
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to read the next page of " + getPartition(), e);
+                    }
+                    current = page.items.iterator();
+                    cursor = page.nextCursor;
+                    lastPage = !page.hasNext();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Stream all documents matching the condition, see {@link #iterate}
+     *
+     * @param host
+     * @param cond     the filter and fields of the query
+     * @param pageSize number of documents read per query
+     * @return
+     */
+    protected Stream<T> stream(String host, Condition cond, int pageSize) {
+        var spliterator = Spliterators.spliteratorUnknownSize(iterate(host, cond, pageSize), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
     }
 
     protected String generateId(T data) {
@@ -2,7 +2,10 @@ package jp.co.onehr.workflow.service.base;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import io.github.thunderz99.cosmos.CosmosDatabase;
 import jp.co.onehr.workflow.ProcessConfiguration;
@@ -36,10 +39,10 @@ public abstract class BaseNoSqlService<T> {
 
     /**
      * key: host
-     * value: schemaInitialized
-     * flag to record whether the schema has been initialized
+     * value: schema initialization
+     * completed when the tables and indexes of the partition and the recycle partition have been created
      */
-    protected final ConcurrentHashMap<String, Boolean> schemaInitializedMap = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, CompletableFuture<Void>> schemaInitializedMap = new ConcurrentHashMap<>();
 
     public BaseNoSqlService(Class<T> classOfT) {
         this.classOfT = classOfT;
@@ -112,21 +115,129 @@ public abstract class BaseNoSqlService<T> {
             throw new WorkflowException(WorkflowErrors.WORKFLOW_ENGINE_REGISTER_INVALID, "Failed to retrieve the name of the collection.", host);
         }
 
-        // Ensure that each host has initialized the schema.
-        if (schemaInitializedMap.putIfAbsent(host, true) == null) {
-            log.info("host:{}, Database started creating table and index, table name: {}.", host, partition);
+        // Ensure that each host has initialized the schema. Concurrent first callers wait for the same initialization.
+        var initialized = schemaInitializedMap.get(host);
+        if (initialized == null || !initialized.isDone()) {
+            try {
+                initSchema(host, Runnable::run).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
 
-            // for partition table
-            DBSchemaService.singleton.createSchemaIfNotExist(host, this.getPartition());
-            // for recycle table
-            DBSchemaService.singleton.createSchemaIfNotExist(host, this.getRecyclePartition());
-            // create custom index for pg
-            DBSchemaService.singleton.createCustomIndexIfNotExist(host, this.getPartition(), classOfT);
+        return coll;
+    }
 
-            log.info("host:{}, Database finished creating table and index, table name: {}.", host, partition);
+    /**
+     * Initialize the tables and indexes of the partition and the recycle partition for the host
+     *
+     * <p>
+     * The initialization runs once per host, the partition and the recycle partition in parallel on the executor.
+     * All callers get the same future, which completes when the schema is ready.
+     * If the initialization fails, the next caller retries it.
+     * </p>
+     *
+     * @param host
+     * @param executor executor to run the initialization. Runnable::run to run it in the calling thread
+     * @return
+     */
+    public CompletableFuture<Void> initSchema(String host, Executor executor) {
+        var future = new CompletableFuture<Void>();
+        var existing = schemaInitializedMap.putIfAbsent(host, future);
+        if (existing != null) {
+            return existing;
         }
 
-        return coll;
+        log.info("host:{}, Database started creating table and index, table name: {}.", host, partition);
+
+        var partitionFuture = CompletableFuture.runAsync(() -> {
+            try {
+                // for partition table and custom index, skipped if the manifest shows the same schema
+                DBSchemaService.singleton.createSchemaIfChanged(host, this.getPartition(), classOfT);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+
+        var recycleFuture = CompletableFuture.runAsync(() -> {
+            try {
+                // for recycle table
+                DBSchemaService.singleton.createSchemaIfChanged(host, this.getRecyclePartition(), null);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+
+        CompletableFuture.allOf(partitionFuture, recycleFuture).whenComplete((result, e) -> {
+            if (e != null) {
+                var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                log.warn("host:{}, Database failed creating table and index, table name: {}.", host, partition, cause);
+                schemaInitializedMap.remove(host, future);
+                future.completeExceptionally(cause);
+            } else {
+                log.info("host:{}, Database finished creating table and index, table name: {}.", host, partition);
+                future.complete(null);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Run a query on the partition, creating the table again if it has been dropped while its manifest remains
+     *
+     * <p>
+     * The manifests of the partition and the recycle partition are deleted and the schema of the host is initialized again,
+     * then the query is retried once.
+     * </p>
+     *
+     * @param host
+     * @param query
+     * @return result of the query
+     * @throws Exception
+     */
+    protected <R> R queryRecoveringSchema(String host, SchemaQuery<R> query) throws Exception {
+        try {
+            return query.run();
+        } catch (Exception e) {
+            if (!DBSchemaService.isUndefinedTable(e)) {
+                throw e;
+            }
+
+            log.warn("host:{}, The table does not exist, creating it again, table name: {}.", host, partition, e);
+            DBSchemaService.singleton.deleteManifest(host, getPartition());
+            DBSchemaService.singleton.deleteManifest(host, getRecyclePartition());
+
+            // a finished initialization is discarded, so the next one creates the table again
+            var initialized = schemaInitializedMap.get(host);
+            if (initialized != null && initialized.isDone()) {
+                schemaInitializedMap.remove(host, initialized);
+            }
+            try {
+                initSchema(host, Runnable::run).join();
+            } catch (CompletionException ce) {
+                if (ce.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw ce;
+            }
+
+            // nothing has been written to a table which did not exist, so the query can be retried
+            return query.run();
+        }
+    }
+
+    /**
+     * A query which may fail with a checked exception
+     *
+     * @param <R> type of the result
+     */
+    @FunctionalInterface
+    protected interface SchemaQuery<R> {
+        R run() throws Exception;
     }
 
     /**
@@ -1,14 +1,31 @@
 package jp.co.onehr.workflow.service.infra;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
+import io.github.thunderz99.cosmos.CosmosDatabase;
+import io.github.thunderz99.cosmos.condition.Condition;
+import io.github.thunderz99.cosmos.util.JsonUtil;
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.dao.CosmosDB;
 import jp.co.onehr.workflow.dao.infra.DBSchemaDAOBuilder;
 import jp.co.onehr.workflow.dao.infra.DBSchemaInitializer;
+import jp.co.onehr.workflow.dto.SchemaManifest;
 import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
+import jp.co.onehr.workflow.service.base.BaseNoSqlService;
+import jp.co.onehr.workflow.util.DateUtil;
 import jp.co.onehr.workflow.util.InfraUtil;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +47,33 @@ public class DBSchemaService {
 
     public static DBSchemaService singleton = new DBSchemaService();
 
-    Map<String, DBSchemaInitializer> schemaDAOMap = new HashMap<>();
+    /**
+     * Version of the DDL issued by the schema DAOs. Increment it when the tables, basic indexes or TTL jobs change,
+     * so the schema of all partitions is created again instead of being skipped by the manifests
+     */
+    static final int SCHEMA_VERSION = 1;
+
+    static final String MANIFEST_PARTITION = "SchemaManifests";
+
+    static final int MANIFEST_LIMIT = 10_000;
+
+    /**
+     * SQLState of postgres when the table does not exist
+     */
+    static final String UNDEFINED_TABLE_SQL_STATE = "42P01";
+
+    /**
+     * Version of java-cosmos, which issues the DDL of the tables and basic indexes
+     */
+    static final String JAVA_COSMOS_VERSION = loadJavaCosmosVersion();
+
+    Map<String, DBSchemaInitializer> schemaDAOMap = new ConcurrentHashMap<>();
+
+    /**
+     * key: host
+     * value: the load of the manifests of the host. key: partition name, value: hash of the applied schema
+     */
+    Map<String, CompletableFuture<Map<String, String>>> manifestMap = new ConcurrentHashMap<>();
 
     DBSchemaService() {
     }
@@ -72,6 +115,240 @@ public class DBSchemaService {
         var dbType = InfraUtil.getDbTypeByHost(host);
         var schemaDAO = schemaDAOMap.computeIfAbsent(dbType, (type) -> new DBSchemaDAOBuilder().withDatabaseType(type).build());
 
+        var dto = getIndexCustomizable(host, classOfT);
+        if (dto != null) {
+            return schemaDAO.createCustomIndexIfNotExist(host, partition, dto);
+        }
+
+        return List.of();
+
+    }
+
+    /**
+     * Creates the table/index and the customized indexes of the partition, unless the manifest of the host shows the same schema has been applied.
+     *
+     * <p>
+     * The manifests of a host are loaded by one query on first use, so a restart does not introspect the tables and indexes again.
+     * The manifest is recorded after the schema has been created, including the indexes built in the background.
+     * CosmosDB has no schema to create, so no manifest is used.
+     * If a postgres table is dropped manually, the first query failing on it deletes its manifest and creates the table again.
+     * If a mongodb collection is dropped manually, delete its manifest as well by {@link #deleteManifest(String, String)}.
+     * </p>
+     *
+     * @param host
+     * @param partitionName partition name (e.g., "Definitions")
+     * @param classOfT      DTO class for the customized indexes, null if none (e.g., the recycle partition)
+     * @return list of created tables and indexes, empty if skipped
+     * @throws Exception
+     */
+    public List<String> createSchemaIfChanged(String host, String partitionName, Class classOfT) throws Exception {
+
+        if (InfraUtil.isCosmosDB(getDatabase(host))) {
+            var ret = new ArrayList<>(createSchemaIfNotExist(host, partitionName));
+            if (classOfT != null) {
+                ret.addAll(createCustomIndexIfNotExist(host, partitionName, classOfT));
+            }
+            return ret;
+        }
+
+        var hash = generateSchemaHash(host, partitionName, classOfT);
+        var manifests = getManifests(host);
+        if (StringUtils.equals(hash, manifests.get(partitionName))) {
+            log.debug("host:{}, The schema is unchanged, table name: {}.", host, partitionName);
+            return List.of();
+        }
+
+        var ret = new ArrayList<>(createSchemaIfNotExist(host, partitionName));
+        if (classOfT != null) {
+            ret.addAll(createCustomIndexIfNotExist(host, partitionName, classOfT));
+        }
+
+        // indexes built in the background are recorded once they have been built, so a failed build is retried on restart
+        var dbType = InfraUtil.getDbTypeByHost(host);
+        var schemaDAO = schemaDAOMap.computeIfAbsent(dbType, (type) -> new DBSchemaDAOBuilder().withDatabaseType(type).build());
+        var indexBuilds = schemaDAO.awaitIndexBuilds(host, partitionName);
+
+        if (indexBuilds.isDone() && !indexBuilds.isCompletedExceptionally()) {
+            saveManifest(host, new SchemaManifest(partitionName, hash));
+            manifests.put(partitionName, hash);
+        } else {
+            indexBuilds.whenComplete((result, e) -> {
+                if (e != null) {
+                    log.warn("host:{}, The index build failed, the schema is not recorded, table name: {}.", host, partitionName, e);
+                    return;
+                }
+                try {
+                    saveManifest(host, new SchemaManifest(partitionName, hash));
+                    manifests.put(partitionName, hash);
+                } catch (Exception ex) {
+                    log.warn("host:{}, Failed to record the schema, table name: {}.", host, partitionName, ex);
+                }
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * Delete the manifest of the partition, so the schema is created again by the next {@link #createSchemaIfChanged(String, String, Class)}
+     *
+     * @param host
+     * @param partitionName
+     * @throws Exception
+     */
+    public void deleteManifest(String host, String partitionName) throws Exception {
+        var db = getDatabase(host);
+        if (!InfraUtil.isCosmosDB(db)) {
+            db.delete(getCollectionName(host), partitionName, getManifestPartition());
+        }
+
+        // removed once a load in progress has finished as well
+        var manifests = manifestMap.get(host);
+        if (manifests != null) {
+            manifests.thenAccept(loaded -> loaded.remove(partitionName));
+        }
+    }
+
+    /**
+     * Hash of everything that determines the schema of the partition
+     *
+     * @param host
+     * @param partitionName
+     * @param classOfT
+     * @return
+     * @throws Exception
+     */
+    String generateSchemaHash(String host, String partitionName, Class classOfT) throws Exception {
+        var dto = classOfT == null ? null : getIndexCustomizable(host, classOfT);
+        var customIndexes = dto == null ? List.of() : dto.getCustomIndexDefinitions();
+
+        var source = String.join("|", String.valueOf(SCHEMA_VERSION), JAVA_COSMOS_VERSION, InfraUtil.getDbTypeByHost(host), partitionName, JsonUtil.toJson(customIndexes));
+        var digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /**
+     * The applied schema hashes of the host, loaded on first use
+     *
+     * @param host
+     * @return key: partition name, value: hash
+     * @throws Exception
+     */
+    Map<String, String> getManifests(String host) throws Exception {
+        // partitions of a host initialized in parallel wait for one load, other hosts are not blocked
+        var future = new CompletableFuture<Map<String, String>>();
+        var existing = manifestMap.putIfAbsent(host, future);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        try {
+            var loaded = loadManifests(host);
+            future.complete(loaded);
+            return loaded;
+        } catch (Throwable e) {
+            // the next call loads them again
+            manifestMap.remove(host, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Create the manifest table if not exist and read the manifests of the host
+     *
+     * @param host
+     * @return key: partition name, value: hash
+     * @throws Exception
+     */
+    Map<String, String> loadManifests(String host) throws Exception {
+        var manifestPartition = getManifestPartition();
+        createSchemaIfNotExist(host, manifestPartition);
+
+        var db = getDatabase(host);
+        var loaded = new ConcurrentHashMap<String, String>();
+        var cond = Condition.filter().fields("id", "hash").limit(MANIFEST_LIMIT);
+        for (var manifest : db.find(getCollectionName(host), cond, manifestPartition).toList(SchemaManifest.class)) {
+            loaded.put(manifest.id, manifest.hash);
+        }
+        return loaded;
+    }
+
+    void saveManifest(String host, SchemaManifest manifest) throws Exception {
+        manifest.updatedAt = DateUtil.nowDateTimeStringUTC();
+        var db = getDatabase(host);
+        db.upsert(getCollectionName(host), JsonUtil.toMap(manifest), getManifestPartition());
+    }
+
+    /**
+     * Whether the error was caused by a query on a table which does not exist
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isUndefinedTable(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && UNDEFINED_TABLE_SQL_STATE.equals(sqlException.getSQLState())) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The version of java-cosmos from the jar manifest, or from the maven properties if the manifest has none
+     *
+     * @return "unknown" if not found
+     */
+    static String loadJavaCosmosVersion() {
+        var version = CosmosDatabase.class.getPackage().getImplementationVersion();
+        if (StringUtils.isNotEmpty(version)) {
+            return version;
+        }
+
+        try (InputStream in = CosmosDatabase.class.getResourceAsStream("/META-INF/maven/com.github.thunderz99/java-cosmos/pom.properties")) {
+            if (in != null) {
+                var properties = new Properties();
+                properties.load(in);
+                return properties.getProperty("version", "unknown");
+            }
+        } catch (Exception e) {
+            LoggerFactory.getLogger(DBSchemaService.class).warn("Failed to read the version of java-cosmos.", e);
+        }
+        return "unknown";
+    }
+
+    static String getManifestPartition() {
+        return BaseNoSqlService.addSuffixToPartition(MANIFEST_PARTITION);
+    }
+
+    static CosmosDatabase getDatabase(String host) {
+        var db = ProcessConfiguration.getConfiguration().getDatabase(host);
+        if (ObjectUtils.isEmpty(db) && BaseNoSqlService.judgeEnableDefaultWorkflowDB()) {
+            db = CosmosDB.registerDefaultWorkflowDB(host);
+        }
+        return db;
+    }
+
+    static String getCollectionName(String host) {
+        return ProcessConfiguration.getConfiguration().getCollectionName(host);
+    }
+
+    /**
+     * The DTO instance providing the customized indexes
+     *
+     * @param host
+     * @param classOfT
+     * @return null if classOfT does not declare customized indexes
+     * @throws Exception
+     */
+    IndexCustomizable getIndexCustomizable(String host, Class classOfT) throws Exception {
         // If classOfT directly implements IndexCustomizable, create its custom indexes.
         // Note: If the parent implements IndexCustomizable but the child does not override it,　no custom indexes will be created.
         if (IndexCustomizable.class.isAssignableFrom(classOfT)) {
@@ -82,19 +359,18 @@ public class DBSchemaService {
             } catch (NoSuchMethodException e) {
                 // Skip when the method is not declared directly in the subclass (i.e., not overridden).
                 log.debug("domain:{}, getCustomIndexDefinitions method is not overridden in {}, skipping custom index creation.", host, classOfT.getSimpleName());
-                return List.of();
+                return null;
             }
 
             // Create an instance of classOfT. A default public constructor is required.
             var obj = classOfT.getDeclaredConstructor().newInstance();
 
             if (obj instanceof IndexCustomizable dto) {
-                return schemaDAO.createCustomIndexIfNotExist(host, partition, dto);
+                return dto;
             }
         }
 
-        return List.of();
-
+        return null;
     }
 
 }
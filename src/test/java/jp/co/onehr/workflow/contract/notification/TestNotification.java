@@ -7,4 +7,9 @@ public class TestNotification extends Notification {
 
     public String result = "";
 
+    /**
+     * Version of the instance the notification was sent with
+     */
+    public long instanceVersion = 0;
+
 }
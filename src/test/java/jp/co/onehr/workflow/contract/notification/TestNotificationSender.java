@@ -11,6 +11,7 @@ public class TestNotificationSender implements NotificationSender {
     @Override
     public void sendNotification(Instance instance, Action action, Notification notification) {
         if (notification instanceof TestNotification testNotification) {
+            testNotification.instanceVersion = instance.dataVersion;
             if (action.equals(Action.REJECT)) {
                 testNotification.result = "reject content";
             } else {
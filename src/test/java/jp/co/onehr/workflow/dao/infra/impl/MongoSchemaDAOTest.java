@@ -1,16 +1,25 @@
 package jp.co.onehr.workflow.dao.infra.impl;
 
+import java.util.List;
+
 import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.dao.CosmosDB;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
+import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
+import jp.co.onehr.workflow.dto.base.index.IndexField;
+import jp.co.onehr.workflow.dto.base.index.IndexFieldType;
 import jp.co.onehr.workflow.service.base.BaseNoSqlService;
 import jp.co.onehr.workflow.util.InfraUtil;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.atteo.evo.inflector.English;
+import org.bson.Document;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledIf;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class MongoSchemaDAOTest {
     static String host = "localhost";
@@ -46,6 +55,10 @@ class MongoSchemaDAOTest {
                 assertThat(results.get(1)).isEqualTo(partition + "." + "_ts");
                 assertThat(results.get(2)).isEqualTo(partition + "." + "_expireAt");
 
+                // nothing is created for the second time
+                assertThat(MongoSchemaDAO.singleton.createIndexesIfNotExist(host, partition)).isEmpty();
+                assertThat(MongoSchemaDAO.singleton.listIndexes(host, partition)).containsKeys("id_1", "_ts_1", "_expireAt_1");
+
             } finally {
                 MongoSchemaDAO.singleton.deleteIndex(host, partition, "id");
                 MongoSchemaDAO.singleton.deleteIndex(host, partition, "_ts");
@@ -56,6 +69,79 @@ class MongoSchemaDAOTest {
 
     }
 
+    @Test
+    @EnabledIf("isMongoDB")
+    void createCustomIndexIfNotExist_should_work() throws Exception {
+
+        var className = "CustomIndex" + RandomStringUtils.randomAlphanumeric(6) + "Test";
+        var partition = BaseNoSqlService.addSuffixToPartition(English.plural(className));
+        var partialIndex = IndexDefinition.of(IndexField.of("workflowId")).where("status", "PROCESSING");
+        var partialIndexName = "workflowId_1" + partialIndex.getPartialFilterSuffix();
+        var approvedIndex = IndexDefinition.of(IndexField.of("workflowId")).where("status", "APPROVED");
+        var approvedIndexName = "workflowId_1" + approvedIndex.getPartialFilterSuffix();
+
+        try {
+            {
+                // compound, unique and multikey indexes are created
+                var results = MongoSchemaDAO.singleton.createCustomIndexIfNotExist(host, partition, new CustomIndexTest());
+                assertThat(results).containsExactly(
+                        partition + ".workflowId_status",
+                        partition + ".employeeCode",
+                        partition + ".targetIdList",
+                        partition + ".workflowId" + partialIndex.getPartialFilterSuffix());
+
+                assertThat(MongoSchemaDAO.singleton.indexExist(host, partition, "workflowId_1_status_1")).isTrue();
+                assertThat(MongoSchemaDAO.singleton.findIndex(host, partition, "employeeCode_1").getBoolean("unique", false)).isTrue();
+                assertThat(MongoSchemaDAO.singleton.findIndex(host, partition, partialIndexName)
+                        .get("partialFilterExpression", Document.class)).isEqualTo(new Document("status", "PROCESSING"));
+            }
+
+            {
+                // nothing is created for the second time
+                assertThat(MongoSchemaDAO.singleton.createCustomIndexIfNotExist(host, partition, new CustomIndexTest())).isEmpty();
+            }
+
+            {
+                // a partial index of the same keys with another value is created next to it
+                assertThat(approvedIndexName).isNotEqualTo(partialIndexName);
+                assertThat(MongoSchemaDAO.singleton.createCustomIndexIfNotExist(host, partition, () -> List.of(approvedIndex))).hasSize(1);
+                assertThat(MongoSchemaDAO.singleton.findIndex(host, partition, approvedIndexName)
+                        .get("partialFilterExpression", Document.class)).isEqualTo(new Document("status", "APPROVED"));
+                assertThat(MongoSchemaDAO.singleton.findIndex(host, partition, partialIndexName)
+                        .get("partialFilterExpression", Document.class)).isEqualTo(new Document("status", "PROCESSING"));
+            }
+
+            {
+                // more than one array field in a compound index is not supported by mongodb
+                var indexDef = IndexDefinition.of(List.of(IndexField.of("targetIdList", IndexFieldType.JSONB), IndexField.of("tagList", IndexFieldType.JSONB)), false);
+                assertThatThrownBy(() -> MongoSchemaDAO.toIndexModel(indexDef))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("at most one JSONB");
+            }
+        } finally {
+            MongoSchemaDAO.singleton.deleteIndex(host, partition, "workflowId_1_status_1");
+            MongoSchemaDAO.singleton.deleteIndex(host, partition, "employeeCode");
+            MongoSchemaDAO.singleton.deleteIndex(host, partition, "targetIdList");
+            MongoSchemaDAO.getMongoDatabase(host).getCollection(partition).dropIndex(partialIndexName);
+            MongoSchemaDAO.getMongoDatabase(host).getCollection(partition).dropIndex(approvedIndexName);
+        }
+    }
+
+    /**
+     * Test implementation of IndexCustomizable
+     */
+    static class CustomIndexTest extends BaseData implements IndexCustomizable {
+        @Override
+        public List<IndexDefinition> getCustomIndexDefinitions() {
+            return List.of(
+                    IndexDefinition.of(List.of(IndexField.of("workflowId"), IndexField.of("status")), false),
+                    IndexDefinition.of(IndexField.of("employeeCode", IndexFieldType.TEXT), true),
+                    IndexDefinition.ofGin(IndexField.of("targetIdList", IndexFieldType.JSONB)),
+                    IndexDefinition.of(IndexField.of("workflowId")).where("status", "PROCESSING")
+            );
+        }
+    }
+
     /**
      * condition method.
      */
@@ -1,13 +1,18 @@
 package jp.co.onehr.workflow.dao.infra.impl;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import io.github.thunderz99.cosmos.impl.postgres.PostgresDatabaseImpl;
 import io.github.thunderz99.cosmos.impl.postgres.util.TTLUtil;
 import io.github.thunderz99.cosmos.impl.postgres.util.TableUtil;
 import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.constant.Status;
 import jp.co.onehr.workflow.dao.CosmosDB;
+import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.base.BaseData;
 import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
 import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
@@ -199,6 +204,46 @@ class PostgresSchemaDAOTest {
         }
     }
 
+    @Test
+    @EnabledIf("isPostgres")
+    void createCustomIndexIfNotExist_should_create_instance_indexes() throws Exception {
+        var dao = new PostgresSchemaDAO();
+        var partitionName = "InstanceIdxTests";
+        var dataSource = getDataSource(host);
+        var schemaName = ProcessConfiguration.getConfiguration().getCollectionName(host);
+
+        try {
+            dao.createTableIfNotExist(host, partitionName);
+
+            var result = dao.createCustomIndexIfNotExist(host, partitionName, new Instance());
+            assertThat(result).hasSize(5);
+
+            try (var conn = dataSource.getConnection()) {
+                var indexes = PGTableTestUtil.findIndexes(conn, schemaName, partitionName);
+
+                var ginIndex = indexes.get("idx_" + partitionName + "_expandOperatorIdSet_1");
+                assertThat(ginIndex).containsIgnoringCase("USING GIN");
+
+                var workflowStatusIndex = indexes.get("idx_" + partitionName + "_workflowId_status_1");
+                assertThat(workflowStatusIndex).contains("'workflowId'", "'status'").doesNotContain("UNIQUE INDEX");
+
+                var definitionNodeIndex = indexes.get("idx_" + partitionName + "_definitionId_nodeId_1");
+                assertThat(definitionNodeIndex).contains("'definitionId'", "'nodeId'");
+
+                assertThat(indexes).containsKeys("idx_" + partitionName + "_applicant_1", "idx_" + partitionName + "_proxyApplicant_1");
+            }
+
+            // nothing is created when the indexes exist
+            {
+                assertThat(dao.createCustomIndexIfNotExist(host, partitionName, new Instance())).isEmpty();
+            }
+        } finally {
+            try (var conn = dataSource.getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+        }
+    }
+
     @Test
     @EnabledIf("isPostgres")
     void createCustomIndexIfNotExist_should_create_boolean_field_index() throws Exception {
@@ -236,6 +281,307 @@ class PostgresSchemaDAOTest {
         }
     }
 
+    @Test
+    @EnabledIf("isPostgres")
+    void createIndexConcurrently_should_work() throws Exception {
+        var dao = new PostgresSchemaDAO();
+        var partitionName = "ConcurrentIdxTests";
+        var dataSource = getDataSource(host);
+        var schemaName = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var indexDefinitions = List.of(
+                IndexDefinition.of(List.of(IndexField.of("workflowId"), IndexField.of("version", IndexFieldType.NUMERIC)), false),
+                IndexDefinition.ofGin(IndexField.of("targetIdList", IndexFieldType.JSONB)));
+
+        try {
+            dao.createTableIfNotExist(host, partitionName);
+            ProcessConfiguration.getConfiguration().configureConcurrentIndexBuild(0);
+
+            // indexes are built in the background when the table is large
+            {
+                assertThat(dao._createIndexIfNotExist(host, partitionName, indexDefinitions)).isEmpty();
+                dao.awaitIndexBuilds(host, partitionName).get(1, TimeUnit.MINUTES);
+
+                try (var conn = dataSource.getConnection()) {
+                    var compound = dao.findExistingIndex(conn, schemaName, partitionName, "idx_" + partitionName + "_workflowId_version_1");
+                    assertThat(compound.valid).isTrue();
+                    assertThat(compound.definition).contains("'workflowId'", "::numeric").doesNotContain("UNIQUE INDEX");
+
+                    var gin = dao.findExistingIndex(conn, schemaName, partitionName, "idx_" + partitionName + "_targetIdList_1");
+                    assertThat(gin.valid).isTrue();
+                    assertThat(gin.definition).containsIgnoringCase("USING GIN").contains("data -> 'targetIdList'::text");
+                }
+            }
+
+            // an invalid index left by a failed build is built again
+            {
+                var indexName = "idx_" + partitionName + "_targetIdList_1";
+                try (var conn = dataSource.getConnection(); var stmt = conn.createStatement()) {
+                    stmt.execute("UPDATE pg_index SET indisvalid = false WHERE indexrelid = '%s.\"%s\"'::regclass".formatted(
+                            TableUtil.checkAndNormalizeValidEntityName(schemaName), indexName));
+                }
+
+                assertThat(dao._createIndexIfNotExist(host, partitionName, indexDefinitions)).isEmpty();
+                dao.awaitIndexBuilds(host, partitionName).get(1, TimeUnit.MINUTES);
+
+                try (var conn = dataSource.getConnection()) {
+                    assertThat(dao.findExistingIndex(conn, schemaName, partitionName, indexName).valid).isTrue();
+                }
+            }
+
+            // an invalid index being built by another node is not dropped, the build waits for the other node
+            {
+                var indexName = "idx_" + partitionName + "_targetIdList_1";
+                var lockKey = TableUtil.removeQuotes(TableUtil.checkAndNormalizeValidEntityName(schemaName)) + "." + indexName;
+                try (var lockConn = dataSource.getConnection()) {
+                    try (var pstmt = lockConn.prepareStatement("SELECT pg_advisory_lock(hashtext(?))")) {
+                        pstmt.setString(1, lockKey);
+                        pstmt.execute();
+                    }
+                    try (var conn = dataSource.getConnection(); var stmt = conn.createStatement()) {
+                        stmt.execute("UPDATE pg_index SET indisvalid = false WHERE indexrelid = '%s.\"%s\"'::regclass".formatted(
+                                TableUtil.checkAndNormalizeValidEntityName(schemaName), indexName));
+                    }
+
+                    assertThat(dao._createIndexIfNotExist(host, partitionName, indexDefinitions)).isEmpty();
+                    Thread.sleep(1000);
+                    try (var conn = dataSource.getConnection()) {
+                        assertThat(dao.findExistingIndex(conn, schemaName, partitionName, indexName)).isNotNull();
+                    }
+                    assertThat(dao.awaitIndexBuilds(host, partitionName).isDone()).isFalse();
+
+                    // the other node completes its build
+                    try (var conn = dataSource.getConnection(); var stmt = conn.createStatement()) {
+                        stmt.execute("UPDATE pg_index SET indisvalid = true WHERE indexrelid = '%s.\"%s\"'::regclass".formatted(
+                                TableUtil.checkAndNormalizeValidEntityName(schemaName), indexName));
+                    }
+                    try (var pstmt = lockConn.prepareStatement("SELECT pg_advisory_unlock(hashtext(?))")) {
+                        pstmt.setString(1, lockKey);
+                        pstmt.execute();
+                    }
+                }
+
+                dao.awaitIndexBuilds(host, partitionName).get(1, TimeUnit.MINUTES);
+                try (var conn = dataSource.getConnection()) {
+                    assertThat(dao.findExistingIndex(conn, schemaName, partitionName, indexName).valid).isTrue();
+                }
+            }
+        } finally {
+            ProcessConfiguration.getConfiguration().configureConcurrentIndexBuild(100_000);
+            try (var conn = dataSource.getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+        }
+    }
+
+    @Test
+    @EnabledIf("isPostgres")
+    void createPartialIndex_should_work() throws Exception {
+        var dao = new PostgresSchemaDAO();
+        var partitionName = "PartialIdxTests";
+        var dataSource = getDataSource(host);
+        var schemaName = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var partialIndex = IndexDefinition.ofGin(IndexField.of("expandOperatorIdSet", IndexFieldType.JSONB)).where("status", Status.PROCESSING);
+
+        try {
+            dao.createTableIfNotExist(host, partitionName);
+
+            // the partial index is created next to the full index of the same field
+            {
+                var result = dao._createIndexIfNotExist(host, partitionName, List.of(IndexDefinition.ofGin(IndexField.of("expandOperatorIdSet", IndexFieldType.JSONB)), partialIndex));
+                assertThat(result).hasSize(2);
+
+                try (var conn = dataSource.getConnection()) {
+                    var indexes = PGTableTestUtil.findIndexes(conn, schemaName, partitionName);
+
+                    assertThat(indexes.get("idx_" + partitionName + "_expandOperatorIdSet_1")).doesNotContain("WHERE");
+                    assertThat(indexes.get("idx_" + partitionName + "_expandOperatorIdSet" + partialIndex.getPartialFilterSuffix() + "_1"))
+                            .containsIgnoringCase("USING GIN")
+                            .contains("WHERE", "'status'", "'PROCESSING'");
+                }
+            }
+
+            // reapplying the same definition leaves the partial index unchanged
+            {
+                assertThat(dao._createIndexIfNotExist(host, partitionName, List.of(partialIndex))).isEmpty();
+            }
+
+            // a partial index of the same field with another value is created next to it
+            {
+                var approvedIndex = IndexDefinition.ofGin(IndexField.of("expandOperatorIdSet", IndexFieldType.JSONB)).where("status", Status.APPROVED);
+                assertThat(approvedIndex.getPartialFilterSuffix()).isNotEqualTo(partialIndex.getPartialFilterSuffix());
+                assertThat(dao._createIndexIfNotExist(host, partitionName, List.of(approvedIndex))).hasSize(1);
+
+                try (var conn = dataSource.getConnection()) {
+                    var indexes = PGTableTestUtil.findIndexes(conn, schemaName, partitionName);
+
+                    assertThat(indexes.get("idx_" + partitionName + "_expandOperatorIdSet" + partialIndex.getPartialFilterSuffix() + "_1"))
+                            .contains("'PROCESSING'");
+                    assertThat(indexes.get("idx_" + partitionName + "_expandOperatorIdSet" + approvedIndex.getPartialFilterSuffix() + "_1"))
+                            .contains("'APPROVED'");
+                }
+            }
+        } finally {
+            try (var conn = dataSource.getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+        }
+    }
+
+    @Test
+    @EnabledIf("isPostgres")
+    void matchesPartialFilter_should_compare_the_whole_predicate() throws Exception {
+        var dao = new PostgresSchemaDAO();
+        var partitionName = "PartialFilterMatchTests";
+        var dataSource = getDataSource(host);
+        var schemaName = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var indexDef = IndexDefinition.of(IndexField.of("workflowId")).where("version", 10).where("status", "PROCESSING");
+        var indexName = "idx_" + partitionName + "_partial_filter_match";
+
+        try (var conn = dataSource.getConnection()) {
+            dao.createTableIfNotExist(host, partitionName);
+            try (var stmt = conn.createStatement()) {
+                stmt.execute(PostgresSchemaDAO.buildCreateIndexSql(schemaName, partitionName, indexDef, indexName, false));
+            }
+            var existingIndex = dao.findExistingIndex(conn, schemaName, partitionName, indexName);
+            assertThat(existingIndex.predicate).contains("'version'", "'status'");
+
+            // the same filter matches
+            {
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, indexDef)).isTrue();
+            }
+
+            // a value contained in the existing value does not match
+            {
+                var other = IndexDefinition.of(IndexField.of("workflowId")).where("version", 1).where("status", "PROCESSING");
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, other)).isFalse();
+                var otherText = IndexDefinition.of(IndexField.of("workflowId")).where("version", 10).where("status", "PROCESS");
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, otherText)).isFalse();
+            }
+
+            // fewer or more conditions and a full index do not match
+            {
+                var fewer = IndexDefinition.of(IndexField.of("workflowId")).where("version", 10);
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, fewer)).isFalse();
+                var more = IndexDefinition.of(IndexField.of("workflowId")).where("version", 10).where("status", "PROCESSING").where("active", true);
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, more)).isFalse();
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, IndexDefinition.of(IndexField.of("workflowId")))).isFalse();
+            }
+
+            // the connection is usable after the predicate is printed, the temporary table is rolled back
+            {
+                assertThat(conn.getAutoCommit()).isTrue();
+                assertThat(dao.matchesPartialFilter(conn, existingIndex, indexDef)).isTrue();
+            }
+        } finally {
+            try (var conn = dataSource.getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+        }
+    }
+
+    @Test
+    @EnabledIf("isPostgres")
+    void buildCreateIndexSql_should_create_the_same_index_as_TableUtil() throws Exception {
+        var tableUtilPartition = "DdlTableUtilTests";
+        var builderPartition = "DdlBuilderTests";
+        var dataSource = getDataSource(host);
+        var schemaName = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var indexDefs = List.of(
+                IndexDefinition.of(IndexField.of("employeeCode"), true),
+                IndexDefinition.of(IndexField.of("version", IndexFieldType.NUMERIC)),
+                IndexDefinition.of(IndexField.of("count", IndexFieldType.BIGINT)),
+                IndexDefinition.of(IndexField.of("active", IndexFieldType.BOOLEAN)),
+                IndexDefinition.of(IndexField.of("mail.address")),
+                IndexDefinition.of(List.of(IndexField.of("workflowId"), IndexField.of("mail.photo.version", IndexFieldType.NUMERIC)), false),
+                IndexDefinition.ofGin(IndexField.of("targetIdList", IndexFieldType.JSONB))
+        );
+
+        var dao = new PostgresSchemaDAO();
+        try (var conn = dataSource.getConnection()) {
+            dao.createTableIfNotExist(host, tableUtilPartition);
+            dao.createTableIfNotExist(host, builderPartition);
+
+            for (var indexDef : indexDefs) {
+                var joinedFieldNames = PostgresSchemaDAO.getJoinedFieldNames(indexDef);
+                var tableUtilIndexName = TableUtil.removeQuotes(TableUtil.getIndexName(TableUtil.checkAndNormalizeValidEntityName(tableUtilPartition), joinedFieldNames));
+                var builderIndexName = TableUtil.removeQuotes(TableUtil.getIndexName(TableUtil.checkAndNormalizeValidEntityName(builderPartition), joinedFieldNames));
+
+                TableUtil.createIndexIfNotExist4MultiFields(conn, schemaName, tableUtilPartition,
+                        PostgresSchemaDAO.toPGIndexFields(indexDef), PostgresSchemaDAO.toIndexOption(indexDef));
+                try (var stmt = conn.createStatement()) {
+                    stmt.execute(PostgresSchemaDAO.buildCreateIndexSql(schemaName, builderPartition, indexDef, builderIndexName, false));
+                }
+
+                // the definitions differ only by the names of the table and the index
+                var expected = dao.findExistingIndex(conn, schemaName, tableUtilPartition, tableUtilIndexName).definition
+                        .replace(tableUtilIndexName, builderIndexName)
+                        .replace(tableUtilPartition, builderPartition);
+                var actual = dao.findExistingIndex(conn, schemaName, builderPartition, builderIndexName).definition;
+                assertThat(actual).as(joinedFieldNames).isEqualTo(expected);
+            }
+        } finally {
+            try (var conn = dataSource.getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, tableUtilPartition);
+                TableUtil.dropTableIfExists(conn, schemaName, builderPartition);
+            }
+        }
+    }
+
+    @Test
+    @EnabledIf("isPostgres")
+    void createCoveringIndex_should_ignore_included_fields() throws Exception {
+        var dao = new PostgresSchemaDAO();
+        var partitionName = "CoveringIdxTests";
+        var dataSource = getDataSource(host);
+        var schemaName = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var coveringIndex = IndexDefinition.of(List.of(IndexField.of("workflowId"), IndexField.of("status")), false)
+                .include(IndexField.of("nodeId"), IndexField.of("version", IndexFieldType.NUMERIC));
+
+        try {
+            dao.createTableIfNotExist(host, partitionName);
+
+            // the queries read the whole data column, an index cannot cover them. only the key fields are indexed
+            {
+                var created = dao._createIndexIfNotExist(host, partitionName, List.of(coveringIndex));
+                assertThat(created).hasSize(1);
+
+                try (var conn = dataSource.getConnection()) {
+                    var indexes = PGTableTestUtil.findIndexes(conn, schemaName, partitionName);
+                    var definition = indexes.entrySet().stream()
+                            .filter(entry -> entry.getKey().contains("workflowId_status"))
+                            .map(Map.Entry::getValue)
+                            .findFirst().orElseThrow();
+                    assertThat(definition).contains("workflowId").contains("status")
+                            .doesNotContain("nodeId").doesNotContain("version").doesNotContainIgnoringCase("INCLUDE");
+                }
+            }
+
+            // the index is found on the next initialization
+            {
+                assertThat(dao._createIndexIfNotExist(host, partitionName, List.of(coveringIndex))).isEmpty();
+            }
+        } finally {
+            try (var conn = dataSource.getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+        }
+    }
+
+    @Test
+    void toPredicate_should_work() {
+        var filter = new LinkedHashMap<String, Object>();
+        filter.put("status", "PROCESSING");
+        filter.put("mail.verified", true);
+        filter.put("version", 2);
+        filter.put("name", "O'Brien");
+
+        assertThat(PostgresSchemaDAO.toPredicate(filter)).isEqualTo(
+                "(data->>'status') = 'PROCESSING'"
+                        + " AND ((data->'mail'->>'verified')::boolean) = true"
+                        + " AND ((data->>'version')::numeric) = 2"
+                        + " AND (data->>'name') = 'O''Brien'");
+    }
+
     @Test
     @EnabledIf("isPostgres")
     void createCustomGinIndex_should_work() throws Exception {
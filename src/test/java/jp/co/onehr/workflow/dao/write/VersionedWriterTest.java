@@ -0,0 +1,178 @@
+package jp.co.onehr.workflow.dao.write;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import io.github.thunderz99.cosmos.CosmosDatabase;
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.base.BaseTest;
+import jp.co.onehr.workflow.dao.CosmosDB;
+import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.service.base.BaseNoSqlService;
+import jp.co.onehr.workflow.service.infra.DBSchemaService;
+import jp.co.onehr.workflow.util.InfraUtil;
+import org.apache.commons.lang3.ObjectUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The documents written by the VersionedWriter of the database should be the ones java-cosmos writes for the same request
+ */
+class VersionedWriterTest extends BaseTest {
+
+    static final String PARTITION_NAME = "VersionedWriterTests";
+
+    /**
+     * Fields set by the database or java-cosmos for each write, compared by their presence only
+     */
+    static final List<String> SYSTEM_FIELDS = List.of("id", "_id", "_ts", "_etag", "_rid", "_self", "_attachments", "_lsn");
+
+    @Test
+    void patchIfVersion_should_write_the_same_document_as_java_cosmos() throws Exception {
+        var cases = new HashMap<String, Supplier<PatchOperations>>();
+        cases.put("set", () -> PatchOperations.create().set("/name", "set"));
+        cases.put("set a nested field", () -> PatchOperations.create().set("/nested/name", "set"));
+        cases.put("set a field of a missing parent", () -> PatchOperations.create().set("/missing/child/name", "set"));
+        cases.put("set an object", () -> PatchOperations.create().set("/object", Map.of("key", "value")));
+        cases.put("replace", () -> PatchOperations.create().replace("/name", "replaced"));
+        cases.put("add a field", () -> PatchOperations.create().add("/added", "added"));
+        cases.put("append to an array", () -> PatchOperations.create().add("/list/-", "c"));
+        cases.put("insert into an array", () -> PatchOperations.create().add("/list/1", "inserted"));
+        cases.put("add at the length of an array", () -> PatchOperations.create().add("/list/2", "appended"));
+        cases.put("remove a field", () -> PatchOperations.create().remove("/name"));
+        cases.put("remove an array element", () -> PatchOperations.create().remove("/list/0"));
+        cases.put("increment", () -> PatchOperations.create().increment("/count", 2));
+        cases.put("several operations", () -> PatchOperations.create().set("/name", "several").add("/list/-", "c").increment("/count", 1).remove("/nested/name"));
+
+        var db = getDatabase();
+        var coll = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var partition = BaseNoSqlService.addSuffixToPartition(PARTITION_NAME);
+        DBSchemaService.singleton.createSchemaIfNotExist(host, partition);
+        var writer = new VersionedWriterBuilder().withDatabaseType(InfraUtil.getDbTypeByHost(host)).build();
+
+        for (var entry : cases.entrySet()) {
+            var expectedId = getUuid();
+            var actualId = getUuid();
+            try {
+                db.create(coll, generateDocument(expectedId), partition);
+                db.create(coll, generateDocument(actualId), partition);
+
+                // the same operations, including the one setting the version
+                var expectedOperations = entry.getValue().get().set("/" + BaseData.VERSION, 2);
+                var actualOperations = entry.getValue().get().set("/" + BaseData.VERSION, 2);
+                Exception expectedError = null;
+                try {
+                    db.patch(coll, expectedId, expectedOperations, partition);
+                } catch (Exception e) {
+                    expectedError = e;
+                }
+                if (expectedError != null) {
+                    // rejected by java-cosmos, so it is rejected by the writer as well
+                    assertThatThrownBy(() -> writer.patchIfVersion(host, coll, partition, actualId, actualOperations, 1)).as(entry.getKey()).isNotNull();
+                    continue;
+                }
+                assertThat(writer.patchIfVersion(host, coll, partition, actualId, actualOperations, 1)).as(entry.getKey()).isNotNull();
+
+                assertSameDocument(entry.getKey(), db.read(coll, expectedId, partition).toMap(), db.read(coll, actualId, partition).toMap());
+            } finally {
+                db.delete(coll, expectedId, partition);
+                db.delete(coll, actualId, partition);
+            }
+        }
+    }
+
+    @Test
+    void bulkPatchIfVersion_should_write_the_same_document_as_java_cosmos() throws Exception {
+        var db = getDatabase();
+        var coll = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var partition = BaseNoSqlService.addSuffixToPartition(PARTITION_NAME);
+        DBSchemaService.singleton.createSchemaIfNotExist(host, partition);
+        var writer = new VersionedWriterBuilder().withDatabaseType(InfraUtil.getDbTypeByHost(host)).build();
+
+        var expectedId = getUuid();
+        var actualId = getUuid();
+        try {
+            db.create(coll, generateDocument(expectedId), partition);
+            db.create(coll, generateDocument(actualId), partition);
+
+            db.patch(coll, expectedId, PatchOperations.create().set("/missing/name", "bulk").add("/list/-", "c").set("/" + BaseData.VERSION, 2), partition);
+            var result = writer.bulkPatchIfVersion(host, coll, partition,
+                    List.of(VersionedPatch.of(actualId, PatchOperations.create().set("/missing/name", "bulk").add("/list/-", "c").set("/" + BaseData.VERSION, 2), 1)));
+            assertThat(result.successMap).containsOnlyKeys(actualId);
+
+            assertSameDocument("bulk", db.read(coll, expectedId, partition).toMap(), db.read(coll, actualId, partition).toMap());
+        } finally {
+            db.delete(coll, expectedId, partition);
+            db.delete(coll, actualId, partition);
+        }
+    }
+
+    @Test
+    void replaceIfVersion_should_write_the_same_document_as_java_cosmos() throws Exception {
+        var db = getDatabase();
+        var coll = ProcessConfiguration.getConfiguration().getCollectionName(host);
+        var partition = BaseNoSqlService.addSuffixToPartition(PARTITION_NAME);
+        DBSchemaService.singleton.createSchemaIfNotExist(host, partition);
+        var writer = new VersionedWriterBuilder().withDatabaseType(InfraUtil.getDbTypeByHost(host)).build();
+
+        var expectedId = getUuid();
+        var actualId = getUuid();
+        try {
+            db.create(coll, generateDocument(expectedId), partition);
+            db.create(coll, generateDocument(actualId), partition);
+
+            var expected = generateDocument(expectedId);
+            expected.put("name", "replaced");
+            expected.remove("nested");
+            expected.put(BaseData.VERSION, 2);
+            db.update(coll, expected, partition);
+
+            var actual = generateDocument(actualId);
+            actual.put("name", "replaced");
+            actual.remove("nested");
+            actual.put(BaseData.VERSION, 2);
+            assertThat(writer.replaceIfVersion(host, coll, partition, actual, 1)).isNotNull();
+
+            assertSameDocument("replace", db.read(coll, expectedId, partition).toMap(), db.read(coll, actualId, partition).toMap());
+        } finally {
+            db.delete(coll, expectedId, partition);
+            db.delete(coll, actualId, partition);
+        }
+    }
+
+    static void assertSameDocument(String description, Map<String, Object> expected, Map<String, Object> actual) {
+        for (var field : SYSTEM_FIELDS) {
+            assertThat(actual.containsKey(field)).as(description + ": " + field).isEqualTo(expected.containsKey(field));
+            if (expected.get(field) instanceof Number) {
+                assertThat(actual.get(field)).as(description + ": " + field).isInstanceOf(Number.class);
+            }
+            expected.remove(field);
+            actual.remove(field);
+        }
+        assertThat(actual).as(description).isEqualTo(expected);
+    }
+
+    static Map<String, Object> generateDocument(String id) {
+        var document = new HashMap<String, Object>();
+        document.put("id", id);
+        document.put("name", "name");
+        document.put("nested", new HashMap<>(Map.of("name", "nested", "flag", true)));
+        document.put("list", List.of("a", "b"));
+        document.put("count", 1);
+        document.put(BaseData.VERSION, 1);
+        return document;
+    }
+
+    static CosmosDatabase getDatabase() {
+        var db = ProcessConfiguration.getConfiguration().getDatabase(host);
+        if (ObjectUtils.isEmpty(db)) {
+            db = CosmosDB.registerDefaultWorkflowDB(host);
+        }
+        return db;
+    }
+}
@@ -0,0 +1,102 @@
+package jp.co.onehr.workflow.dto;
+
+import jp.co.onehr.workflow.constant.ApprovalType;
+import jp.co.onehr.workflow.constant.WorkflowErrors;
+import jp.co.onehr.workflow.dto.node.EndNode;
+import jp.co.onehr.workflow.dto.node.MultipleNode;
+import jp.co.onehr.workflow.dto.node.RobotNode;
+import jp.co.onehr.workflow.dto.node.SingleNode;
+import jp.co.onehr.workflow.dto.node.StartNode;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledDefinitionTest {
+
+    @Test
+    void compiledDefinition_should_work() {
+        var definition = new Definition("definition-1", "workflow-1");
+        var startNode = new StartNode("start");
+        var singleNode = new SingleNode("single");
+        var multipleNode = new MultipleNode("multiple", ApprovalType.AND);
+        var robotNode = new RobotNode("robot");
+        var endNode = new EndNode("end");
+        definition.nodes.add(startNode);
+        definition.nodes.add(singleNode);
+        definition.nodes.add(multipleNode);
+        definition.nodes.add(robotNode);
+        definition.nodes.add(endNode);
+
+        // lookups by nodeId and position
+        {
+            var compiled = definition.getCompiledDefinition();
+            assertThat(compiled.size()).isEqualTo(5);
+            assertThat(compiled.getStartNode()).isSameAs(startNode);
+            assertThat(compiled.getFirstNode()).isSameAs(singleNode);
+            assertThat(compiled.getLastNode()).isSameAs(endNode);
+            assertThat(compiled.getNodeIndex(multipleNode.nodeId)).isEqualTo(2);
+            assertThat(compiled.getNode(robotNode.nodeId)).isSameAs(robotNode);
+            assertThat(compiled.isFirstNode(singleNode.nodeId)).isTrue();
+            assertThat(compiled.isLastNode(endNode.nodeId)).isTrue();
+            assertThat(compiled.isManualNode(singleNode.nodeId)).isTrue();
+            assertThat(compiled.isManualNode(robotNode.nodeId)).isFalse();
+            assertThat(compiled.getApprovalType(multipleNode.nodeId)).isEqualTo(ApprovalType.AND);
+            assertThat(compiled.getApprovalType(singleNode.nodeId)).isEqualTo(ApprovalType.SIMPLE);
+            assertThat(compiled.containsNode("not-exist")).isFalse();
+        }
+
+        // the view is built once
+        {
+            assertThat(definition.getCompiledDefinition()).isSameAs(definition.getCompiledDefinition());
+        }
+
+        // an unknown nodeId is rejected
+        {
+            var compiled = definition.getCompiledDefinition();
+            assertThatThrownBy(() -> compiled.getNodeIndex("not-exist"))
+                    .isInstanceOf(WorkflowException.class)
+                    .hasMessageContaining(WorkflowErrors.NODE_ID_INVALID.name());
+        }
+
+        // the view is rebuilt after the nodes are modified
+        {
+            var before = definition.getCompiledDefinition();
+            var newNode = new SingleNode("new");
+            definition.nodes.add(1, newNode);
+
+            var compiled = definition.getCompiledDefinition();
+            assertThat(compiled).isNotSameAs(before);
+            assertThat(compiled.getFirstNode()).isSameAs(newNode);
+            assertThat(compiled.getNodeIndex(multipleNode.nodeId)).isEqualTo(3);
+        }
+
+        // the view is rebuilt after a node in the middle is replaced
+        {
+            var before = definition.getCompiledDefinition();
+            var replacedNode = new RobotNode("replaced");
+            var index = definition.nodes.indexOf(multipleNode);
+            definition.nodes.set(index, replacedNode);
+
+            var compiled = definition.getCompiledDefinition();
+            assertThat(compiled).isNotSameAs(before);
+            assertThat(compiled.getNode(index)).isSameAs(replacedNode);
+            assertThat(compiled.getNodeIndex(replacedNode.nodeId)).isEqualTo(index);
+            assertThat(compiled.containsNode(multipleNode.nodeId)).isFalse();
+            assertThat(compiled.isManualNode(replacedNode.nodeId)).isFalse();
+        }
+
+        // the view is rebuilt after the nodeId of a node is modified in place
+        {
+            var before = definition.getCompiledDefinition();
+            var oldNodeId = robotNode.nodeId;
+            robotNode.nodeId = "robot-renamed";
+
+            var compiled = definition.getCompiledDefinition();
+            assertThat(compiled).isNotSameAs(before);
+            assertThat(compiled.getNode("robot-renamed")).isSameAs(robotNode);
+            assertThat(compiled.containsNode(oldNodeId)).isFalse();
+        }
+    }
+}
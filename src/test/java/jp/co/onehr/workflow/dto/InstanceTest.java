@@ -0,0 +1,147 @@
+package jp.co.onehr.workflow.dto;
+
+import java.util.Map;
+import java.util.Set;
+
+import io.github.thunderz99.cosmos.util.JsonUtil;
+import jp.co.onehr.workflow.constant.Action;
+import jp.co.onehr.workflow.constant.ApplicationMode;
+import jp.co.onehr.workflow.constant.Status;
+import jp.co.onehr.workflow.contract.context.TestOperatorLogContext;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstanceTest {
+
+    @Test
+    void copy_should_work() {
+        var instance = generateInstance();
+
+        // the copy has the same content as a JSON round-trip copy
+        {
+            Instance copied = instance.copy();
+            Instance jsonCopied = JsonUtil.fromJson(JsonUtil.toJson(instance), Instance.class);
+
+            assertThat(copied).isNotSameAs(instance);
+            assertThat(JsonUtil.toJson(copied)).isEqualTo(JsonUtil.toJson(jsonCopied));
+        }
+
+        // modifying the copy does not affect the original
+        {
+            Instance copied = instance.copy();
+            copied.nodeId = "node-2";
+            copied.expandOperatorIdSet.add("operator-3");
+            copied.parallelApproval.get("operator-1").approved = true;
+            copied.operateLogList.get(0).statusAfter = Status.APPROVED;
+            copied.operateLogList.add(new OperateLog());
+
+            assertThat(instance.nodeId).isEqualTo("node-1");
+            assertThat(instance.expandOperatorIdSet).containsExactlyInAnyOrder("operator-1", "operator-2");
+            assertThat(instance.parallelApproval.get("operator-1").approved).isFalse();
+            assertThat(instance.operateLogList).hasSize(1);
+            assertThat(instance.operateLogList.get(0).statusAfter).isEqualTo(Status.PROCESSING);
+        }
+    }
+
+    @Test
+    void equals_should_work() {
+        var instance = generateInstance();
+
+        // equal content means equal instances and hash codes
+        {
+            Instance copied = instance.copy();
+            assertThat(copied).isEqualTo(instance);
+            assertThat(copied.hashCode()).isEqualTo(instance.hashCode());
+            assertThat(Set.of(instance)).contains(copied);
+        }
+
+        // a difference in a nested field is detected
+        {
+            Instance copied = instance.copy();
+            copied.parallelApproval.get("operator-1").approved = true;
+            assertThat(copied).isNotEqualTo(instance);
+        }
+
+        {
+            Instance copied = instance.copy();
+            copied.operateLogList.get(0).comment = "changed";
+            assertThat(copied).isNotEqualTo(instance);
+        }
+
+        // approval statuses and operate logs compare by their fields
+        {
+            assertThat(new ApprovalStatus("operator-1", true)).isEqualTo(new ApprovalStatus("operator-1", true));
+            assertThat(new ApprovalStatus("operator-1", true)).isNotEqualTo(new ApprovalStatus("operator-1", false));
+            assertThat(new ApprovalStatus("operator-1", true).hashCode()).isEqualTo(new ApprovalStatus("operator-1", true).hashCode());
+
+            OperateLog log = instance.operateLogList.get(0).copy();
+            assertThat(log).isEqualTo(instance.operateLogList.get(0));
+            assertThat(log).isNotEqualTo(null);
+        }
+
+        // log contexts compare by their content, e.g. when read back from the database
+        {
+            var logContext = new TestOperatorLogContext();
+            logContext.operator = Map.of("name", "operator-1-name");
+            var log = new OperateLog();
+            log.logContext = logContext;
+
+            var readBack = JsonUtil.fromJson(JsonUtil.toJson(log), OperateLog.class);
+            assertThat(readBack.logContext).isNotSameAs(logContext);
+            assertThat(readBack).isEqualTo(log);
+            assertThat(readBack.hashCode()).isEqualTo(log.hashCode());
+
+            ((TestOperatorLogContext) readBack.logContext).operator = Map.of("name", "operator-2-name");
+            assertThat(readBack).isNotEqualTo(log);
+        }
+
+        // subclasses compare their own fields as well
+        {
+            var extended = JsonUtil.fromJson(JsonUtil.toJson(instance), ExtendedInstance.class);
+            extended.extra = "extra-1";
+            ExtendedInstance copied = extended.copy();
+            assertThat(copied).isEqualTo(extended);
+            assertThat(copied.hashCode()).isEqualTo(extended.hashCode());
+
+            copied.extra = "extra-2";
+            assertThat(copied).isNotEqualTo(extended);
+            assertThat(extended).isNotEqualTo(instance);
+        }
+    }
+
+    public static class ExtendedInstance extends Instance {
+
+        public String extra = "";
+    }
+
+    static Instance generateInstance() {
+        var instance = new Instance("workflow-1", "definition-1");
+        instance.id = "instance-1";
+        instance.createdAt = "2024-01-01T00:00:00.000Z";
+        instance.updatedAt = "2024-01-02T00:00:00.000Z";
+        instance.nodeId = "node-1";
+        instance.preNodeId = "node-0";
+        instance.operatorIdSet.addAll(Set.of("operator-1", "operator-2"));
+        instance.operatorOrgIdSet.add("org-1");
+        instance.expandOperatorIdSet.addAll(Set.of("operator-1", "operator-2"));
+        instance.preExpandOperatorIdSet.add("operator-0");
+        instance.applicationMode = ApplicationMode.SELF;
+        instance.applicant = "applicant-1";
+        instance.status = Status.PROCESSING;
+        instance.parallelApproval.put("operator-1", new ApprovalStatus("operator-1", false));
+        instance.parallelApproval.put("operator-2", new ApprovalStatus("operator-2", true));
+        instance.allowingActions.add(Action.NEXT);
+
+        var operateLog = new OperateLog();
+        operateLog.nodeId = "node-0";
+        operateLog.nodeName = "start";
+        operateLog.statusBefore = Status.PROCESSING;
+        operateLog.statusAfter = Status.PROCESSING;
+        operateLog.operatorId = "applicant-1";
+        operateLog.action = Action.APPLY.name();
+        operateLog.operatorAt = "2024-01-01T00:00:00.000Z";
+        instance.operateLogList.add(operateLog);
+        return instance;
+    }
+}
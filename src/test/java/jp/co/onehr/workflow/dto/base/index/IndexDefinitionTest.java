@@ -2,10 +2,12 @@ package jp.co.onehr.workflow.dto.base.index;
 
 import java.util.List;
 
+import jp.co.onehr.workflow.constant.Status;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
 class IndexDefinitionTest {
 
@@ -75,4 +77,65 @@ class IndexDefinitionTest {
                     .hasMessage("GIN index only supports TEXT or JSONB field type");
         }
     }
+
+    @Test
+    void where_should_work() {
+        // A definition without conditions indexes all documents.
+        {
+            var definition = IndexDefinition.of(IndexField.of("workflowId"));
+
+            assertThat(definition.isPartial()).isFalse();
+            assertThat(definition.partialFilter).isEmpty();
+        }
+
+        // Conditions are added in order and enums are compared by name.
+        {
+            var base = IndexDefinition.ofGin(IndexField.of("expandOperatorIdSet", IndexFieldType.JSONB));
+            var definition = base.where("status", Status.PROCESSING).where("retracted", false);
+
+            assertThat(definition.isPartial()).isTrue();
+            assertThat(definition.method).isEqualTo(IndexMethod.GIN);
+            assertThat(definition.partialFilter).containsExactly(entry("status", "PROCESSING"), entry("retracted", false));
+            assertThat(base.isPartial()).isFalse();
+        }
+
+        // Only scalar values can be used as conditions.
+        {
+            assertThatThrownBy(() -> IndexDefinition.of(IndexField.of("workflowId")).where("status", List.of("PROCESSING")))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("Partial filter value should be String, Number, Boolean or Enum");
+
+            assertThatThrownBy(() -> IndexDefinition.of(IndexField.of("workflowId")).where(" ", "PROCESSING"))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Partial filter field name is required.");
+        }
+    }
+
+    @Test
+    void include_should_work() {
+        // Included fields are added in order and kept with the conditions.
+        {
+            var base = IndexDefinition.of(List.of(IndexField.of("workflowId"), IndexField.of("status")), false);
+            var definition = base.where("status", Status.PROCESSING).include(IndexField.of("nodeId")).include(IndexField.of("updatedAt"));
+
+            assertThat(definition.hasIncludedFields()).isTrue();
+            assertThat(definition.includedFields).extracting(field -> field.fieldName).containsExactly("nodeId", "updatedAt");
+            assertThat(definition.partialFilter).containsExactly(entry("status", "PROCESSING"));
+            assertThat(base.hasIncludedFields()).isFalse();
+        }
+
+        // Included fields would change the uniqueness of a unique index.
+        {
+            assertThatThrownBy(() -> IndexDefinition.of(IndexField.of("employeeCode"), true).include(IndexField.of("name")))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Included fields are not supported for unique indexes");
+        }
+
+        // GIN indexes cannot store included fields.
+        {
+            assertThatThrownBy(() -> IndexDefinition.ofGin(IndexField.of("targetIdList", IndexFieldType.JSONB)).include(IndexField.of("name")))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Included fields are only supported for BTREE indexes");
+        }
+    }
 }
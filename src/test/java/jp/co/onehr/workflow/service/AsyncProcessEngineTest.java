@@ -0,0 +1,173 @@
+package jp.co.onehr.workflow.service;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.thunderz99.cosmos.condition.Condition;
+import jp.co.onehr.workflow.ProcessConfiguration;
+import jp.co.onehr.workflow.base.BaseTest;
+import jp.co.onehr.workflow.constant.Action;
+import jp.co.onehr.workflow.constant.WorkflowErrors;
+import jp.co.onehr.workflow.dto.param.ApplicationParam;
+import jp.co.onehr.workflow.dto.param.WorkflowCreationParam;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncProcessEngineTest extends BaseTest {
+
+    @Test
+    void asyncProcessEngine_should_work() throws Exception {
+        var asyncEngine = ProcessConfiguration.getConfiguration().buildAsyncProcessEngine();
+
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "asyncProcessEngine_should_work";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            // operations complete with the result of the blocking engine
+            {
+                var param = new ApplicationParam();
+                param.workflowId = workflow.id;
+                param.applicant = "operator-1";
+                var instance = asyncEngine.startInstance(host, param).join();
+                assertThat(instance.workflowId).isEqualTo(workflow.id);
+
+                var result = asyncEngine.getInstance(host, instance.getId()).join();
+                assertThat(result.getId()).isEqualTo(instance.getId());
+            }
+
+            // an exception of the operation completes the future exceptionally
+            {
+                var future = asyncEngine.resolve(host, "not-exist-instance", Action.NEXT, "operator-1");
+                assertThatThrownBy(future::join)
+                        .isInstanceOf(CompletionException.class)
+                        .hasCauseInstanceOf(WorkflowException.class)
+                        .hasMessageContaining(WorkflowErrors.INSTANCE_NOT_EXIST.name());
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void registered_executor_should_run_the_operations() throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var defaultExecutor = configuration.getAsyncExecutor();
+        try {
+            var threadNames = ConcurrentHashMap.<String>newKeySet();
+            Executor executor = command -> {
+                threadNames.add(Thread.currentThread().getName());
+                command.run();
+            };
+            configuration.registerAsyncExecutor(executor);
+            var asyncEngine = configuration.buildAsyncProcessEngine();
+
+            // the operations run on the registered executor
+            {
+                var result = asyncEngine.findInstances(host, Condition.filter("id", "not-exist-instance")).join();
+                assertThat(result).isEmpty();
+                assertThat(threadNames).containsExactly(Thread.currentThread().getName());
+            }
+
+            // engines built before keep their executor
+            {
+                configuration.registerAsyncExecutor(defaultExecutor);
+                threadNames.clear();
+                asyncEngine.findInstances(host, Condition.filter("id", "not-exist-instance")).join();
+                assertThat(threadNames).hasSize(1);
+            }
+        } finally {
+            configuration.registerAsyncExecutor(defaultExecutor);
+        }
+    }
+
+    @Test
+    void default_executor_should_be_bounded() throws Exception {
+        var executor = ProcessConfiguration.getConfiguration().getAsyncExecutor();
+
+        // virtual threads are used where available, otherwise a pool of named daemon threads with a fixed size
+        if (executor instanceof ThreadPoolExecutor pool) {
+            assertThat(pool.getMaximumPoolSize()).isEqualTo(ProcessConfiguration.DEFAULT_ASYNC_POOL_SIZE);
+
+            var thread = CompletableFuture.supplyAsync(Thread::currentThread, pool).join();
+            assertThat(thread.getName()).startsWith("workflow-async-");
+            assertThat(thread.isDaemon()).isTrue();
+        }
+
+        // the operations beyond the pool size wait for a thread instead of adding more
+        {
+            var schemaExecutor = ProcessConfiguration.getConfiguration().getSchemaExecutor();
+            assertThat(schemaExecutor).isInstanceOf(ThreadPoolExecutor.class);
+            var pool = (ThreadPoolExecutor) schemaExecutor;
+
+            var release = new CountDownLatch(1);
+            var running = new AtomicInteger();
+            var maxRunning = new AtomicInteger();
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            try {
+                for (var i = 0; i < ProcessConfiguration.DEFAULT_SCHEMA_POOL_SIZE * 2; i++) {
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }, pool));
+                }
+                assertThat(pool.getPoolSize()).isLessThanOrEqualTo(ProcessConfiguration.DEFAULT_SCHEMA_POOL_SIZE);
+            } finally {
+                release.countDown();
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            assertThat(maxRunning.get()).isLessThanOrEqualTo(ProcessConfiguration.DEFAULT_SCHEMA_POOL_SIZE);
+        }
+    }
+
+    @Test
+    void warmUp_should_run_on_the_schema_executor() throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var defaultAsyncExecutor = configuration.getAsyncExecutor();
+        var defaultSchemaExecutor = configuration.getSchemaExecutor();
+        // a host not initialized yet, on the same database
+        var warmUpHost = host + "-warm-up-" + getUuid();
+        try {
+            configuration.registerDB(warmUpHost, configuration.getDatabase(host), configuration.getCollectionName(host));
+
+            var asyncCount = new AtomicInteger();
+            var schemaCount = new AtomicInteger();
+            configuration.registerAsyncExecutor(command -> {
+                asyncCount.incrementAndGet();
+                defaultAsyncExecutor.execute(command);
+            });
+            configuration.registerSchemaExecutor(command -> {
+                schemaCount.incrementAndGet();
+                defaultSchemaExecutor.execute(command);
+            });
+
+            // the partitions and the recycle partitions are initialized on the schema executor, the asynchronous engine is not used
+            {
+                configuration.warmUp(warmUpHost);
+                assertThat(schemaCount.get()).isGreaterThanOrEqualTo(2);
+                assertThat(asyncCount.get()).isZero();
+            }
+        } finally {
+            configuration.registerAsyncExecutor(defaultAsyncExecutor);
+            configuration.registerSchemaExecutor(defaultSchemaExecutor);
+        }
+    }
+}
@@ -6,15 +6,19 @@ import java.util.Map;
 import java.util.Set;
 
 import io.github.thunderz99.cosmos.condition.Condition;
+import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.base.BaseCRUDServiceTest;
 import jp.co.onehr.workflow.constant.ApplicationMode;
 import jp.co.onehr.workflow.constant.ApprovalType;
 import jp.co.onehr.workflow.constant.NodeType;
 import jp.co.onehr.workflow.constant.WorkflowErrors;
+import jp.co.onehr.workflow.contract.context.TestContextParamService;
 import jp.co.onehr.workflow.dto.Definition;
+import jp.co.onehr.workflow.dto.Instance;
 import jp.co.onehr.workflow.dto.OperateLog;
 import jp.co.onehr.workflow.dto.Workflow;
 import jp.co.onehr.workflow.dto.node.*;
+import jp.co.onehr.workflow.dto.param.ContextParam;
 import jp.co.onehr.workflow.dto.param.DefinitionParam;
 import jp.co.onehr.workflow.dto.param.WorkflowCreationParam;
 import jp.co.onehr.workflow.dto.param.WorkflowUpdatingParam;
@@ -417,6 +421,74 @@ public class DefinitionServiceTest extends BaseCRUDServiceTest<Definition, Defin
         }
     }
 
+    @Test
+    void getDefinition_cache_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "getDefinition_cache_should_work";
+        creationParam.enableOperatorControl = false;
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, workflow.currentVersion);
+
+            {
+                // the second read is served from the cache
+                var before = processDesign.getDefinitionCacheStats(host);
+                processDesign.getDefinition(host, definition.getId());
+                var result = processDesign.getDefinition(host, definition.getId());
+                var stats = processDesign.getDefinitionCacheStats(host).minus(before);
+                assertThat(result.nodes).hasSize(2);
+                assertThat(stats.hitCount()).isGreaterThanOrEqualTo(1);
+            }
+
+            {
+                // modifying the returned definition does not affect the cached one
+                var result = processDesign.getDefinition(host, definition.getId());
+                result.nodes.clear();
+                assertThat(processDesign.getDefinition(host, definition.getId()).nodes).hasSize(2);
+            }
+
+            {
+                // the registered services receive a copy of the cached definition
+                var configuration = ProcessConfiguration.getConfiguration();
+                try {
+                    configuration.registerContextParamService((contextParam, received, instance, operatorId) -> received.nodes.clear());
+
+                    var cached = DefinitionService.singleton.getDefinition(host, definition.getId());
+                    configuration.generateContextParam4Bulk(new ContextParam(), cached, new Instance(), "operator-1");
+                    assertThat(cached.nodes).hasSize(2);
+                    assertThat(DefinitionService.singleton.getDefinition(host, definition.getId()).nodes).hasSize(2);
+                } finally {
+                    configuration.registerContextParamService(TestContextParamService.singleton);
+                }
+            }
+
+            {
+                // an in-place upsert invalidates the cached definition
+                var updatingParam = new WorkflowUpdatingParam();
+                updatingParam.id = workflowId;
+                updatingParam.enableVersion = false;
+                processDesign.updateWorkflow(host, updatingParam);
+
+                var singleNode = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+                singleNode.operatorId = "operator-1";
+                definition.nodes.add(1, singleNode);
+
+                var param = new DefinitionParam();
+                param.workflowId = workflowId;
+                param.enableOperatorControl = false;
+                param.nodes.addAll(definition.nodes);
+                processDesign.upsertDefinition(host, param);
+
+                var result = processDesign.getDefinition(host, definition.getId());
+                assertThat(result.nodes).hasSize(3);
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
     @Test
     void getCurrentDefinition_should_work() throws Exception {
         var creationParam = new WorkflowCreationParam();
@@ -1,26 +1,41 @@
 package jp.co.onehr.workflow.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import io.github.thunderz99.cosmos.condition.Condition;
+import io.github.thunderz99.cosmos.condition.SubConditionType;
+import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.base.BaseCRUDServiceTest;
 import jp.co.onehr.workflow.constant.*;
+import jp.co.onehr.workflow.contract.context.TestContextParamService;
 import jp.co.onehr.workflow.contract.context.TestInstanceContext;
 import jp.co.onehr.workflow.contract.context.TestOperatorLogContext;
 import jp.co.onehr.workflow.contract.notification.TestNotification;
 import jp.co.onehr.workflow.contract.plugin.TestPluginParam;
 import jp.co.onehr.workflow.contract.plugin.TestPluginResult;
+import jp.co.onehr.workflow.contract.restriction.TestActionRestriction;
 import jp.co.onehr.workflow.contract.restriction.TestApplicantActionContext;
+import jp.co.onehr.workflow.dto.ActionResult;
+import jp.co.onehr.workflow.dto.Definition;
 import jp.co.onehr.workflow.dto.Instance;
+import jp.co.onehr.workflow.dto.OperateLog;
+import jp.co.onehr.workflow.dto.RebindingJob;
 import jp.co.onehr.workflow.dto.node.MultipleNode;
 import jp.co.onehr.workflow.dto.node.RobotNode;
 import jp.co.onehr.workflow.dto.node.SingleNode;
 import jp.co.onehr.workflow.dto.param.*;
 import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.util.DateUtil;
 import org.junit.jupiter.api.Test;
 
 import static jp.co.onehr.workflow.contract.operator.TestOperatorService.*;
@@ -556,6 +571,127 @@ public class InstanceServiceTest extends BaseCRUDServiceTest<Instance, InstanceS
         }
     }
 
+    @Test
+    void resolve_concurrent_approvals_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "resolve_concurrent_approvals_should_work";
+        var workflowId = "";
+        var configuration = ProcessConfiguration.getConfiguration();
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var multipleNode = new MultipleNode("DEFAULT_MULTIPLE_NODE_NAME-1", ApprovalType.AND, Set.of("operator-1", "operator-2", "operator-3"), Set.of());
+            definition.nodes.add(1, multipleNode);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-0";
+
+            // an approval written by another request while the action is applied is kept, the action is applied again on top of it
+            {
+                var instanceId = processEngine.startInstance(host, param).getId();
+                var concurrentResolved = new AtomicBoolean(false);
+                configuration.registerActionRestriction(new TestActionRestriction() {
+                    @Override
+                    public Set<Action> handleProcessingByOperator(Definition definition, Instance instance, String operatorId) {
+                        if ("operator-1".equals(operatorId) && concurrentResolved.compareAndSet(false, true)) {
+                            try {
+                                processEngine.resolve(host, instanceId, Action.NEXT, "operator-2");
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                        return super.handleProcessingByOperator(definition, instance, operatorId);
+                    }
+                });
+
+                var logContext = new TestOperatorLogContext();
+                logContext.operator = Map.of("operator-1-name", "operator-1-name-value");
+                var extendParam = new ActionExtendParam();
+                extendParam.comment = "operator-1-comment";
+                extendParam.logContext = logContext;
+                processEngine.resolve(host, instanceId, Action.NEXT, "operator-1", extendParam);
+
+                var result = processEngine.getInstance(host, instanceId);
+                assertThat(result.nodeId).isEqualTo(multipleNode.nodeId);
+                assertThat(result.parallelApproval.get("operator-1").approved).isTrue();
+                assertThat(result.parallelApproval.get("operator-2").approved).isTrue();
+                assertThat(result.parallelApproval.get("operator-3").approved).isFalse();
+
+                // the param consumed by the first attempt is restored for the retry
+                var operatorLog = result.operateLogList.stream().filter(log -> "operator-1".equals(log.operatorId)).toList();
+                assertThat(operatorLog).hasSize(1);
+                assertThat(operatorLog.get(0).comment).isEqualTo("operator-1-comment");
+                assertThat(((TestOperatorLogContext) operatorLog.get(0).logContext).operator).containsEntry("operator-1-name", "operator-1-name-value");
+                assertThat(result.operateLogList).extracting(log -> log.operatorId).contains("operator-2");
+            }
+
+            // approvals sent at the same time all land
+            {
+                configuration.registerActionRestriction(TestActionRestriction.singleton);
+                var instanceId = processEngine.startInstance(host, param).getId();
+
+                var futures = new ArrayList<CompletableFuture<ActionResult>>();
+                for (var operatorId : List.of("operator-1", "operator-2")) {
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return processEngine.resolve(host, instanceId, Action.NEXT, operatorId);
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
+                }
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+                var result = processEngine.getInstance(host, instanceId);
+                assertThat(result.parallelApproval.get("operator-1").approved).isTrue();
+                assertThat(result.parallelApproval.get("operator-2").approved).isTrue();
+                assertThat(result.parallelApproval.get("operator-3").approved).isFalse();
+            }
+
+            // the retries stop after RESOLVE_MAX_ATTEMPTS when the instance keeps being modified
+            {
+                var instanceId = processEngine.startInstance(host, param).getId();
+                var attemptVersions = new ArrayList<Long>();
+                configuration.registerActionRestriction(new TestActionRestriction() {
+                    @Override
+                    public Set<Action> handleProcessingByOperator(Definition definition, Instance instance, String operatorId) {
+                        if ("operator-1".equals(operatorId) && !attemptVersions.contains(instance.dataVersion)) {
+                            attemptVersions.add(instance.dataVersion);
+                            try {
+                                var operations = PatchOperations.create().set("/updatedAt", DateUtil.nowDateTimeStringUTC());
+                                getService().patch(host, instanceId, operations, instance.dataVersion);
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                        return super.handleProcessingByOperator(definition, instance, operatorId);
+                    }
+                });
+
+                assertThatThrownBy(() -> processEngine.resolve(host, instanceId, Action.NEXT, "operator-1"))
+                        .isInstanceOfSatisfying(WorkflowException.class,
+                                e -> assertThat(e.getError()).isEqualTo(DatabaseErrors.VERSION_CONFLICT));
+                assertThat(attemptVersions).hasSize(InstanceService.RESOLVE_MAX_ATTEMPTS);
+
+                var result = processEngine.getInstance(host, instanceId);
+                assertThat(result.parallelApproval.get("operator-1").approved).isFalse();
+                assertThat(result.operateLogList).extracting(log -> log.operatorId).doesNotContain("operator-1");
+            }
+        } finally {
+            configuration.registerActionRestriction(TestActionRestriction.singleton);
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
     @Test
     void resolve_multipleNode_and_should_work() throws Exception {
         var creationParam = new WorkflowCreationParam();
@@ -2881,6 +3017,7 @@ public class InstanceServiceTest extends BaseCRUDServiceTest<Instance, InstanceS
         var creationParam = new WorkflowCreationParam();
         creationParam.name = "bulk_rebinding_should_work";
         var workflowId = "";
+        var configuration = ProcessConfiguration.getConfiguration();
         try {
             var workflow = processDesign.createWorkflow(host, creationParam);
             workflowId = workflow.getId();
@@ -2964,7 +3101,25 @@ public class InstanceServiceTest extends BaseCRUDServiceTest<Instance, InstanceS
                 bulkRebindingParam.definitionVersion = 2;
                 bulkRebindingParam.comment = "rebinding test";
                 bulkRebindingParam.statuses.add(Status.PROCESSING);
-                processEngine.bulkRebinding(host, workflowId, "operator-admin", bulkRebindingParam);
+
+                // the instances are rebound on the shared pool of bulk operations
+                var threadNames = ConcurrentHashMap.<String>newKeySet();
+                configuration.registerContextParamService(new TestContextParamService() {
+                    @Override
+                    public void generateContextParam4Bulk(ContextParam contextParam, Definition definition, Instance instance, String operatorId) {
+                        threadNames.add(Thread.currentThread().getName());
+                        super.generateContextParam4Bulk(contextParam, definition, instance, operatorId);
+                    }
+                });
+                var summary = processEngine.bulkRebinding(host, workflowId, "operator-admin", bulkRebindingParam);
+                assertThat(threadNames).isNotEmpty().allMatch(name -> name.startsWith("workflow-bulk-"));
+                assertThat(summary.total).isEqualTo(2);
+                assertThat(summary.successCount).isEqualTo(2);
+                assertThat(summary.failures).isEmpty();
+
+                var job = processEngine.getBulkRebindingJob(host, workflowId);
+                assertThat(job.status).isEqualTo(JobStatus.COMPLETED);
+                assertThat(job.summary.successCount).isEqualTo(2);
 
                 var instances = processEngine.findInstances(host, Condition.filter("workflowId", workflowId));
                 var instanceMap = instances.stream().collect(Collectors.toMap(i -> i.getId(), i -> i));
@@ -3003,6 +3158,108 @@ public class InstanceServiceTest extends BaseCRUDServiceTest<Instance, InstanceS
                 assertThat(operateLogList3.get(1).comment).isEqualTo("operator-3-comment");
             }
         } finally {
+            configuration.registerContextParamService(TestContextParamService.singleton);
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void bulk_rebinding_job_should_resume() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "bulk_rebinding_job_should_resume";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode.operatorId = "operator-node-1";
+            definition.nodes.add(1, singleNode);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+            definition = processDesign.getCurrentDefinition(host, workflow.id, 1);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instanceIds = new ArrayList<String>();
+            for (var i = 0; i < 3; i++) {
+                instanceIds.add(processEngine.startInstance(host, param).getId());
+            }
+            instanceIds.sort(String::compareTo);
+
+            // new definition
+            var newSingleNode = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            newSingleNode.operatorId = "operator-node-2";
+
+            var newDefinitionParam = new DefinitionParam();
+            newDefinitionParam.workflowId = workflowId;
+            newDefinitionParam.enableOperatorControl = false;
+            newDefinitionParam.nodes.addAll(List.of(definition.nodes.get(0), newSingleNode, definition.nodes.get(2)));
+            processDesign.upsertDefinition(host, newDefinitionParam);
+            var newDefinition = processDesign.getCurrentDefinition(host, workflow.id, 2);
+
+            var bulkRebindingParam = new BulkRebindingParam();
+            bulkRebindingParam.definitionVersion = 2;
+            bulkRebindingParam.statuses.add(Status.PROCESSING);
+
+            // a job stopped after the first instance is resumed from its checkpoint once its lease expired
+            {
+                var job = new RebindingJob(workflowId, newDefinition.id, "operator-admin", bulkRebindingParam);
+                job.lastInstanceId = instanceIds.get(0);
+                job.summary.total = 1;
+                job.summary.successCount = 1;
+                RebindingJobService.singleton.start(host, job, null);
+
+                // a second job of the workflow started at the same time conflicts on the id
+                var id = workflowId;
+                assertThatThrownBy(() -> RebindingJobService.singleton.start(host, new RebindingJob(id, newDefinition.id, "operator-admin", bulkRebindingParam), null))
+                        .isInstanceOf(WorkflowException.class)
+                        .hasMessageContaining(WorkflowErrors.REBINDING_JOB_RUNNING.name());
+
+                // the job is alive within its lease
+                assertThatThrownBy(() -> processEngine.startBulkRebindingJob(host, id, "operator-admin", bulkRebindingParam))
+                        .isInstanceOf(WorkflowException.class)
+                        .hasMessageContaining(WorkflowErrors.REBINDING_JOB_RUNNING.name());
+                assertThatThrownBy(() -> processEngine.resumeBulkRebindingJob(host, id))
+                        .isInstanceOf(WorkflowException.class)
+                        .hasMessageContaining(WorkflowErrors.REBINDING_JOB_RUNNING.name());
+
+                ProcessConfiguration.getConfiguration().configureBulkRebindingLease(Duration.ofMillis(1));
+                Thread.sleep(1100);
+
+                var result = processEngine.resumeBulkRebindingJob(host, workflowId);
+                assertThat(result.status).isEqualTo(JobStatus.COMPLETED);
+                assertThat(result.lastInstanceId).isEqualTo(instanceIds.get(2));
+                assertThat(result.summary.total).isEqualTo(3);
+                assertThat(result.summary.successCount).isEqualTo(3);
+
+                assertThat(processEngine.getInstance(host, instanceIds.get(0)).definitionId).isEqualTo(definition.id);
+                assertThat(processEngine.getInstance(host, instanceIds.get(1)).definitionId).isEqualTo(newDefinition.id);
+                assertThat(processEngine.getInstance(host, instanceIds.get(2)).definitionId).isEqualTo(newDefinition.id);
+            }
+
+            // resuming a completed job does nothing
+            {
+                var result = processEngine.resumeBulkRebindingJob(host, workflowId);
+                assertThat(result.status).isEqualTo(JobStatus.COMPLETED);
+                assertThat(result.summary.total).isEqualTo(3);
+            }
+
+            // a new job replaces the completed one, only the instance left on the old definition matches
+            {
+                var result = processEngine.startBulkRebindingJob(host, workflowId, "operator-admin", bulkRebindingParam);
+                assertThat(result.status).isEqualTo(JobStatus.COMPLETED);
+                assertThat(result.summary.total).isEqualTo(1);
+            }
+        } finally {
+            ProcessConfiguration.getConfiguration().configureBulkRebindingLease(Duration.ofMinutes(10));
             WorkflowService.singleton.purge(host, workflowId);
         }
     }
@@ -3439,4 +3696,643 @@ public class InstanceServiceTest extends BaseCRUDServiceTest<Instance, InstanceS
         }
     }
 
+    @Test
+    void countInstances_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "countInstances_should_work";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-node-1";
+            definition.nodes.add(1, singleNode1);
+            var singleNode2 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            singleNode2.operatorId = "operator-node-2";
+            definition.nodes.add(2, singleNode2);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instance1 = processEngine.startInstance(host, param);
+            processEngine.startInstance(host, param);
+            var instance3 = processEngine.startInstance(host, param);
+
+            processEngine.resolve(host, instance1.getId(), Action.NEXT, "operator-node-1");
+            processEngine.resolve(host, instance3.getId(), Action.REJECT, "operator-node-1");
+
+            // instances are counted per node and status
+            {
+                var counts = processEngine.countInstances(host, workflowId, List.of("nodeId", "status"));
+                var countMap = counts.stream().collect(Collectors.toMap(c -> c.group.get("nodeId") + "/" + c.group.get("status"), c -> c.count));
+                assertThat(countMap).containsOnly(
+                        Map.entry(singleNode1.nodeId + "/" + Status.PROCESSING.name(), 1L),
+                        Map.entry(singleNode1.nodeId + "/" + Status.REJECTED.name(), 1L),
+                        Map.entry(singleNode2.nodeId + "/" + Status.PROCESSING.name(), 1L));
+            }
+
+            // the same filters as findInstances can be used
+            {
+                var counts = processEngine.countInstances(host, Condition.filter("workflowId", workflowId, "status", Status.PROCESSING.name()), List.of("status"));
+                assertThat(counts).hasSize(1);
+                assertThat(counts.get(0).group).containsEntry("status", Status.PROCESSING.name());
+                assertThat(counts.get(0).count).isEqualTo(2);
+            }
+
+            // groupBy is required
+            {
+                var id = workflowId;
+                assertThatThrownBy(() -> processEngine.countInstances(host, id, List.of()))
+                        .isInstanceOf(IllegalArgumentException.class);
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void findInstanceSummaries_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "findInstanceSummaries_should_work";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-node-1";
+            definition.nodes.add(1, singleNode1);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instance = processEngine.startInstance(host, param);
+
+            // only the fields of the summary are read
+            {
+                var summaries = processEngine.findInstanceSummaries(host, Condition.filter("workflowId", workflowId));
+                assertThat(summaries).hasSize(1);
+
+                var summary = summaries.get(0);
+                assertThat(summary.id).isEqualTo(instance.id);
+                assertThat(summary.workflowId).isEqualTo(workflowId);
+                assertThat(summary.definitionId).isEqualTo(instance.definitionId);
+                assertThat(summary.nodeId).isEqualTo(singleNode1.nodeId);
+                assertThat(summary.status).isEqualTo(Status.PROCESSING);
+                assertThat(summary.applicant).isEqualTo("operator-1");
+                assertThat(summary.createdAt).isEqualTo(instance.createdAt);
+                assertThat(summary.updatedAt).isEqualTo(instance.updatedAt);
+            }
+
+            // the condition of the caller is not modified
+            {
+                var cond = Condition.filter("workflowId", workflowId).fields("id", "operateLogList");
+                assertThat(processEngine.findInstanceSummaries(host, cond)).hasSize(1);
+                assertThat(cond.fields).containsExactly("id", "operateLogList");
+            }
+
+            // negation and sub conditions of the caller are kept
+            {
+                var negated = Condition.filter("workflowId", workflowId, "applicant", "operator-1").not();
+                assertThat(processEngine.findInstanceSummaries(host, negated)).extracting(summary -> summary.id).doesNotContain(instance.id);
+
+                var subCond = Condition.filter("workflowId", workflowId,
+                        SubConditionType.OR, List.of(Condition.filter("applicant", "operator-1"), Condition.filter("applicant", "operator-2")));
+                assertThat(processEngine.findInstanceSummaries(host, subCond)).hasSize(1);
+
+                var noMatch = Condition.filter("workflowId", workflowId,
+                        SubConditionType.OR, List.of(Condition.filter("applicant", "operator-2"), Condition.filter("applicant", "operator-3")));
+                assertThat(processEngine.findInstanceSummaries(host, noMatch)).isEmpty();
+            }
+
+            // a condition is required
+            {
+                assertThatThrownBy(() -> processEngine.findInstanceSummaries(host, null))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("cond should not be null");
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void findPendingTasks_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "findPendingTasks_should_work";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-pending-1";
+            definition.nodes.add(1, singleNode1);
+            var singleNode2 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            singleNode2.operatorId = "operator-pending-2";
+            definition.nodes.add(2, singleNode2);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instanceIds = new ArrayList<String>();
+            for (var i = 0; i < 3; i++) {
+                instanceIds.add(processEngine.startInstance(host, param).getId());
+            }
+            instanceIds.sort(String::compareTo);
+
+            // the pending tasks are paged in the order of the instance id
+            {
+                var page1 = processEngine.findPendingTasks(host, "operator-pending-1", null, 2);
+                assertThat(page1.items).extracting(i -> i.id).containsExactly(instanceIds.get(0), instanceIds.get(1));
+                assertThat(page1.hasNext()).isTrue();
+
+                var page2 = processEngine.findPendingTasks(host, "operator-pending-1", page1.nextCursor, 2);
+                assertThat(page2.items).extracting(i -> i.id).containsExactly(instanceIds.get(2));
+                assertThat(page2.hasNext()).isFalse();
+            }
+
+            // the task moves to the operator of the next node
+            {
+                processEngine.resolve(host, instanceIds.get(0), Action.NEXT, "operator-pending-1");
+
+                var page1 = processEngine.findPendingTasks(host, "operator-pending-1", null, 10);
+                assertThat(page1.items).extracting(i -> i.id).containsExactly(instanceIds.get(1), instanceIds.get(2));
+
+                var page2 = processEngine.findPendingTasks(host, "operator-pending-2", null, 10);
+                assertThat(page2.items).extracting(i -> i.id).containsExactly(instanceIds.get(0));
+            }
+
+            // finished instances are not pending
+            {
+                processEngine.resolve(host, instanceIds.get(0), Action.NEXT, "operator-pending-2");
+
+                var page = processEngine.findPendingTasks(host, "operator-pending-2", null, 10);
+                assertThat(page.items).isEmpty();
+                assertThat(page.hasNext()).isFalse();
+            }
+
+            // invalid parameters are rejected
+            {
+                assertThatThrownBy(() -> processEngine.findPendingTasks(host, "", null, 10))
+                        .isInstanceOf(IllegalArgumentException.class);
+                assertThatThrownBy(() -> processEngine.findPendingTasks(host, "operator-pending-1", null, 0))
+                        .isInstanceOf(IllegalArgumentException.class);
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void findTasks_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "findTasks_should_work";
+        var workflowId = "";
+        var configuration = ProcessConfiguration.getConfiguration();
+        try {
+            configuration.enableTaskProjection();
+
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-task-1";
+            definition.nodes.add(1, singleNode1);
+            var singleNode2 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            singleNode2.operatorId = "operator-task-2";
+            definition.nodes.add(2, singleNode2);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instanceIds = new ArrayList<String>();
+            for (var i = 0; i < 3; i++) {
+                instanceIds.add(processEngine.startInstance(host, param).getId());
+            }
+            instanceIds.sort(String::compareTo);
+
+            // a task is created for the operator of the first node
+            {
+                var page1 = processEngine.findTasks(host, "operator-task-1", null, 2);
+                assertThat(page1.items).extracting(t -> t.instanceId).containsExactly(instanceIds.get(0), instanceIds.get(1));
+                assertThat(page1.items.get(0).workflowId).isEqualTo(workflowId);
+                assertThat(page1.items.get(0).nodeId).isEqualTo(singleNode1.nodeId);
+                assertThat(page1.items.get(0).status).isEqualTo(Status.PROCESSING);
+                assertThat(page1.items.get(0).enteredAt).isNotEmpty();
+                assertThat(page1.hasNext()).isTrue();
+
+                var page2 = processEngine.findTasks(host, "operator-task-1", page1.nextCursor, 2);
+                assertThat(page2.items).extracting(t -> t.instanceId).containsExactly(instanceIds.get(2));
+                assertThat(page2.hasNext()).isFalse();
+            }
+
+            // the task moves to the operator of the next node
+            {
+                processEngine.resolve(host, instanceIds.get(0), Action.NEXT, "operator-task-1");
+
+                var page1 = processEngine.findTasks(host, "operator-task-1", null, 10);
+                assertThat(page1.items).extracting(t -> t.instanceId).containsExactly(instanceIds.get(1), instanceIds.get(2));
+
+                var page2 = processEngine.findTasks(host, "operator-task-2", null, 10);
+                assertThat(page2.items).extracting(t -> t.instanceId).containsExactly(instanceIds.get(0));
+                assertThat(page2.items.get(0).nodeId).isEqualTo(singleNode2.nodeId);
+            }
+
+            // the tasks of finished and canceled instances are removed
+            {
+                processEngine.resolve(host, instanceIds.get(0), Action.NEXT, "operator-task-2");
+                assertThat(processEngine.findTasks(host, "operator-task-2", null, 10).items).isEmpty();
+
+                processEngine.resolve(host, instanceIds.get(1), Action.CANCEL, "operator-task-1");
+                var page = processEngine.findTasks(host, "operator-task-1", null, 10);
+                assertThat(page.items).extracting(t -> t.instanceId).containsExactly(instanceIds.get(2));
+            }
+
+            // the tasks missing a change of the instance are rebuilt from the stored instance
+            {
+                // the tasks are projected from outdated instances
+                var stale = processEngine.getInstance(host, instanceIds.get(2));
+                stale.expandOperatorIdSet = Set.of("operator-stale");
+                TaskService.singleton.rebuild(host, stale.id, stale);
+                var finished = processEngine.getInstance(host, instanceIds.get(0));
+                finished.status = Status.PROCESSING;
+                finished.expandOperatorIdSet = Set.of("operator-task-1");
+                TaskService.singleton.rebuild(host, finished.id, finished);
+                assertThat(processEngine.findTasks(host, "operator-stale", null, 10).items).hasSize(1);
+
+                processEngine.rebuildTasks(host, instanceIds.get(2));
+                assertThat(processEngine.findTasks(host, "operator-stale", null, 10).items).isEmpty();
+                assertThat(processEngine.findTasks(host, "operator-task-1", null, 10).items).extracting(t -> t.instanceId)
+                        .containsExactlyInAnyOrder(instanceIds.get(0), instanceIds.get(2));
+
+                // the task of an instance no longer processing is removed
+                processEngine.rebuildTasks(host, instanceIds.get(0));
+                assertThat(processEngine.findTasks(host, "operator-task-1", null, 10).items).extracting(t -> t.instanceId)
+                        .containsExactly(instanceIds.get(2));
+            }
+
+            // a sync running after the sync of a later write does not add back the operators removed by the later write
+            {
+                var existInstance = processEngine.getInstance(host, instanceIds.get(2));
+                processEngine.resolve(host, instanceIds.get(2), Action.NEXT, "operator-task-1");
+                assertThat(processEngine.findTasks(host, "operator-task-1", null, 10).items).isEmpty();
+
+                // the sync of the earlier write, which moved the instance to the first node, runs late
+                Instance previousInstance = existInstance.copy();
+                previousInstance.nodeId = "";
+                previousInstance.expandOperatorIdSet = Set.of();
+                getService().recordChanges(host, previousInstance, existInstance);
+
+                assertThat(processEngine.findTasks(host, "operator-task-1", null, 10).items).isEmpty();
+                assertThat(processEngine.findTasks(host, "operator-task-2", null, 10).items).extracting(t -> t.instanceId)
+                        .containsExactly(instanceIds.get(2));
+            }
+        } finally {
+            configuration.disableTaskProjection();
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void getOperateLogs_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "getOperateLogs_should_work";
+        var workflowId = "";
+        var configuration = ProcessConfiguration.getConfiguration();
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-node-1";
+            definition.nodes.add(1, singleNode1);
+            var singleNode2 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            singleNode2.operatorId = "operator-node-2";
+            definition.nodes.add(2, singleNode2);
+            var singleNode3 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-3");
+            singleNode3.operatorId = "operator-node-3";
+            definition.nodes.add(3, singleNode3);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+
+            // logs stored only in the instance are paged by their position
+            {
+                var instance = processEngine.startInstance(host, param);
+                processEngine.resolve(host, instance.getId(), Action.NEXT, "operator-node-1");
+
+                var page1 = processEngine.getOperateLogs(host, instance.getId(), null, 1);
+                assertThat(page1.items).hasSize(1);
+                assertThat(page1.items.get(0).action).isEqualTo(Action.APPLY.name());
+                assertThat(page1.nextCursor).isNotNull();
+
+                var page2 = processEngine.getOperateLogs(host, instance.getId(), page1.nextCursor, 1);
+                assertThat(page2.items).hasSize(1);
+                assertThat(page2.items.get(0).operatorId).isEqualTo("operator-node-1");
+                assertThat(page2.nextCursor).isNull();
+            }
+
+            // externalized logs are stored separately and the instance keeps only the latest ones
+            {
+                configuration.externalizeOperateLogs(2);
+
+                var instance = processEngine.startInstance(host, param);
+                assertThat(instance.operateLogCount).isEqualTo(1);
+
+                processEngine.resolve(host, instance.getId(), Action.NEXT, "operator-node-1");
+                processEngine.resolve(host, instance.getId(), Action.NEXT, "operator-node-2");
+
+                var result = processEngine.getInstance(host, instance.getId());
+                assertThat(result.operateLogCount).isEqualTo(3);
+                assertThat(result.operateLogList).hasSize(2);
+                assertThat(result.operateLogList.get(0).operatorId).isEqualTo("operator-node-1");
+                assertThat(result.operateLogList.get(1).operatorId).isEqualTo("operator-node-2");
+
+                var page1 = processEngine.getOperateLogs(host, instance.getId(), "", 2);
+                assertThat(page1.items).extracting(log -> log.operatorId).containsExactly("operator-1", "operator-node-1");
+                assertThat(page1.nextCursor).isNotNull();
+
+                var page2 = processEngine.getOperateLogs(host, instance.getId(), page1.nextCursor, 2);
+                assertThat(page2.items).extracting(log -> log.operatorId).containsExactly("operator-node-2");
+                assertThat(page2.nextCursor).isNull();
+            }
+        } finally {
+            configuration.disableOperateLogExternalization();
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    @Test
+    void generatePatchOperations_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "generatePatchOperations_should_work";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-node-1";
+            definition.nodes.add(1, singleNode1);
+            var singleNode2 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            singleNode2.operatorId = "operator-node-2";
+            definition.nodes.add(2, singleNode2);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instanceId = processEngine.startInstance(host, param).getId();
+            processEngine.resolve(host, instanceId, Action.NEXT, "operator-node-1");
+
+            // an appended log is added at its position, changed fields are set
+            {
+                var existInstance = processEngine.getInstance(host, instanceId);
+                assertThat(existInstance.operateLogList).hasSize(2);
+
+                Instance instance = existInstance.copy();
+                instance.preNodeId = instance.nodeId;
+                instance.nodeId = "changed-node-id";
+                instance.operateLogList.add(generateOperateLog("operator-appended"));
+
+                var operations = getService().generatePatchOperations(existInstance, instance);
+                assertThat(operations).isNotNull();
+                assertThat(operations.getPatchOperations()).extracting(operation -> operation.getOperationType().name() + " " + operation.getPath())
+                        .containsExactly("SET /nodeId", "SET /preNodeId", "ADD /operateLogList/2", "SET /updatedAt");
+            }
+
+            // a modified log is set at its position
+            {
+                var existInstance = processEngine.getInstance(host, instanceId);
+
+                Instance instance = existInstance.copy();
+                instance.operateLogList.get(1).statusAfter = Status.CANCELED;
+
+                var operations = getService().generatePatchOperations(existInstance, instance);
+                assertThat(operations).isNotNull();
+                assertThat(operations.getPatchOperations()).extracting(operation -> operation.getOperationType().name() + " " + operation.getPath())
+                        .containsExactly("SET /operateLogList/1", "SET /updatedAt");
+            }
+
+            // a trimmed list is replaced as a whole
+            {
+                var existInstance = processEngine.getInstance(host, instanceId);
+
+                Instance instance = existInstance.copy();
+                instance.operateLogList.remove(0);
+
+                var operations = getService().generatePatchOperations(existInstance, instance);
+                assertThat(operations).isNotNull();
+                assertThat(operations.getPatchOperations()).extracting(operation -> operation.getOperationType().name() + " " + operation.getPath())
+                        .containsExactly("SET /operateLogList", "SET /updatedAt");
+            }
+
+            // a list with more than one modified log is replaced as a whole
+            {
+                var existInstance = processEngine.getInstance(host, instanceId);
+
+                Instance instance = existInstance.copy();
+                instance.operateLogList.get(0).comment = "modified-0";
+                instance.operateLogList.get(1).comment = "modified-1";
+                instance.operateLogList.add(generateOperateLog("operator-appended"));
+
+                var operations = getService().generatePatchOperations(existInstance, instance);
+                assertThat(operations).isNotNull();
+                assertThat(operations.getPatchOperations()).extracting(operation -> operation.getOperationType().name() + " " + operation.getPath())
+                        .containsExactly("SET /operateLogList", "SET /updatedAt");
+            }
+
+            // the patched instance is stored as modified
+            {
+                var existInstance = processEngine.getInstance(host, instanceId);
+
+                Instance instance = existInstance.copy();
+                instance.preNodeId = instance.nodeId;
+                instance.operatorIdSet.add("operator-added");
+                instance.operateLogList.get(1).comment = "modified";
+                instance.operateLogList.add(generateOperateLog("operator-appended"));
+                instance.operateLogCount = instance.operateLogList.size();
+                assertThat(getService().generatePatchOperations(existInstance, instance)).isNotNull();
+
+                var result = getService().persistChanges(host, existInstance, instance);
+                assertThat(result.dataVersion).isEqualTo(existInstance.dataVersion + 1);
+
+                var stored = processEngine.getInstance(host, instanceId);
+                instance.updatedAt = stored.updatedAt;
+                instance.dataVersion = stored.dataVersion;
+                assertThat(stored).isEqualTo(instance);
+            }
+
+            // changes over the patch operation limit fall back to update
+            {
+                var existInstance = processEngine.getInstance(host, instanceId);
+
+                Instance instance = existInstance.copy();
+                for (var i = 0; i < PatchOperations.LIMIT; i++) {
+                    instance.operateLogList.add(generateOperateLog("operator-appended-" + i));
+                }
+                instance.operateLogCount = instance.operateLogList.size();
+                assertThat(getService().generatePatchOperations(existInstance, instance)).isNull();
+
+                var result = getService().persistChanges(host, existInstance, instance);
+                assertThat(result.dataVersion).isEqualTo(existInstance.dataVersion + 1);
+
+                var stored = processEngine.getInstance(host, instanceId);
+                assertThat(stored.operateLogList).hasSize(existInstance.operateLogList.size() + PatchOperations.LIMIT);
+                instance.updatedAt = stored.updatedAt;
+                instance.dataVersion = stored.dataVersion;
+                assertThat(stored).isEqualTo(instance);
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
+    private static OperateLog generateOperateLog(String operatorId) {
+        var operateLog = new OperateLog();
+        operateLog.nodeId = "node-id";
+        operateLog.operatorId = operatorId;
+        operateLog.action = Action.NEXT.name();
+        operateLog.statusBefore = Status.PROCESSING;
+        operateLog.statusAfter = Status.PROCESSING;
+        operateLog.operatorAt = "2024-01-01T00:00:00Z";
+        return operateLog;
+    }
+
+    @Test
+    void resolveAll_should_work() throws Exception {
+        var creationParam = new WorkflowCreationParam();
+        creationParam.name = "resolveAll_should_work";
+        var workflowId = "";
+        try {
+            var workflow = processDesign.createWorkflow(host, creationParam);
+            workflowId = workflow.getId();
+
+            var definition = processDesign.getCurrentDefinition(host, workflow.id, 0);
+
+            var singleNode1 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-1");
+            singleNode1.operatorId = "operator-node-1";
+            definition.nodes.add(1, singleNode1);
+            var singleNode2 = new SingleNode("DEFAULT_SINGLE_NODE_NAME-2");
+            singleNode2.operatorId = "operator-node-2";
+            definition.nodes.add(2, singleNode2);
+
+            var definitionParam = new DefinitionParam();
+            definitionParam.workflowId = workflowId;
+            definitionParam.enableOperatorControl = false;
+            definitionParam.nodes.addAll(definition.nodes);
+            processDesign.upsertDefinition(host, definitionParam);
+
+            var param = new ApplicationParam();
+            param.workflowId = workflow.id;
+            param.applicant = "operator-1";
+            var instance1 = processEngine.startInstance(host, param);
+            var instance2 = processEngine.startInstance(host, param);
+
+            // requests sharing one extendParam are resolved with their own outcome
+            {
+                var extendParam = new ActionExtendParam();
+                extendParam.comment = "bulk comment";
+
+                var requests = List.of(
+                        new ResolveRequest(instance1.getId(), Action.NEXT, "operator-node-1", extendParam),
+                        new ResolveRequest(instance2.getId(), Action.NEXT, "operator-node-1", extendParam),
+                        new ResolveRequest(instance1.getId(), Action.NEXT, "operator-node-2", extendParam),
+                        new ResolveRequest("not-exist-instance", Action.NEXT, "operator-node-1", extendParam));
+
+                var result = processEngine.resolveAll(host, requests);
+                assertThat(result.successList).hasSize(2);
+                assertThat(result.retryList).containsExactly(requests.get(2));
+                assertThat(result.fatalList).hasSize(1);
+                assertThat(result.fatalList.get(0).request).isSameAs(requests.get(3));
+                assertThat(result.fatalList.get(0).error).hasMessageContaining(WorkflowErrors.INSTANCE_NOT_EXIST.name());
+
+                for (var instanceId : List.of(instance1.getId(), instance2.getId())) {
+                    var instance = processEngine.getInstance(host, instanceId);
+                    assertThat(instance.nodeId).isEqualTo(singleNode2.nodeId);
+                    assertThat(instance.expandOperatorIdSet).containsExactlyInAnyOrder("operator-node-2");
+                    assertThat(instance.operateLogList).hasSize(2);
+                    assertThat(instance.operateLogList.get(1).operatorId).isEqualTo("operator-node-1");
+                    assertThat(instance.operateLogList.get(1).comment).isEqualTo("bulk comment");
+                }
+            }
+
+            // an action not allowed for the operator fails only its own request
+            {
+                var testNotification = new TestNotification();
+                testNotification.content = "bulk notification";
+                var extendParam = new ActionExtendParam();
+                extendParam.notification = testNotification;
+
+                var requests = List.of(
+                        new ResolveRequest(instance1.getId(), Action.NEXT, "operator-node-2", extendParam),
+                        new ResolveRequest(instance2.getId(), Action.NEXT, "operator-node-1"));
+
+                var result = processEngine.resolveAll(host, requests);
+                assertThat(result.successList).hasSize(1);
+                assertThat(result.successList.get(0).instance.status).isEqualTo(Status.APPROVED);
+                assertThat(result.fatalList).hasSize(1);
+                assertThat(result.fatalList.get(0).request).isSameAs(requests.get(1));
+
+                // the notification is sent with the stored instance
+                var stored = processEngine.getInstance(host, instance1.getId());
+                assertThat(testNotification.result).isEqualTo("NEXT:bulk notification");
+                assertThat(testNotification.instanceVersion).isEqualTo(stored.dataVersion);
+                assertThat(result.successList.get(0).instance.dataVersion).isEqualTo(stored.dataVersion);
+            }
+        } finally {
+            WorkflowService.singleton.purge(host, workflowId);
+        }
+    }
+
 }
@@ -1,14 +1,31 @@
 package jp.co.onehr.workflow.service.base;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.github.thunderz99.cosmos.condition.Condition;
 import io.github.thunderz99.cosmos.dto.BulkPatchOperation;
+import io.github.thunderz99.cosmos.impl.postgres.PostgresImpl;
+import io.github.thunderz99.cosmos.impl.postgres.util.TableUtil;
 import io.github.thunderz99.cosmos.v4.PatchOperations;
+import jp.co.onehr.workflow.ProcessConfiguration;
 import jp.co.onehr.workflow.base.BaseTest;
+import jp.co.onehr.workflow.constant.DatabaseErrors;
+import jp.co.onehr.workflow.constant.WorkflowErrors;
+import jp.co.onehr.workflow.dao.write.VersionedPatch;
 import jp.co.onehr.workflow.dto.base.BaseData;
+import jp.co.onehr.workflow.dto.base.BulkDeleteSummary;
 import jp.co.onehr.workflow.dto.base.BulkResult;
+import jp.co.onehr.workflow.exception.WorkflowException;
+import jp.co.onehr.workflow.service.InstanceService;
+import jp.co.onehr.workflow.service.TaskService;
+import jp.co.onehr.workflow.service.infra.DBSchemaService;
+import jp.co.onehr.workflow.util.InfraUtil;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -46,6 +63,67 @@ class BaseCRUDServiceCaseTest extends BaseTest {
         }
     }
 
+    @Test
+    void versioned_write_should_work() throws Exception {
+        var created = service.create(host, new SampleEntity(getUuid(), "before"));
+        try {
+            // the version starts at 1 and is incremented by update
+            {
+                assertThat(created.dataVersion).isEqualTo(1);
+                var read = service.read(host, created.id);
+                read.name = "updated";
+                var updated = service.update(host, read);
+                assertThat(updated.dataVersion).isEqualTo(2);
+            }
+
+            // updating with a stale version is rejected
+            {
+                var stale = new SampleEntity(created.id, "stale");
+                stale.dataVersion = 1;
+                assertThatThrownBy(() -> service.update(host, stale))
+                        .isInstanceOfSatisfying(WorkflowException.class,
+                                e -> assertThat(e.getError()).isEqualTo(DatabaseErrors.VERSION_CONFLICT));
+                assertThat(service.read(host, created.id).name).isEqualTo("updated");
+            }
+
+            // a versioned patch succeeds with the current version and increments it
+            {
+                var result = service.patch(host, created.id, PatchOperations.create().set("/name", "patched"), 2);
+                assertThat(result.name).isEqualTo("patched");
+                assertThat(result.dataVersion).isEqualTo(3);
+            }
+
+            // a versioned patch with a stale version is rejected
+            {
+                assertThatThrownBy(() -> service.patch(host, created.id, PatchOperations.create().set("/name", "stale"), 2))
+                        .isInstanceOfSatisfying(WorkflowException.class,
+                                e -> assertThat(e.getError()).isEqualTo(DatabaseErrors.VERSION_CONFLICT));
+                assertThat(service.read(host, created.id).name).isEqualTo("patched");
+            }
+
+            // the versioned bulk patch applies the patches at the current version and reports the others by id
+            {
+                var other = service.create(host, new SampleEntity(getUuid(), "other"));
+                try {
+                    var patches = List.of(
+                            VersionedPatch.of(created.id, PatchOperations.create().set("/name", "bulk"), 3),
+                            VersionedPatch.of(other.id, PatchOperations.create().set("/name", "stale"), 5));
+                    var result = service.bulkPatchIfVersion(host, patches);
+                    assertThat(result.successMap).containsOnlyKeys(created.id);
+                    assertThat(result.successMap.get(created.id).get("name")).isEqualTo("bulk");
+                    assertThat(result.conflictIds).containsExactly(other.id);
+                    assertThat(result.errorMap).isEmpty();
+                    assertThat(service.read(host, created.id).dataVersion).isEqualTo(4);
+                    assertThat(service.read(host, other.id).name).isEqualTo("other");
+                } finally {
+                    service.purge(host, other.id);
+                }
+            }
+        } finally {
+            service.purge(host, created.id);
+        }
+    }
+
     @Test
     void bulkPatch_should_work() throws Exception {
         // Apply different operations to each document.
@@ -113,6 +191,230 @@ class BaseCRUDServiceCaseTest extends BaseTest {
         }
     }
 
+    @Test
+    void findPage_should_work() throws Exception {
+        var name = "page-" + getUuid();
+        var data = new ArrayList<SampleEntity>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                data.add(service.create(host, new SampleEntity(getUuid(), name)));
+            }
+            var ids = data.stream().map(item -> item.id).sorted().toList();
+            var cond = Condition.filter("name", name);
+
+            // pages are read in the order of the id
+            {
+                var page1 = service.findPage(host, cond, null, 2);
+                assertThat(page1.items).extracting(item -> item.id).containsExactly(ids.get(0), ids.get(1));
+                assertThat(page1.hasNext()).isTrue();
+
+                var page2 = service.findPage(host, cond, page1.nextCursor, 2);
+                assertThat(page2.items).extracting(item -> item.id).containsExactly(ids.get(2), ids.get(3));
+
+                var page3 = service.findPage(host, cond, page2.nextCursor, 2);
+                assertThat(page3.items).extracting(item -> item.id).containsExactly(ids.get(4));
+                assertThat(page3.hasNext()).isFalse();
+            }
+
+            // the id is read even if it is not in the fields
+            {
+                var page = service.findPage(host, Condition.filter("name", name).fields("name"), null, 2);
+                assertThat(page.items).extracting(item -> item.id).containsExactly(ids.get(0), ids.get(1));
+                assertThat(page.nextCursor).isEqualTo(ids.get(1));
+            }
+
+            // documents deleted while iterating do not shift the following pages
+            {
+                var iterator = service.iterate(host, cond, 2);
+                var iterated = new ArrayList<String>();
+                while (iterator.hasNext()) {
+                    var item = iterator.next();
+                    iterated.add(item.id);
+                    if (item.id.equals(ids.get(0))) {
+                        // in the next page
+                        service.purge(host, ids.get(2));
+                    }
+                }
+                assertThat(iterated).containsExactly(ids.get(0), ids.get(1), ids.get(3), ids.get(4));
+            }
+
+            // all documents are streamed page by page
+            {
+                assertThat(service.stream(host, cond, 2).map(item -> item.id).toList())
+                        .containsExactly(ids.get(0), ids.get(1), ids.get(3), ids.get(4));
+            }
+
+            // reject an invalid limit
+            {
+                assertThatThrownBy(() -> service.findPage(host, cond, null, 0))
+                        .isInstanceOf(IllegalArgumentException.class);
+            }
+        } finally {
+            for (var item : data) {
+                if (service.readSuppressing404(host, item.id) != null) {
+                    service.purge(host, item.id);
+                }
+            }
+        }
+    }
+
+    @Test
+    void bulkDelete_should_work() throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var name = "bulk-delete-" + getUuid();
+        var data = new ArrayList<SampleEntity>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                data.add(service.create(host, new SampleEntity(getUuid(), name)));
+            }
+            var ids = data.stream().map(item -> item.id).toList();
+
+            // the documents are moved to the recycle bin chunk by chunk, reporting the progress
+            {
+                configuration.configureBulkDelete(2, 2);
+                var summary = new BulkDeleteSummary();
+                var progress = new ArrayList<Integer>();
+                service.bulkDelete(host, Condition.filter("name", name), summary, s -> progress.add(s.total));
+
+                assertThat(progress).containsExactly(2, 4, 5);
+                assertThat(summary.total).isEqualTo(5);
+                assertThat(summary.deletedCount).isEqualTo(5);
+                assertThat(summary.failureCount).isZero();
+                assertThat(summary.failures).isEmpty();
+
+                for (var id : ids) {
+                    assertThat(service.readSuppressing404(host, id)).isNull();
+                    var recycle = service.readRaw(host, id, true);
+                    assertThat(recycle).isNotNull();
+                    assertThat(recycle.get(BaseCRUDService.ORIGINAL_DATA)).asString().contains(name);
+                }
+            }
+
+            // ids that do not exist are ignored
+            {
+                assertThat(service.bulkDelete(host, List.of(getUuid()))).isEmpty();
+                assertThat(service.bulkDelete(host, List.of())).isEmpty();
+            }
+
+            // a failed chunk stops the deletion, the running chunks are finished before the exception is thrown
+            {
+                var failureData = new ArrayList<SampleEntity>();
+                for (int i = 0; i < 5; i++) {
+                    failureData.add(service.create(host, new SampleEntity(getUuid(), name + "-failure")));
+                }
+                data.addAll(failureData);
+
+                var calls = new AtomicInteger();
+                var running = new AtomicInteger();
+                var failingService = new SampleEntityService() {
+                    @Override
+                    protected Map<String, String> bulkDelete(String host, List<String> ids) throws Exception {
+                        running.incrementAndGet();
+                        try {
+                            if (calls.incrementAndGet() == 1) {
+                                throw new IllegalStateException("chunk failed");
+                            }
+                            Thread.sleep(200);
+                            return super.bulkDelete(host, ids);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }
+                };
+
+                configuration.configureBulkDelete(2, 1);
+                var summary = new BulkDeleteSummary();
+                assertThatThrownBy(() -> failingService.bulkDelete(host, Condition.filter("name", name + "-failure"), summary, null))
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasMessage("chunk failed");
+
+                assertThat(running.get()).isZero();
+                assertThat(calls.get()).isLessThan(failureData.size());
+                var remaining = failureData.stream().filter(item -> {
+                    try {
+                        return service.readSuppressing404(host, item.id) != null;
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }).count();
+                assertThat(remaining).isEqualTo(failureData.size() - summary.deletedCount);
+            }
+        } finally {
+            configuration.configureBulkDelete(4, 100);
+            for (var item : data) {
+                if (service.readSuppressing404(host, item.id) != null) {
+                    service.purge(host, item.id);
+                }
+            }
+        }
+    }
+
+    @Test
+    void initSchema_should_work() throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+
+        // concurrent first callers share the same initialization
+        {
+            var freshService = new SampleEntityService();
+            var first = freshService.initSchema(host, configuration.getSchemaExecutor());
+            var second = freshService.initSchema(host, Runnable::run);
+            assertThat(second).isSameAs(first);
+
+            first.join();
+            assertThat(freshService.getColl(host)).isEqualTo(configuration.getCollectionName(host));
+            assertThat(freshService.initSchema(host, Runnable::run)).isSameAs(first);
+        }
+
+        // the warm-up initializes all services of the host
+        {
+            configuration.warmUp(host);
+            assertThat(InstanceService.singleton.schemaInitializedMap.get(host)).isCompleted();
+            assertThat(TaskService.singleton.schemaInitializedMap.get(host)).isCompleted();
+        }
+
+        // reject a host that is not registered
+        {
+            assertThatThrownBy(() -> configuration.warmUp("not-registered-" + getUuid()))
+                    .isInstanceOf(WorkflowException.class)
+                    .hasMessageContaining(WorkflowErrors.WORKFLOW_ENGINE_REGISTER_INVALID.name());
+        }
+    }
+
+    @Test
+    @EnabledIf("isPostgres")
+    void dropped_table_should_be_created_again() throws Exception {
+        var configuration = ProcessConfiguration.getConfiguration();
+        var schemaName = configuration.getCollectionName(host);
+        var postgresAccount = (PostgresImpl) configuration.getDatabase(host).getCosmosAccount();
+
+        var freshService = new SampleEntityService();
+        var item = freshService.create(host, new SampleEntity(getUuid(), "before"));
+
+        // a query on a table dropped while its manifest remains creates the table again
+        {
+            try (var conn = postgresAccount.getDataSource().getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, freshService.getPartition());
+            }
+
+            assertThat(freshService.readSuppressing404(host, item.id)).isNull();
+            assertThat(freshService.find(host, Condition.filter("id", item.id))).isEmpty();
+
+            var created = freshService.create(host, new SampleEntity(getUuid(), "after"));
+            assertThat(freshService.read(host, created.id).name).isEqualTo("after");
+            freshService.purge(host, created.id);
+        }
+
+        // other errors are not recovered
+        {
+            assertThatThrownBy(() -> freshService.queryRecoveringSchema(host, () -> {
+                throw new IllegalStateException("not a missing table");
+            })).isInstanceOf(IllegalStateException.class);
+
+            assertThat(DBSchemaService.isUndefinedTable(new RuntimeException(new SQLException("missing", "42P01")))).isTrue();
+            assertThat(DBSchemaService.isUndefinedTable(new RuntimeException(new SQLException("duplicate", "23505")))).isFalse();
+        }
+    }
+
     private List<SampleEntity> createSampleEntities(int size) throws Exception {
         var result = new ArrayList<SampleEntity>();
         for (int i = 0; i < size; i++) {
@@ -133,6 +435,10 @@ class BaseCRUDServiceCaseTest extends BaseTest {
         assertThat(result.successList).hasSize(expectedSize);
     }
 
+    static boolean isPostgres() {
+        return InfraUtil.isPostgres(ProcessConfiguration.getConfiguration().getDatabase(host));
+    }
+
     private static class SampleEntityService extends BaseCRUDService<SampleEntity> {
 
         private SampleEntityService() {
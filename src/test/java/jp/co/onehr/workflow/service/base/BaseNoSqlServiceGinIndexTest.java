@@ -11,6 +11,7 @@ import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
 import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
 import jp.co.onehr.workflow.dto.base.index.IndexField;
 import jp.co.onehr.workflow.dto.base.index.IndexFieldType;
+import jp.co.onehr.workflow.service.infra.DBSchemaService;
 import jp.co.onehr.workflow.util.InfraUtil;
 import jp.co.onehr.workflow.util.PGTableTestUtil;
 import org.apache.commons.lang3.ObjectUtils;
@@ -46,11 +47,16 @@ class BaseNoSqlServiceGinIndexTest {
                         .contains("data -> 'targetIdList'::text")
                         .doesNotContain("UNIQUE INDEX");
             }
+
+            // the schema is recorded in the manifest, so it is skipped while unchanged
+            assertThat(DBSchemaService.singleton.createSchemaIfChanged(HOST, partitionName, GinIndexSampleEntity.class)).isEmpty();
         } finally {
             try (var conn = postgresAccount.getDataSource().getConnection()) {
                 TableUtil.dropTableIfExists(conn, schemaName, partitionName);
                 TableUtil.dropTableIfExists(conn, schemaName, partitionName + "_recycle");
             }
+            DBSchemaService.singleton.deleteManifest(HOST, partitionName);
+            DBSchemaService.singleton.deleteManifest(HOST, partitionName + "_recycle");
         }
     }
 
@@ -0,0 +1,190 @@
+package jp.co.onehr.workflow.service.infra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import io.github.thunderz99.cosmos.impl.postgres.PostgresImpl;
+import io.github.thunderz99.cosmos.impl.postgres.util.TableUtil;
+import jp.co.onehr.workflow.dao.infra.DBSchemaDAOBuilder;
+import jp.co.onehr.workflow.dao.infra.DBSchemaInitializer;
+import jp.co.onehr.workflow.dto.base.SimpleData;
+import jp.co.onehr.workflow.dto.base.index.IndexCustomizable;
+import jp.co.onehr.workflow.dto.base.index.IndexDefinition;
+import jp.co.onehr.workflow.dto.base.index.IndexField;
+import jp.co.onehr.workflow.dto.base.index.IndexFieldType;
+import jp.co.onehr.workflow.service.base.BaseNoSqlService;
+import jp.co.onehr.workflow.util.InfraUtil;
+import jp.co.onehr.workflow.util.PGTableTestUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DBSchemaServiceTest {
+
+    private static final String HOST = "localhost";
+    private static final String PARTITION_NAME = "SchemaManifestSampleEntities";
+
+    @Test
+    @EnabledIf("isPostgres")
+    void createSchemaIfChanged_should_work() throws Exception {
+        var service = new DBSchemaService();
+        var partitionName = BaseNoSqlService.addSuffixToPartition(PARTITION_NAME);
+        var schemaName = DBSchemaService.getCollectionName(HOST);
+        var postgresAccount = (PostgresImpl) DBSchemaService.getDatabase(HOST).getCosmosAccount();
+
+        try {
+            // the manifests of a host are loaded once for parallel callers
+            {
+                var futures = new ArrayList<CompletableFuture<Object>>();
+                for (var i = 0; i < 4; i++) {
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return service.getManifests(HOST);
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
+                }
+                for (var future : futures) {
+                    assertThat(future.get()).isSameAs(futures.get(0).get());
+                }
+            }
+
+            // the schema is created and recorded, then skipped while unchanged
+            {
+                SchemaManifestSampleEntity.indexDefinitions = List.of(IndexDefinition.of(IndexField.of("name", IndexFieldType.TEXT)));
+                assertThat(service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class)).isNotEmpty();
+                assertThat(service.getManifests(HOST)).containsKey(partitionName);
+
+                assertThat(service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class)).isEmpty();
+            }
+
+            // a changed index definition creates the schema again
+            {
+                var hash = service.getManifests(HOST).get(partitionName);
+                SchemaManifestSampleEntity.indexDefinitions = List.of(
+                        IndexDefinition.of(IndexField.of("name", IndexFieldType.TEXT)),
+                        IndexDefinition.of(IndexField.of("age", IndexFieldType.NUMERIC)));
+                service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class);
+
+                try (var conn = postgresAccount.getDataSource().getConnection()) {
+                    var indexes = PGTableTestUtil.findIndexes(conn, schemaName, partitionName);
+                    assertThat(indexes).containsKey("idx_%s_age_1".formatted(partitionName));
+                }
+                assertThat(service.getManifests(HOST).get(partitionName)).isNotEqualTo(hash);
+
+                // a restarted node loads the recorded manifest
+                assertThat(new DBSchemaService().createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class)).isEmpty();
+            }
+
+            // a deleted manifest creates the schema again
+            {
+                service.deleteManifest(HOST, partitionName);
+                assertThat(service.getManifests(HOST)).doesNotContainKey(partitionName);
+                assertThat(new DBSchemaService().getManifests(HOST)).doesNotContainKey(partitionName);
+
+                try (var conn = postgresAccount.getDataSource().getConnection()) {
+                    TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+                }
+                assertThat(service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class)).isNotEmpty();
+
+                try (var conn = postgresAccount.getDataSource().getConnection()) {
+                    var indexes = PGTableTestUtil.findIndexes(conn, schemaName, partitionName);
+                    assertThat(indexes).containsKeys("idx_%s_name_1".formatted(partitionName), "idx_%s_age_1".formatted(partitionName));
+                }
+                assertThat(service.getManifests(HOST)).containsKey(partitionName);
+            }
+        } finally {
+            try (var conn = postgresAccount.getDataSource().getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+            service.deleteManifest(HOST, partitionName);
+        }
+    }
+
+    @Test
+    @EnabledIf("isPostgres")
+    void createSchemaIfChanged_failed_index_build_should_not_be_recorded() throws Exception {
+        var service = new DBSchemaService();
+        var partitionName = BaseNoSqlService.addSuffixToPartition(PARTITION_NAME);
+        var schemaName = DBSchemaService.getCollectionName(HOST);
+        var postgresAccount = (PostgresImpl) DBSchemaService.getDatabase(HOST).getCosmosAccount();
+
+        var dbType = InfraUtil.getDbTypeByHost(HOST);
+        var schemaDAO = new DBSchemaDAOBuilder().withDatabaseType(dbType).build();
+        SchemaManifestSampleEntity.indexDefinitions = List.of(IndexDefinition.of(IndexField.of("name", IndexFieldType.TEXT)));
+
+        try {
+            // the schema is created, but not recorded while a background index build failed
+            {
+                service.schemaDAOMap.put(dbType, new FailedIndexBuildSchemaDAO(schemaDAO));
+                assertThat(service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class)).isNotEmpty();
+
+                assertThat(service.getManifests(HOST)).doesNotContainKey(partitionName);
+                assertThat(new DBSchemaService().getManifests(HOST)).doesNotContainKey(partitionName);
+            }
+
+            // the schema is created again and recorded once the index builds succeed
+            {
+                service.schemaDAOMap.put(dbType, schemaDAO);
+                service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class);
+
+                assertThat(service.getManifests(HOST)).containsKey(partitionName);
+                assertThat(service.createSchemaIfChanged(HOST, partitionName, SchemaManifestSampleEntity.class)).isEmpty();
+            }
+        } finally {
+            try (var conn = postgresAccount.getDataSource().getConnection()) {
+                TableUtil.dropTableIfExists(conn, schemaName, partitionName);
+            }
+            service.deleteManifest(HOST, partitionName);
+        }
+    }
+
+    static boolean isPostgres() {
+        return InfraUtil.isPostgres(DBSchemaService.getDatabase(HOST));
+    }
+
+    /**
+     * Creates the schema by the delegate, and reports the background index builds as failed
+     */
+    private static class FailedIndexBuildSchemaDAO implements DBSchemaInitializer {
+
+        private final DBSchemaInitializer delegate;
+
+        private FailedIndexBuildSchemaDAO(DBSchemaInitializer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String createTableIfNotExist(String host, String partitionName) throws Exception {
+            return delegate.createTableIfNotExist(host, partitionName);
+        }
+
+        @Override
+        public List<String> createIndexesIfNotExist(String host, String partitionName) throws Exception {
+            return delegate.createIndexesIfNotExist(host, partitionName);
+        }
+
+        @Override
+        public List<String> createCustomIndexIfNotExist(String host, String partitionName, IndexCustomizable dto) throws Exception {
+            return delegate.createCustomIndexIfNotExist(host, partitionName, dto);
+        }
+
+        @Override
+        public CompletableFuture<Void> awaitIndexBuilds(String host, String partitionName) {
+            return CompletableFuture.failedFuture(new IllegalStateException("index build failed"));
+        }
+    }
+
+    public static class SchemaManifestSampleEntity extends SimpleData implements IndexCustomizable {
+
+        static List<IndexDefinition> indexDefinitions = List.of();
+
+        @Override
+        public List<IndexDefinition> getCustomIndexDefinitions() {
+            return indexDefinitions;
+        }
+    }
+}